@@ -0,0 +1,294 @@
+package com.walter.threadpool.core;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于单个{@link ReentrantLock}的有界阻塞队列骨架，子类只需实现无并发保护的出入队逻辑（调用时已持有锁），
+ * 阻塞、超时、容量控制与唤醒均由本类完成。
+ * <p>
+ * 迭代器为弱一致的快照且不支持remove。
+ *
+ * @author walter.tan
+ */
+public abstract class AbstractBoundedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    protected final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private volatile int capacity;
+
+    protected AbstractBoundedBlockingQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * 入队，调用时已持有锁且队列未满
+     * @param e
+     * @return false表示子类拒绝入队
+     */
+    protected abstract boolean doOffer(E e);
+
+    /**
+     * 出队，调用时已持有锁
+     * @return 队列为空时返回null
+     */
+    protected abstract E doPoll();
+
+    /**
+     * 查看队首元素，调用时已持有锁
+     * @return
+     */
+    protected abstract E doPeek();
+
+    /**
+     * 队列长度，调用时已持有锁
+     * @return
+     */
+    protected abstract int doSize();
+
+    /**
+     * 移除指定元素，调用时已持有锁
+     * @param o
+     * @return
+     */
+    protected abstract boolean doRemove(Object o);
+
+    /**
+     * 返回当前所有元素的快照，调用时已持有锁
+     * @return
+     */
+    protected abstract List<E> doSnapshot();
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 调整队列容量，已在队列中的元素不受影响；扩容时会唤醒等待入队的线程
+     * @param capacity
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+        }
+        lock.lock();
+        try {
+            this.capacity = capacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        lock.lock();
+        try {
+            return enqueue(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        lock.lockInterruptibly();
+        try {
+            while (doSize() >= capacity) {
+                notFull.await();
+            }
+            enqueue(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (doSize() >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return enqueue(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            E e;
+            while ((e = dequeue()) == null) {
+                notEmpty.await();
+            }
+            return e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            E e;
+            while ((e = dequeue()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E peek() {
+        lock.lock();
+        try {
+            return doPeek();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return doSize();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return Math.max(0, capacity - doSize());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            boolean removed = doRemove(o);
+            if (removed) {
+                notFull.signal();
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int n = 0;
+            E e;
+            while (n < maxElements && (e = dequeue()) != null) {
+                c.add(e);
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        lock.lock();
+        try {
+            return Collections.unmodifiableList(doSnapshot()).iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 唤醒等待出队的线程，供子类在锁外改变了可出队状态时调用
+     */
+    protected void signalNotEmpty() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean enqueue(E e) {
+        if (doSize() >= capacity || !doOffer(e)) {
+            return false;
+        }
+        notEmpty.signal();
+        return true;
+    }
+
+    private E dequeue() {
+        E e = doPoll();
+        if (e != null) {
+            notFull.signal();
+        }
+        return e;
+    }
+}
@@ -0,0 +1,232 @@
+package com.walter.threadpool.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 不持有自己的工作线程、只限制并发数的执行器骨架，任务由子类决定在哪里执行（如虚拟线程、共享的载体线程）。
+ * <p>
+ * 为了兼容{@link CustomThreadPool}中依赖{@link ThreadPoolExecutor}的接口而继承它，但不使用其内部的工作线程：
+ * maximumPoolSize表示并发上限，corePoolSize仅作记录，poolSize与activeCount都表示正在执行的任务数。
+ * 超出并发上限的任务在waitingQueue中等待，队列满或已关闭时交由拒绝策略处理。
+ *
+ * @author walter.tan
+ */
+abstract class AbstractLimitedExecutor extends ThreadPoolExecutor {
+
+    protected final BlockingQueue<Runnable> waitingQueue;
+    protected final RejectedExecutionHandler handler;
+    /**
+     * 正在执行本执行器任务的线程，移除与中断都在interruptLock内进行，保证中断只落在本执行器的任务上
+     */
+    private final Set<Thread> runningThreads = ConcurrentHashMap.newKeySet();
+    private final Object interruptLock = new Object();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final LongAdder completedTaskCount = new LongAdder();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private volatile int corePoolSize;
+    private volatile int concurrency;
+    private final AtomicInteger largestPoolSize = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    AbstractLimitedExecutor(int concurrency, BlockingQueue<Runnable> waitingQueue, RejectedExecutionHandler handler) {
+        super(0, 1, 0L, TimeUnit.MILLISECONDS, waitingQueue, handler);
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be greater than 0: " + concurrency);
+        }
+        this.waitingQueue = waitingQueue;
+        this.handler = handler;
+        this.corePoolSize = concurrency;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * 并发上限变化时回调，已在this锁内
+     * @param delta 变化量，大于0表示扩大
+     */
+    protected abstract void onConcurrencyChanged(int delta);
+
+    /**
+     * 关闭后回调，子类可在此释放资源
+     */
+    protected void onTerminated() {
+    }
+
+    /**
+     * 在当前线程中执行任务，并维护活跃数、完成数与运行线程集合
+     * 注：
+     *  1. 与平台线程一致，任务内部未捕获的异常交由线程的UncaughtExceptionHandler处理
+     *  2. 线程可能被多个执行器共享（如载体线程），执行前后都会清除中断状态：
+     *     {@link #shutdownNow()}的中断只会作用于本执行器的任务，不会遗留给该线程之后执行的其他执行器的任务
+     * @param task
+     */
+    protected void runTask(Runnable task) {
+        Thread current = Thread.currentThread();
+        Thread.interrupted();
+        runningThreads.add(current);
+        try {
+            task.run();
+        } catch (Throwable t) {
+            current.getUncaughtExceptionHandler().uncaughtException(current, t);
+        } finally {
+            synchronized (interruptLock) {
+                runningThreads.remove(current);
+                Thread.interrupted();
+            }
+            completedTaskCount.increment();
+        }
+    }
+
+    /**
+     * 开始执行一个任务前调用
+     * @return 当前活跃数
+     */
+    protected int incrementActive() {
+        int active = activeCount.incrementAndGet();
+        largestPoolSize.accumulateAndGet(active, Math::max);
+        return active;
+    }
+
+    /**
+     * 一个任务执行结束后调用
+     */
+    protected void decrementActive() {
+        activeCount.decrementAndGet();
+    }
+
+    protected void tryTerminate() {
+        if (shutdown && activeCount.get() == 0 && waitingQueue.isEmpty() && terminated.getCount() > 0) {
+            terminated.countDown();
+            onTerminated();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        tryTerminate();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> tasks = new ArrayList<>();
+        waitingQueue.drainTo(tasks);
+        synchronized (interruptLock) {
+            for (Thread thread : runningThreads) {
+                thread.interrupt();
+            }
+        }
+        tryTerminate();
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminating() {
+        return shutdown && terminated.getCount() > 0;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        boolean removed = waitingQueue.remove(task);
+        tryTerminate();
+        return removed;
+    }
+
+    @Override
+    public void setCorePoolSize(int corePoolSize) {
+        if (corePoolSize < 0) {
+            throw new IllegalArgumentException("corePoolSize must not be negative: " + corePoolSize);
+        }
+        this.corePoolSize = corePoolSize;
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    @Override
+    public synchronized void setMaximumPoolSize(int maximumPoolSize) {
+        if (maximumPoolSize <= 0) {
+            throw new IllegalArgumentException("maximumPoolSize must be greater than 0: " + maximumPoolSize);
+        }
+        int delta = maximumPoolSize - concurrency;
+        concurrency = maximumPoolSize;
+        if (delta != 0) {
+            onConcurrencyChanged(delta);
+        }
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return concurrency;
+    }
+
+    @Override
+    public boolean prestartCoreThread() {
+        return false;
+    }
+
+    @Override
+    public int prestartAllCoreThreads() {
+        return 0;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return activeCount.get();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    @Override
+    public int getLargestPoolSize() {
+        return largestPoolSize.get();
+    }
+
+    @Override
+    public long getTaskCount() {
+        return completedTaskCount.sum() + activeCount.get() + waitingQueue.size();
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return completedTaskCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + (isTerminated() ? "Terminated" : shutdown ? "Shutting down" : "Running")
+                + ", concurrency = " + concurrency + ", active threads = " + activeCount.get()
+                + ", queued tasks = " + waitingQueue.size() + ", completed tasks = " + completedTaskCount.sum() + "]";
+    }
+}
@@ -0,0 +1,162 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据排队耗时自适应调整核心线程数的控制器。
+ * <p>
+ * 每个采样周期统计区间内的吞吐量、平均执行耗时与p99排队耗时，按利特尔法则（并发数 = 吞吐量 × 平均执行耗时）估算所需的线程数：
+ * 1. p99排队耗时超过目标值且CPU未饱和时，按 p99/目标值 的梯度扩容（单次最多翻倍）
+ * 2. p99排队耗时低于目标值的一半时，向估算值缓慢缩容（单次最多减少10%），并保留20%的余量
+ * 核心线程数始终限制在配置的上下限之内，最大线程数固定为配置的上限。
+ * 采样由共享时间轮定期触发，统计与调整在独立的采样线程上执行。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+class AdaptivePoolSizer implements Runnable {
+
+    /**
+     * 采样与调整线程，所有AdaptivePoolSizer共享：读取CPU使用率与调整线程数（可能要获取线程池的mainLock）较慢，
+     * 放在时间轮线程上会拖慢所有线程池的超时调度，空闲60秒后线程退出
+     */
+    private static final ThreadPoolExecutor SAMPLER = newSampler();
+
+    private final CustomThreadPool threadPool;
+    private final AdaptiveSizingConfigure conf;
+    private final HashedWheelTimer timer;
+
+    private volatile boolean stopped;
+    private volatile HashedWheelTimer.Timeout nextSample;
+
+    private long lastSampleNanos;
+    private LatencyHistogram.Snapshot lastQueueWait;
+    private LatencyHistogram.Snapshot lastRunTime;
+
+    AdaptivePoolSizer(CustomThreadPool threadPool, AdaptiveSizingConfigure conf, HashedWheelTimer timer) {
+        if (conf.getMinPoolSize() <= 0 || conf.getMaxPoolSize() < conf.getMinPoolSize()) {
+            throw new IllegalArgumentException("invalid adaptive sizing bounds: " + conf);
+        }
+        this.threadPool = threadPool;
+        this.conf = conf;
+        this.timer = timer;
+    }
+
+    void start() {
+        this.nextSample = timer.newTimeout(this, conf.getSampleIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        this.stopped = true;
+        HashedWheelTimer.Timeout t = this.nextSample;
+        if (t != null) {
+            t.cancel();
+        }
+    }
+
+    /**
+     * 时间轮回调，只负责转交给采样线程
+     */
+    @Override
+    public void run() {
+        if (!stopped) {
+            SAMPLER.execute(this::sampleAndReschedule);
+        }
+    }
+
+    /**
+     * 在采样线程上执行，采样状态只由采样线程访问
+     */
+    private void sampleAndReschedule() {
+        if (stopped) {
+            return;
+        }
+        if (threadPool.getTaskPool().isShutdown()) {
+            stopped = true;
+            return;
+        }
+        try {
+            sample();
+        } catch (Exception e) {
+            log.warn("adaptive sizing sample fail. key:{}", threadPool.getKey(), e);
+        }
+        if (!stopped && !timer.isStopped()) {
+            this.nextSample = timer.newTimeout(this, conf.getSampleIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static ThreadPoolExecutor newSampler() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "AdaptivePoolSizer-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void sample() {
+        long now = System.nanoTime();
+        ThreadPoolMetrics metrics = threadPool.getMetrics();
+        LatencyHistogram.Snapshot queueWait = metrics.getQueueWait().snapshot();
+        LatencyHistogram.Snapshot runTime = metrics.getRunTime().snapshot();
+        if (lastQueueWait != null) {
+            adjust(queueWait.minus(lastQueueWait), runTime.minus(lastRunTime), now - lastSampleNanos);
+        }
+        lastQueueWait = queueWait;
+        lastRunTime = runTime;
+        lastSampleNanos = now;
+    }
+
+    private void adjust(LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot runTime, long intervalNanos) {
+        ThreadPoolExecutor executor = threadPool.getTaskPool();
+        int core = executor.getCorePoolSize();
+        long targetNanos = TimeUnit.MILLISECONDS.toNanos(conf.getTargetQueueWaitMillis());
+        long p99Wait = queueWait.getPercentile(99D);
+
+        double throughput = runTime.getCount() * 1e9D / Math.max(1L, intervalNanos);
+        // 执行时间超过采样周期的任务不会计入区间统计，因此以当前活跃线程数作为下限
+        double concurrency = Math.max(throughput * runTime.getMean() / 1e9D, executor.getActiveCount());
+
+        int desired = core;
+        if (queueWait.getCount() > 0 && p99Wait > targetNanos) {
+            double cpuLoad = processCpuLoad();
+            if (cpuLoad < conf.getMaxCpuUtilization()) {
+                double gradient = Math.min(2D, (double) p99Wait / Math.max(1L, targetNanos));
+                desired = Math.max(core + 1, (int) Math.ceil(Math.max(core, concurrency) * gradient));
+            } else {
+                log.debug("skip growing because cpu is saturated. key:{}, cpuLoad:{}", threadPool.getKey(), cpuLoad);
+            }
+        } else if (p99Wait < targetNanos / 2) {
+            int floor = core - Math.max(1, core / 10);
+            desired = Math.max(floor, (int) Math.ceil(concurrency * 1.2D));
+        }
+        desired = Math.max(conf.getMinPoolSize(), Math.min(conf.getMaxPoolSize(), desired));
+
+        if (desired != core) {
+            threadPool.setPoolSize(desired, conf.getMaxPoolSize());
+            log.info("adaptive resize key<{}> corePoolSize: {} -> {}, p99QueueWait: {}ms, throughput: {}/s, concurrency: {}",
+                    threadPool.getKey(), core, desired, TimeUnit.NANOSECONDS.toMillis(p99Wait), (long) throughput, concurrency);
+        }
+    }
+
+    /**
+     * 返回进程的CPU使用率，无法获取时返回0
+     * @return
+     */
+    private static double processCpuLoad() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            double load = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+            return load < 0 ? 0D : load;
+        }
+        double loadAverage = os.getSystemLoadAverage();
+        return loadAverage < 0 ? 0D : loadAverage / os.getAvailableProcessors();
+    }
+}
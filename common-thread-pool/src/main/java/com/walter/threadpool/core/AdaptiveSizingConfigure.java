@@ -0,0 +1,41 @@
+package com.walter.threadpool.core;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * 自适应调整线程数的配置
+ * @author walter.tan
+ */
+@Data
+@NoArgsConstructor
+@ToString
+public class AdaptiveSizingConfigure {
+    /**
+     * 核心线程数的下限
+     */
+    private int minPoolSize = 1;
+    /**
+     * 核心线程数的上限，同时作为线程池的最大线程数
+     */
+    private int maxPoolSize = Runtime.getRuntime().availableProcessors() * 100;
+    /**
+     * 目标p99排队耗时（毫秒）
+     */
+    private long targetQueueWaitMillis = 100L;
+    /**
+     * 采样间隔（毫秒）
+     */
+    private long sampleIntervalMillis = 1000L;
+    /**
+     * 进程CPU使用率超过此值时不再扩容，取值范围(0, 1]
+     */
+    private double maxCpuUtilization = 0.85D;
+
+    public AdaptiveSizingConfigure(int minPoolSize, int maxPoolSize, long targetQueueWaitMillis) {
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.targetQueueWaitMillis = targetQueueWaitMillis;
+    }
+}
@@ -0,0 +1,240 @@
+package com.walter.threadpool.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 按排队时延（sojourn time）控制负载的阻塞队列，实现CoDel（Controlled Delay）算法：
+ * 1. 出队时计算队首任务的排队时延，一个interval内的排队时延持续高于target时进入丢弃状态
+ * 2. 丢弃状态下从队首丢弃任务，丢弃间隔按 interval/sqrt(丢弃次数) 逐渐缩短，直到排队时延回落到target以下
+ * 3. 可选在丢弃状态下改为后进先出，优先执行最新的、调用方仍在等待的任务
+ * 与按长度限制的队列不同，短时突发的任务不会被丢弃，持续过载时排队时延被控制在target附近。
+ * 被丢弃的任务在出队线程中、释放锁后交给丢弃回调。
+ *
+ * @author walter.tan
+ */
+public class CoDelBlockingQueue extends AbstractBoundedBlockingQueue<Runnable> {
+
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final boolean lifoWhenOverloaded;
+    private final Consumer<Runnable> dropHandler;
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+    /**
+     * 以下状态仅在锁内访问
+     */
+    private long firstAboveTime;
+    private long dropNext;
+    private int dropCount;
+    private boolean dropping;
+    private List<Runnable> pendingDrops = new ArrayList<>();
+    private volatile boolean hasPendingDrops;
+
+    /**
+     * @param capacity 队列容量
+     * @param conf CoDel配置
+     * @param dropHandler 任务被丢弃时的回调
+     */
+    public CoDelBlockingQueue(int capacity, CoDelConfigure conf, Consumer<Runnable> dropHandler) {
+        super(capacity);
+        if (conf.getTargetDelayMillis() <= 0 || conf.getIntervalMillis() <= 0) {
+            throw new IllegalArgumentException("invalid codel configure: " + conf);
+        }
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(conf.getTargetDelayMillis());
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(conf.getIntervalMillis());
+        this.lifoWhenOverloaded = conf.isLifoWhenOverloaded();
+        this.dropHandler = dropHandler;
+    }
+
+    /**
+     * 当前是否处于丢弃（过载）状态
+     * @return
+     */
+    public boolean isDropping() {
+        lock.lock();
+        try {
+            return dropping;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        try {
+            return super.poll();
+        } finally {
+            notifyDropped();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        try {
+            return super.take();
+        } finally {
+            notifyDropped();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            return super.poll(timeout, unit);
+        } finally {
+            notifyDropped();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        try {
+            return super.drainTo(c, maxElements);
+        } finally {
+            notifyDropped();
+        }
+    }
+
+    @Override
+    protected boolean doOffer(Runnable task) {
+        entries.addLast(new Entry(task, System.nanoTime()));
+        return true;
+    }
+
+    @Override
+    protected Runnable doPoll() {
+        long now = System.nanoTime();
+        boolean okToDrop = checkSojourn(now);
+        if (dropping) {
+            if (!okToDrop) {
+                // 排队时延已回落到target以下，退出丢弃状态
+                dropping = false;
+            } else {
+                while (dropping && now - dropNext >= 0) {
+                    drop();
+                    dropCount++;
+                    if (!checkSojourn(now)) {
+                        dropping = false;
+                    } else {
+                        dropNext = controlLaw(dropNext, dropCount);
+                    }
+                }
+            }
+        } else if (okToDrop) {
+            drop();
+            dropping = true;
+            // 距离上次退出丢弃状态不久，则沿用接近上次的丢弃频率，更快地重新控制住时延
+            dropCount = (dropCount > 2 && now - dropNext < 8 * intervalNanos) ? dropCount - 2 : 1;
+            dropNext = controlLaw(now, dropCount);
+        }
+        Entry entry = dropping && lifoWhenOverloaded ? entries.pollLast() : entries.pollFirst();
+        return null == entry ? null : entry.task;
+    }
+
+    @Override
+    protected Runnable doPeek() {
+        Entry entry = dropping && lifoWhenOverloaded ? entries.peekLast() : entries.peekFirst();
+        return null == entry ? null : entry.task;
+    }
+
+    @Override
+    protected int doSize() {
+        return entries.size();
+    }
+
+    @Override
+    protected boolean doRemove(Object o) {
+        for (Iterator<Entry> it = entries.iterator(); it.hasNext(); ) {
+            if (it.next().task.equals(o)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected List<Runnable> doSnapshot() {
+        List<Runnable> snapshot = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            snapshot.add(entry.task);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 检查队首任务的排队时延
+     * @param now
+     * @return 排队时延是否已持续一个interval高于target
+     */
+    private boolean checkSojourn(long now) {
+        Entry head = entries.peekFirst();
+        // 队列中只剩一个任务时不丢弃，否则线程池会空转
+        if (null == head || entries.size() <= 1 || now - head.enqueueNanos < targetNanos) {
+            firstAboveTime = 0L;
+            return false;
+        }
+        if (firstAboveTime == 0L) {
+            firstAboveTime = now + intervalNanos;
+            // 0作为未设置的标记
+            if (firstAboveTime == 0L) {
+                firstAboveTime = 1L;
+            }
+            return false;
+        }
+        return now - firstAboveTime >= 0;
+    }
+
+    private void drop() {
+        Entry entry = entries.pollFirst();
+        if (null != entry) {
+            pendingDrops.add(entry.task);
+            hasPendingDrops = true;
+        }
+    }
+
+    private long controlLaw(long t, int count) {
+        return t + (long) (intervalNanos / Math.sqrt(count));
+    }
+
+    /**
+     * 在锁外回调被丢弃的任务
+     */
+    private void notifyDropped() {
+        if (!hasPendingDrops) {
+            return;
+        }
+        List<Runnable> drops;
+        lock.lock();
+        try {
+            drops = pendingDrops;
+            pendingDrops = new ArrayList<>();
+            hasPendingDrops = false;
+        } finally {
+            lock.unlock();
+        }
+        if (null == dropHandler) {
+            return;
+        }
+        for (Runnable task : drops) {
+            dropHandler.accept(task);
+        }
+    }
+
+    private static class Entry {
+        private final Runnable task;
+        private final long enqueueNanos;
+
+        private Entry(Runnable task, long enqueueNanos) {
+            this.task = task;
+            this.enqueueNanos = enqueueNanos;
+        }
+    }
+}
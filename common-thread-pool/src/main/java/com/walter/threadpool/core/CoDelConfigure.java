@@ -0,0 +1,32 @@
+package com.walter.threadpool.core;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * CoDel（Controlled Delay）队列的配置，仅对{@link ThreadQueueType#CoDelQueue}有效
+ * @author walter.tan
+ */
+@Data
+@NoArgsConstructor
+@ToString
+public class CoDelConfigure {
+    /**
+     * 目标排队时延（毫秒），一个interval内的最小排队时延持续高于此值时开始丢弃
+     */
+    private long targetDelayMillis = 5L;
+    /**
+     * 观测区间（毫秒），应略大于任务的典型执行耗时
+     */
+    private long intervalMillis = 100L;
+    /**
+     * 过载（处于丢弃状态）时是否改为后进先出，优先执行最新的任务
+     */
+    private boolean lifoWhenOverloaded;
+
+    public CoDelConfigure(long targetDelayMillis, long intervalMillis) {
+        this.targetDelayMillis = targetDelayMillis;
+        this.intervalMillis = intervalMillis;
+    }
+}
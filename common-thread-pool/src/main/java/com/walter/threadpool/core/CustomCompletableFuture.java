@@ -0,0 +1,122 @@
+package com.walter.threadpool.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link CustomThreadPool#submitAsync}返回的CompletableFuture：
+ * 1. 未指定执行器的*Async回调默认在所属线程池中执行，而不是ForkJoinPool.commonPool()
+ * 2. 取消时会中断正在执行的任务（CompletableFuture本身的cancel不会中断任何线程）
+ * <p>
+ * 注：非Async回调在完成future的线程中执行，正常完成时为线程池的工作线程，超时完成时为所有线程池共享的超时处理线程
+ * （不是时间轮线程），回调中如有耗时操作，应使用*Async版本。JDK9+下派生的future同样是本类型，JDK8下只有Async方法默认使用线程池。
+ *
+ * @author walter.tan
+ */
+class CustomCompletableFuture<T> extends CompletableFuture<T> {
+
+    private final Executor defaultExecutor;
+    private volatile Future<?> task;
+
+    CustomCompletableFuture(Executor defaultExecutor) {
+        this.defaultExecutor = defaultExecutor;
+    }
+
+    void setTask(Future<?> task) {
+        this.task = task;
+        // 任务可能在设置之前就已被取消
+        if (isCancelled()) {
+            task.cancel(true);
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        Future<?> t = this.task;
+        if (cancelled && null != t) {
+            t.cancel(true);
+        }
+        return cancelled;
+    }
+
+    /**
+     * JDK9+中CompletableFuture派生新future时调用，保证派生的future也使用线程池作为默认执行器
+     */
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new CustomCompletableFuture<>(defaultExecutor);
+    }
+
+    /**
+     * JDK9+中未指定执行器的*Async方法使用的执行器
+     */
+    public Executor defaultExecutor() {
+        return defaultExecutor;
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenApplyAsync(Function<? super T, ? extends U> fn) {
+        return thenApplyAsync(fn, defaultExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAcceptAsync(Consumer<? super T> action) {
+        return thenAcceptAsync(action, defaultExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRunAsync(Runnable action) {
+        return thenRunAsync(action, defaultExecutor);
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombineAsync(CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return thenCombineAsync(other, fn, defaultExecutor);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBothAsync(CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return thenAcceptBothAsync(other, action, defaultExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action) {
+        return runAfterBothAsync(other, action, defaultExecutor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return applyToEitherAsync(other, fn, defaultExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return acceptEitherAsync(other, action, defaultExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action) {
+        return runAfterEitherAsync(other, action, defaultExecutor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return thenComposeAsync(fn, defaultExecutor);
+    }
+
+    @Override
+    public CompletableFuture<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action) {
+        return whenCompleteAsync(action, defaultExecutor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return handleAsync(fn, defaultExecutor);
+    }
+}
@@ -0,0 +1,118 @@
+package com.walter.threadpool.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 线程池提交任务时使用的FutureTask：
+ * 1. 记录任务的排队耗时与执行耗时
+ * 2. 任务结束（正常完成、异常或被取消）时立即取消时间轮中对应的超时项
+ * 3. 出队时已超过截止时间的任务不再执行，由线程池取消并回调{@link TaskDropHandler}
+ * @author walter.tan
+ */
+class CustomFutureTask<T> extends FutureTask<T> implements DeadlineAware, TenantAware {
+
+    private final CustomThreadPool threadPool;
+    private final long enqueueNanos;
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private String tenant;
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    CustomFutureTask(Callable<T> callable, CustomThreadPool threadPool) {
+        this(callable, threadPool, -1L);
+    }
+
+    /**
+     * @param callable
+     * @param threadPool
+     * @param deadlineNanos 从现在开始计算的截止时间，小于0表示不设置截止时间
+     */
+    CustomFutureTask(Callable<T> callable, CustomThreadPool threadPool, long deadlineNanos) {
+        super(callable);
+        this.threadPool = threadPool;
+        this.enqueueNanos = System.nanoTime();
+        this.hasDeadline = deadlineNanos >= 0L;
+        this.deadlineNanos = this.enqueueNanos + deadlineNanos;
+    }
+
+    CustomFutureTask(Runnable runnable, T result, CustomThreadPool threadPool) {
+        super(runnable, result);
+        this.threadPool = threadPool;
+        this.enqueueNanos = System.nanoTime();
+        this.hasDeadline = false;
+        this.deadlineNanos = 0L;
+    }
+
+    void setTimeout(HashedWheelTimer.Timeout timeout) {
+        this.timeout = timeout;
+        // 任务可能在超时项设置之前就已经结束
+        if (isDone()) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * 任务被拒绝策略丢弃时调用，以异常完成任务，避免等待结果的调用方永远阻塞
+     * @param cause
+     */
+    void reject(RejectedExecutionException cause) {
+        setException(cause);
+    }
+
+    /**
+     * 设置租户标识，须在提交到线程池之前调用
+     * @param tenant
+     */
+    void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    @Override
+    public String getTenant() {
+        return tenant;
+    }
+
+    @Override
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    @Override
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    @Override
+    public void run() {
+        if (isDone()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        if (isExpired(startNanos)) {
+            threadPool.dropTask(this, TaskDropHandler.Reason.EXPIRED);
+            return;
+        }
+        ThreadPoolMetrics metrics = threadPool.getMetrics();
+        metrics.recordQueueWait(tenant, startNanos - enqueueNanos);
+        StallDetector stallDetector = threadPool.getStallDetector();
+        boolean entered = null != stallDetector && stallDetector.enter();
+        try {
+            super.run();
+        } finally {
+            if (entered) {
+                stallDetector.exit();
+            }
+            metrics.recordRunTime(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    protected void done() {
+        HashedWheelTimer.Timeout t = this.timeout;
+        if (t != null) {
+            t.cancel();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.walter.threadpool.core;
+
+/**
+ * 线程池执行无返回值任务时使用的包装类，记录任务的排队耗时与执行耗时。
+ * 任务内部的异常会原样抛出，交由线程的UncaughtExceptionHandler处理。
+ * 出队时已超过截止时间的任务不再执行，由线程池回调{@link TaskDropHandler}。
+ * @author walter.tan
+ */
+class CustomTask implements Runnable, DeadlineAware, TenantAware {
+
+    private final Runnable task;
+    private final CustomThreadPool threadPool;
+    private final long enqueueNanos;
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private String tenant;
+
+    CustomTask(Runnable task, CustomThreadPool threadPool) {
+        this(task, threadPool, -1L);
+    }
+
+    /**
+     * @param task
+     * @param threadPool
+     * @param deadlineNanos 从现在开始计算的截止时间，小于0表示不设置截止时间
+     */
+    CustomTask(Runnable task, CustomThreadPool threadPool, long deadlineNanos) {
+        this.task = task;
+        this.threadPool = threadPool;
+        this.enqueueNanos = System.nanoTime();
+        this.hasDeadline = deadlineNanos >= 0L;
+        this.deadlineNanos = this.enqueueNanos + deadlineNanos;
+    }
+
+    /**
+     * 设置租户标识，须在提交到线程池之前调用
+     * @param tenant
+     */
+    void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    Runnable getTask() {
+        return task;
+    }
+
+    @Override
+    public String getTenant() {
+        return tenant;
+    }
+
+    @Override
+    public boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    @Override
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    @Override
+    public void run() {
+        long startNanos = System.nanoTime();
+        if (isExpired(startNanos)) {
+            threadPool.dropTask(this, TaskDropHandler.Reason.EXPIRED);
+            return;
+        }
+        ThreadPoolMetrics metrics = threadPool.getMetrics();
+        metrics.recordQueueWait(tenant, startNanos - enqueueNanos);
+        StallDetector stallDetector = threadPool.getStallDetector();
+        boolean entered = null != stallDetector && stallDetector.enter();
+        try {
+            task.run();
+        } finally {
+            if (entered) {
+                stallDetector.exit();
+            }
+            metrics.recordRunTime(System.nanoTime() - startNanos);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CustomTask{task=" + task + '}';
+    }
+}
@@ -3,6 +3,8 @@ package com.walter.threadpool.core;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.function.Consumer;
@@ -14,8 +16,17 @@ import java.util.function.Consumer;
 @Slf4j
 public class CustomThreadPool {
     public static final String DEFAULT_KEY = "default";
+    /**
+     * 按分位数对冲时，执行耗时的最少样本数
+     */
+    public static final long HEDGE_MIN_SAMPLES = 20L;
+    /**
+     * submitAsync超时的处理线程，所有线程池共享：时间轮回调只负责转交，超时异常完成future时触发的非Async回调
+     * 在此线程中执行，不会占用时间轮线程而拖慢所有线程池的超时调度，空闲60秒后线程退出
+     */
+    private static final ThreadPoolExecutor TIMEOUT_DISPATCHER = newTimeoutDispatcher();
     private String key;
-    private long timeout;
+    private volatile long timeout;
     private String type;
     private int corePoolSize;
     private int maxPoolSize;
@@ -23,9 +34,22 @@ public class CustomThreadPool {
     private boolean fair;
     private int initQueueSize;
     private int showThreadQueueSize;
+    private WaitStrategy waitStrategy;
+    /**
+     * 是否使用虚拟线程，初始化时确定一次，不支持时回退为SynchronousQueue
+     */
+    private boolean virtualThreadMode;
     private ThreadPoolExecutor taskPool;
     private BlockingQueue<Runnable> queue;
-    private ScheduledExecutorService scdTaskPool;
+    private ThreadPoolMetrics metrics;
+    private AdaptivePoolSizer adaptivePoolSizer;
+    private StallDetector stallDetector;
+    private OverflowSpill overflowSpill;
+    private KeyOrderedExecutor keyOrderedExecutor;
+    private TaskDropHandler taskDropHandler;
+    private int weight;
+    private CoDelConfigure coDel;
+    private TenantConfigure tenant;
 
     public CustomThreadPool(ThreadPoolConfigure conf) {
         this(conf, conf.getThreadFactory(), conf.getRejectedExecutionHandler());
@@ -51,7 +75,35 @@ public class CustomThreadPool {
         this.fair = conf.getFair() == null ? this.fair : conf.getFair();
         this.initQueueSize = conf.getInitQueueSize() == 0 ? this.initQueueSize : conf.getInitQueueSize();
         this.showThreadQueueSize = conf.getShowThreadQueueSize();
+        this.waitStrategy = conf.getWaitStrategy() == null ? WaitStrategy.PARK : conf.getWaitStrategy();
+        this.taskDropHandler = conf.getTaskDropHandler();
+        this.weight = conf.getWeight() <= 0 ? 1 : conf.getWeight();
+        if (this.weight > SharedCarrierPool.MAX_WEIGHT) {
+            throw new IllegalArgumentException("weight must be in [1, " + SharedCarrierPool.MAX_WEIGHT + "]: " + this.weight);
+        }
+        this.coDel = conf.getCoDel() == null ? new CoDelConfigure() : conf.getCoDel();
+        this.tenant = conf.getTenant() == null ? new TenantConfigure() : conf.getTenant();
         this.init(factory, handler);
+        try {
+            if (null != conf.getAdaptiveSizing()) {
+                this.adaptivePoolSizer = new AdaptivePoolSizer(this, conf.getAdaptiveSizing(), CustomThreadPoolManager.getTimeoutTimer());
+                this.adaptivePoolSizer.start();
+            }
+            if (null != conf.getStallDetect()) {
+                this.stallDetector = new StallDetector(this, conf.getStallDetect(), CustomThreadPoolManager.getTimeoutTimer());
+                this.stallDetector.start();
+            }
+            if (null != conf.getOverflowSpill()) {
+                this.overflowSpill = new OverflowSpill(this, conf.getOverflowSpill(), this.initQueueSize, CustomThreadPoolManager.getTimeoutTimer());
+                this.overflowSpill.start();
+            }
+        } catch (RuntimeException | Error e) {
+            // 构造失败的线程池不会再被关闭，需停止已启动的组件并释放共享资源，否则shutdownAll无法停止共享的定时器与载体线程
+            this.stopComponents();
+            this.taskPool.shutdownNow();
+            CustomThreadPoolManager.releaseSharedResources(this);
+            throw e;
+        }
         log.info("Thread pool: {}, factory.class: {},handler.class:{}", this.toString(), null == factory ? null : factory.getClass(), null == handler ? null : handler.getClass());
     }
 
@@ -65,26 +117,103 @@ public class CustomThreadPool {
         this.fair = false;
         this.initQueueSize = 100;
         this.showThreadQueueSize = 10;
+        this.waitStrategy = WaitStrategy.PARK;
+        this.weight = 1;
+        this.coDel = new CoDelConfigure();
+        this.tenant = new TenantConfigure();
         this.taskPool = null;
         this.queue = null;
-        this.scdTaskPool = null;
         this.init(null, null);
     }
 
     private void init(ThreadFactory factory, RejectedExecutionHandler handler) {
-        if (this.timeout > 0L) {
-            this.scdTaskPool = Executors.newScheduledThreadPool(this.corePoolSize);
+        // 先登记再获取共享的定时器与载体线程，线程池关闭前它们不会被shutdownAll停止
+        CustomThreadPoolManager.retainSharedResources(this);
+        try {
+            this.createTaskPool(factory, handler);
+        } catch (RuntimeException | Error e) {
+            if (null != this.taskPool) {
+                this.taskPool.shutdownNow();
+            }
+            CustomThreadPoolManager.releaseSharedResources(this);
+            throw e;
         }
+    }
 
+    private void createTaskPool(ThreadFactory factory, RejectedExecutionHandler handler) {
+        this.metrics = new ThreadPoolMetrics(this);
+        this.virtualThreadMode = this.resolveVirtualThreadMode();
         this.queue = this.getBlockQueue();
-        if (null != factory && null != handler) {
-            this.taskPool = new ThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveTime, TimeUnit.SECONDS, this.queue, factory, handler);
+        // 统计被拒绝的任务数后，再交由原拒绝策略处理；重新提交溢出任务时的拒绝单独统计，避免同一任务被重复计入
+        RejectedExecutionHandler delegateHandler = this.discardAware(null != handler ? handler : new ThreadPoolExecutor.AbortPolicy());
+        RejectedExecutionHandler countingHandler = (r, executor) -> {
+            if (OverflowSpill.isReadmitted(r)) {
+                this.metrics.recordSpillReadmitRejected();
+            } else {
+                this.metrics.recordRejected();
+            }
+            delegateHandler.rejectedExecution(r, executor);
+        };
+        if (this.virtualThreadMode) {
+            this.taskPool = new VirtualThreadExecutor(this.key, this.maxPoolSize, this.queue, countingHandler);
+        } else if (this.type.equals(ThreadQueueType.SharedCarrier.getValue())) {
+            this.taskPool = new SharedCarrierExecutor(this.weight, this.maxPoolSize, this.queue, countingHandler, CustomThreadPoolManager.getSharedCarrier());
+        } else if (this.queue instanceof EagerTaskQueue) {
+            this.taskPool = new EagerThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveTime, TimeUnit.SECONDS,
+                    (EagerTaskQueue) this.queue, null != factory ? factory : Executors.defaultThreadFactory(), countingHandler);
+        } else if (this.queue instanceof TenantFairBlockingQueue) {
+            this.taskPool = new TenantFairThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveTime, TimeUnit.SECONDS,
+                    (TenantFairBlockingQueue) this.queue, null != factory ? factory : Executors.defaultThreadFactory(), countingHandler);
         } else if (null != factory) {
-            this.taskPool = new ThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveTime, TimeUnit.SECONDS, this.queue, factory);
-        } else if(null != handler){
-            this.taskPool = new ThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveTime, TimeUnit.SECONDS, this.queue, handler);
+            this.taskPool = new ThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveTime, TimeUnit.SECONDS, this.queue, factory, countingHandler);
         } else {
-            this.taskPool = new ThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveTime, TimeUnit.SECONDS, this.queue);
+            this.taskPool = new ThreadPoolExecutor(this.corePoolSize, this.maxPoolSize, this.keepAliveTime, TimeUnit.SECONDS, this.queue, countingHandler);
+        }
+        this.keyOrderedExecutor = new KeyOrderedExecutor(this.taskPool);
+    }
+
+    /**
+     * JDK的丢弃策略会静默丢弃任务，被丢弃的submit/submitAsync任务永远不会完成，等待结果的调用方会一直阻塞；
+     * 替换为语义相同的实现，并以{@link RejectedExecutionException}异常完成被丢弃的任务；
+     * 使用{@link TenantFairBlockingQueue}时，DiscardOldestPolicy丢弃的是达到上限的租户自己最早的任务
+     * 注：自定义的丢弃式拒绝策略需要自行完成被丢弃的任务
+     * @param handler
+     * @return
+     */
+    private RejectedExecutionHandler discardAware(RejectedExecutionHandler handler) {
+        if (handler instanceof ThreadPoolExecutor.DiscardPolicy) {
+            return (r, executor) -> this.discard(r, "DiscardPolicy");
+        }
+        if (handler instanceof ThreadPoolExecutor.DiscardOldestPolicy) {
+            return (r, executor) -> {
+                if (executor.isShutdown()) {
+                    this.discard(r, "DiscardOldestPolicy");
+                    return;
+                }
+                if (executor.getQueue() instanceof TenantFairBlockingQueue) {
+                    // 总容量不限，被拒绝说明该租户达到上限：只丢弃该租户最早的任务，而不是轮询队首的其他租户的任务
+                    Runnable oldest = ((TenantFairBlockingQueue) executor.getQueue()).pollTenant(TenantFairBlockingQueue.tenantOf(r));
+                    if (null == oldest) {
+                        this.discard(r, "DiscardOldestPolicy");
+                        return;
+                    }
+                    this.discard(oldest, "DiscardOldestPolicy");
+                } else {
+                    Runnable oldest = executor.getQueue().poll();
+                    if (null != oldest && executor instanceof EagerThreadPoolExecutor) {
+                        ((EagerThreadPoolExecutor) executor).dequeued();
+                    }
+                    this.discard(oldest, "DiscardOldestPolicy");
+                }
+                executor.execute(r);
+            };
+        }
+        return handler;
+    }
+
+    private void discard(Runnable task, String policy) {
+        if (task instanceof CustomFutureTask) {
+            ((CustomFutureTask<?>) task).reject(new RejectedExecutionException("task discarded by " + policy + ". key<" + this.key + ">"));
         }
     }
 
@@ -94,11 +223,22 @@ public class CustomThreadPool {
      * @param task
      */
     public void execute(Runnable task) {
-        this.taskPool.execute(task);
-        int size = this.queue.size();
-        if (this.showThreadQueueSize > -1 && size >= this.showThreadQueueSize) {
-            log.info("task queue length <" + size + "> key<" + this.key + ">");
+        this.taskPool.execute(new CustomTask(task, this));
+        this.afterSubmit();
+    }
+
+    /**
+     * 执行一个负载任务，由配置的{@link PayloadHandler}处理。线程池拒绝时（或已有溢出的积压，以保证顺序）把任务追加到内存映射的段文件，
+     * 队列长度降到低水位以下后按顺序重新提交，参考{@link OverflowSpillConfigure}
+     * @param payloadKey 任务的key
+     * @param payload 任务的负载，调用后不应再修改
+     * @throws RejectedExecutionException 线程池已关闭，或段文件已写满
+     */
+    public void executePayload(String payloadKey, byte[] payload) {
+        if (null == this.overflowSpill) {
+            throw new IllegalStateException("overflow spill is not configured. key<" + this.key + ">");
         }
+        this.overflowSpill.execute(payloadKey, payload);
     }
 
     /**
@@ -112,11 +252,9 @@ public class CustomThreadPool {
      * @return
      */
     public <T> Future<T> submit(Callable<T> task) {
-        Future<T> future = this.taskPool.submit(task);
-        int size = this.queue.size();
-        if (this.showThreadQueueSize > -1 && size >= this.showThreadQueueSize) {
-            log.info("task queue length <" + size + "> key<" + this.key + ">");
-        }
+        CustomFutureTask<T> future = new CustomFutureTask<>(task, this);
+        this.taskPool.execute(future);
+        this.afterSubmit();
 
         this.isOvertime(future);
         return future;
@@ -130,18 +268,16 @@ public class CustomThreadPool {
      * @return
      */
     public void submit(Runnable task, Consumer<Exception> exceptionHandler) {
-        Future<?> future = taskPool.submit(() -> {
+        CustomFutureTask<?> future = new CustomFutureTask<>(() -> {
             try{
                 task.run();
             }catch (Exception ex){
                 exceptionHandler.accept(ex);
             }
-        });
+        }, null, this);
+        taskPool.execute(future);
 
-        int size = this.queue.size();
-        if (this.showThreadQueueSize > -1 && size >= this.showThreadQueueSize) {
-            log.info("task queue length <" + size + "> key<" + this.key + ">");
-        }
+        this.afterSubmit();
         this.isOvertime(future);
     }
 
@@ -153,10 +289,398 @@ public class CustomThreadPool {
         this.submit(task, ex -> log.error("submit task fail.", ex));
     }
 
+    /**
+     * 异步提交一个含返回值的任务，超时时间使用线程池的配置，参考{@link #submitAsync(Callable, long, TimeUnit)}
+     * @param task
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> submitAsync(Callable<T> task) {
+        return this.submitAsync(task, this.timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 异步提交一个不含返回值的任务，超时时间使用线程池的配置，参考{@link #submitAsync(Callable, long, TimeUnit)}
+     * @param task
+     * @return
+     */
+    public CompletableFuture<Void> submitAsync(Runnable task) {
+        return this.submitAsync(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 异步提交一个含返回值的任务，返回的CompletableFuture：
+     *  1. 任务正常结束或抛出异常时，以相同的结果完成
+     *  2. 超时时以{@link TimeoutException}异常完成并中断任务，不阻塞任何线程；由共享时间轮触发，在超时处理线程中完成
+     *  3. 被取消时会中断正在执行的任务
+     *  4. 未指定执行器的*Async回调默认在本线程池中执行
+     *  5. 被拒绝时抛出拒绝策略的异常；被DiscardPolicy/DiscardOldestPolicy丢弃时以{@link RejectedExecutionException}异常完成
+     * @param task
+     * @param timeout 超时时间，从提交时开始计算，小于等于0表示不超时
+     * @param unit
+     * @param <T>
+     * @return
+     */
+    public <T> CompletableFuture<T> submitAsync(Callable<T> task, long timeout, TimeUnit unit) {
+        CustomCompletableFuture<T> promise = new CustomCompletableFuture<>(this::execute);
+        CustomFutureTask<T> future = new CustomFutureTask<T>(task, this) {
+            @Override
+            protected void done() {
+                super.done();
+                if (isCancelled()) {
+                    promise.cancel(false);
+                    return;
+                }
+                try {
+                    promise.complete(get());
+                } catch (ExecutionException e) {
+                    promise.completeExceptionally(e.getCause());
+                } catch (Throwable t) {
+                    promise.completeExceptionally(t);
+                }
+            }
+        };
+        promise.setTask(future);
+        this.taskPool.execute(future);
+        this.afterSubmit();
+
+        if (timeout > 0L) {
+            final long timeoutMillis = unit.toMillis(timeout);
+            future.setTimeout(CustomThreadPoolManager.getTimeoutTimer().newTimeout(() -> TIMEOUT_DISPATCHER.execute(() -> {
+                if (promise.completeExceptionally(new TimeoutException("task timeout: over <" + timeoutMillis + "ms> key<" + this.key + ">"))) {
+                    this.metrics.recordTimeoutCancelled();
+                    future.cancel(true);
+                    log.warn("async task cancel because out of time: over <{}ms> key<{}>", timeoutMillis, this.key);
+                }
+            }), timeout, unit));
+        }
+        return promise;
+    }
+
+    /**
+     * 对冲调用：提交任务后等待本线程池执行耗时的指定分位数，任务仍未完成则再提交一次同样的任务，以先成功的结果为准并取消另一个，
+     * 用于降低偶发慢请求造成的长尾时延。任务必须是幂等的。
+     * 注：执行耗时的样本数少于{@link #HEDGE_MIN_SAMPLES}时不发出备份请求
+     * @param task
+     * @param percentile 发出备份请求前等待的执行耗时分位数，如95
+     * @param timeout 整体的超时时间
+     * @param unit
+     * @param <T>
+     * @return
+     * @throws InterruptedException
+     * @throws ExecutionException 原请求与备份请求均失败
+     * @throws TimeoutException
+     */
+    public <T> T invokeHedged(Callable<T> task, double percentile, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        LatencyHistogram.Snapshot runTime = this.metrics.getRunTime().snapshot();
+        long hedgeDelayNanos = runTime.getCount() < HEDGE_MIN_SAMPLES ? -1L : runTime.getPercentile(percentile);
+        return new HedgedCall<>(this, task).invoke(hedgeDelayNanos, timeout, unit);
+    }
+
+    /**
+     * 对冲调用：提交任务后等待hedgeDelay，任务仍未完成则再提交一次同样的任务，语义同{@link #invokeHedged(Callable, double, long, TimeUnit)}
+     * @param task
+     * @param hedgeDelay 发出备份请求前等待的时间，精度为共享时间轮的tick（10ms）
+     * @param timeout 整体的超时时间
+     * @param unit hedgeDelay与timeout的单位
+     * @param <T>
+     * @return
+     * @throws InterruptedException
+     * @throws ExecutionException 原请求与备份请求均失败
+     * @throws TimeoutException
+     */
+    public <T> T invokeHedged(Callable<T> task, long hedgeDelay, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return new HedgedCall<>(this, task).invoke(Math.max(0L, unit.toNanos(hedgeDelay)), timeout, unit);
+    }
+
+    /**
+     * 法定数量调用：同时提交所有任务，其中k个成功后立即返回并取消其余任务
+     * @param tasks
+     * @param k 需要成功的任务数
+     * @param timeout 整体的超时时间
+     * @param unit
+     * @param <T>
+     * @return 按完成先后排列的k个结果
+     * @throws InterruptedException
+     * @throws ExecutionException 失败的任务过多，已不可能凑够k个成功的结果
+     * @throws TimeoutException
+     */
+    public <T> List<T> invokeQuorum(Collection<? extends Callable<T>> tasks, int k, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (k <= 0 || k > tasks.size()) {
+            throw new IllegalArgumentException("invalid quorum: " + k + " of " + tasks.size());
+        }
+        return new QuorumCall<T>(this, k, tasks.size()).invoke(tasks, timeout, unit);
+    }
+
+    /**
+     * 打开一个结构化并发的任务作用域，截止时间为线程池的超时时间，从打开时开始计算，参考{@link TaskScope}
+     * <pre>
+     * try (TaskScope&lt;String&gt; scope = threadPool.openScope(TaskScope.Policy.SHUTDOWN_ON_FAILURE)) {
+     *     scope.fork(() -&gt; queryA());
+     *     scope.fork(() -&gt; queryB());
+     *     scope.join();
+     *     List&lt;String&gt; results = scope.results();
+     * }
+     * </pre>
+     * @param policy 提前结束的策略
+     * @param <T>
+     * @return
+     */
+    public <T> TaskScope<T> openScope(TaskScope.Policy policy) {
+        return this.openScope(policy, this.timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 打开一个指定截止时间的结构化并发的任务作用域，参考{@link TaskScope}
+     * @param policy 提前结束的策略
+     * @param timeout 从打开时开始计算的截止时间，小于等于0表示不限制
+     * @param unit
+     * @param <T>
+     * @return
+     */
+    public <T> TaskScope<T> openScope(TaskScope.Policy policy, long timeout, TimeUnit unit) {
+        return new TaskScope<>(this, policy, timeout, unit);
+    }
+
+    /**
+     * 执行一个带截止时间的无返回值任务，出队时已超过截止时间的任务不再执行，而是回调{@link TaskDropHandler}
+     * 注：使用{@link ThreadQueueType#DeadlineQueue}时按截止时间先后执行，其他队列类型仍按原有顺序执行，仅丢弃过期任务
+     * @param task
+     * @param deadline 从现在开始计算的截止时间，即任务最晚的开始执行时间
+     * @param unit
+     */
+    public void execute(Runnable task, long deadline, TimeUnit unit) {
+        this.taskPool.execute(new CustomTask(task, this, Math.max(0L, unit.toNanos(deadline))));
+        this.afterSubmit();
+    }
+
+    /**
+     * 提交一个带截止时间且可以带有超时限制的含返回值的任务，出队时已超过截止时间的任务不再执行，
+     * 其future被取消（get()抛出CancellationException）并回调{@link TaskDropHandler}
+     * 注：截止时间只约束任务的开始时间，任务开始后仍受线程池超时时间的约束
+     * @param task
+     * @param deadline 从现在开始计算的截止时间，即任务最晚的开始执行时间
+     * @param unit
+     * @param <T>
+     * @return
+     */
+    public <T> Future<T> submit(Callable<T> task, long deadline, TimeUnit unit) {
+        CustomFutureTask<T> future = new CustomFutureTask<>(task, this, Math.max(0L, unit.toNanos(deadline)));
+        this.taskPool.execute(future);
+        this.afterSubmit();
+
+        this.isOvertime(future);
+        return future;
+    }
+
+    /**
+     * 以指定租户的身份执行一个无返回值且无超时时间的任务，任务的排队耗时同时按租户统计
+     * 注：使用{@link ThreadQueueType#TenantFairQueue}时按租户权重公平出队，且该租户排队数达到上限时执行拒绝策略，
+     * 即使线程数未达到maxPoolSize也不会为其创建新线程；其他队列类型仅按租户统计排队耗时
+     * @param tenant 租户标识，为null时归入{@link TenantFairBlockingQueue#DEFAULT_TENANT}
+     * @param task
+     */
+    public void executeForTenant(String tenant, Runnable task) {
+        CustomTask customTask = new CustomTask(task, this);
+        customTask.setTenant(tenant);
+        this.taskPool.execute(customTask);
+        this.afterSubmit();
+    }
+
+    /**
+     * 以指定租户的身份提交一个可以带有超时限制的含返回值的任务，租户语义同{@link #executeForTenant(String, Runnable)}
+     * @param tenant 租户标识，为null时归入{@link TenantFairBlockingQueue#DEFAULT_TENANT}
+     * @param task
+     * @param <T>
+     * @return
+     */
+    public <T> Future<T> submitForTenant(String tenant, Callable<T> task) {
+        CustomFutureTask<T> future = new CustomFutureTask<>(task, this);
+        future.setTenant(tenant);
+        this.taskPool.execute(future);
+        this.afterSubmit();
+
+        this.isOvertime(future);
+        return future;
+    }
+
+    /**
+     * 按key串行执行一个无返回值且无超时时间的任务：同一个key的任务严格按提交顺序逐个执行，不同key的任务并行执行
+     * 注：
+     *  1. 任务内部的异常，会被线程的UncaughtExceptionHandler捕获，且不影响同key后续任务的执行
+     *  2. 线程池满时，同key的后续任务会在当前工作线程中循环执行（包括CallerRunsPolicy）；key的第一个任务被拒绝时不执行并抛出异常。
+     *     拒绝策略不能静默丢弃任务（如DiscardPolicy），否则该key的后续任务将无法执行
+     * @param key 顺序键，如订单号
+     * @param task
+     */
+    public void execute(Object key, Runnable task) {
+        this.keyOrderedExecutor.execute(key, new CustomTask(task, this));
+        this.afterSubmit();
+    }
+
+    /**
+     * 按key串行提交一个可以带有超时限制的含返回值的任务，顺序语义同{@link #execute(Object, Runnable)}
+     * 注：超时时间从提交时开始计算，包括在同key队列中等待的时间
+     * @param key 顺序键，如订单号
+     * @param task
+     * @param <T>
+     * @return
+     */
+    public <T> Future<T> submit(Object key, Callable<T> task) {
+        CustomFutureTask<T> future = new CustomFutureTask<>(task, this);
+        this.keyOrderedExecutor.execute(key, future);
+        this.afterSubmit();
+
+        this.isOvertime(future);
+        return future;
+    }
+
+    /**
+     * 按key串行提交一个可以带有超时限制的不含返回值的任务，任务内部的异常会打印error日志，顺序语义同{@link #execute(Object, Runnable)}
+     * @param key 顺序键，如订单号
+     * @param task
+     * @return
+     */
+    public Future<?> submit(Object key, Runnable task) {
+        return this.submit(key, () -> {
+            try {
+                task.run();
+            } catch (Exception ex) {
+                log.error("submit task fail. key:{}", key, ex);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 创建一个提交到本线程池的微批处理器，适用于大量很小的任务：元素累积到maxBatchSize个或第一个元素等待超过maxLinger时，
+     * 整批作为一个任务交给consumer执行，参考{@link MicroBatcher}
+     * @param consumer 批处理逻辑，在本线程池的工作线程中执行
+     * @param maxBatchSize 批次的最大元素个数
+     * @param maxLinger 元素在批次中的最长等待时间，精度为共享时间轮的tick（10ms）
+     * @param unit
+     * @param <T>
+     * @return
+     */
+    public <T> MicroBatcher<T> newBatcher(Consumer<List<T>> consumer, int maxBatchSize, long maxLinger, TimeUnit unit) {
+        return new MicroBatcher<>(this, consumer, maxBatchSize, maxLinger, unit, CustomThreadPoolManager.getTimeoutTimer());
+    }
+
+    /**
+     * 创建一个把Reactive Streams上游接入本线程池的订阅者，同时处理的元素数为maxPoolSize加上队列中可用的空位（不超过initQueueSize），
+     * 参考{@link #newSubscriber(Consumer, int)}
+     * @param consumer 元素的处理逻辑，在本线程池的工作线程中执行
+     * @param <T>
+     * @return
+     */
+    public <T> ThreadPoolSubscriber<T> newSubscriber(Consumer<? super T> consumer) {
+        int queueSlots = Math.min(this.queue.remainingCapacity(), this.initQueueSize);
+        return this.newSubscriber(consumer, this.maxPoolSize + Math.max(0, queueSlots));
+    }
+
+    /**
+     * 创建一个把Reactive Streams上游接入本线程池的订阅者：每个元素作为一个任务执行，
+     * 一个任务结束后才向上游请求下一个元素，由上游按需生产，参考{@link ThreadPoolSubscriber}
+     * @param consumer 元素的处理逻辑，在本线程池的工作线程中执行
+     * @param maxInFlight 同时在执行中或排队的元素数上限
+     * @param <T>
+     * @return
+     */
+    public <T> ThreadPoolSubscriber<T> newSubscriber(Consumer<? super T> consumer, int maxInFlight) {
+        return new ThreadPoolSubscriber<>(this, consumer, maxInFlight);
+    }
+
+    /**
+     * 以Reactive Streams发布一组任务的结果，同时执行的任务数不超过maxPoolSize，参考{@link #publishResults(Iterable, int)}
+     * @param tasks
+     * @param <T>
+     * @return
+     */
+    public <T> TaskResultPublisher<T> publishResults(Iterable<? extends Callable<? extends T>> tasks) {
+        return this.publishResults(tasks, this.maxPoolSize);
+    }
+
+    /**
+     * 以Reactive Streams发布一组任务的结果：只在下游有需求时才提交任务，结果按完成先后发出，参考{@link TaskResultPublisher}
+     * @param tasks 任务源，可以是惰性生成任务的Iterable
+     * @param maxInFlight 同时提交的任务数上限
+     * @param <T>
+     * @return
+     */
+    public <T> TaskResultPublisher<T> publishResults(Iterable<? extends Callable<? extends T>> tasks, int maxInFlight) {
+        return new TaskResultPublisher<>(this, tasks, maxInFlight);
+    }
+
+    /**
+     * 返回当前有任务在执行或排队的顺序键数量
+     * @return
+     */
+    public int getOrderedKeyCount() {
+        return this.keyOrderedExecutor.keyCount();
+    }
+
     public String getKey(){
         return this.key;
     }
 
+    /**
+     * 返回停滞检测器，未启用时返回null
+     * @return
+     */
+    StallDetector getStallDetector() {
+        return this.stallDetector;
+    }
+
+    /**
+     * 返回已溢出到磁盘、未重新提交的负载任务数，未启用溢出时返回0
+     * @return
+     */
+    public long getSpillBacklog() {
+        return null == this.overflowSpill ? 0L : this.overflowSpill.getBacklog();
+    }
+
+    /**
+     * 返回线程池的监控指标
+     * @return
+     */
+    public ThreadPoolMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * 丢弃已入队但未执行的任务：取消其future并回调{@link TaskDropHandler}，未配置时打印warn日志
+     * @param task
+     * @param reason
+     */
+    void dropTask(Runnable task, TaskDropHandler.Reason reason) {
+        this.metrics.recordDropped();
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+        if (null == this.taskDropHandler) {
+            log.warn("task dropped because of {}. key<{}> task:{}", reason, this.key, task);
+            return;
+        }
+        try {
+            this.taskDropHandler.onDrop(task, reason, this);
+        } catch (Throwable t) {
+            log.error("task drop handler fail. key<{}>", this.key, t);
+        }
+    }
+
+    private void afterSubmit() {
+        this.metrics.recordSubmitted();
+        if (this.showThreadQueueSize > -1) {
+            int size = this.queue.size();
+            if (size >= this.showThreadQueueSize) {
+                log.info("task queue length <{}> key<{}>", size, this.key);
+            }
+        }
+    }
+
     private BlockingQueue<Runnable> getBlockQueue() {
         BlockingQueue<Runnable> blockingQueue;
         if (this.type.equals(ThreadQueueType.SynchronousQueueWithFair.getValue())) {
@@ -165,6 +689,20 @@ public class CustomThreadPool {
             blockingQueue = new LinkedBlockingQueue();
         } else if (this.type.equals(ThreadQueueType.LinkedBlockingQueueWithQueueSize.getValue())) {
             blockingQueue = new LinkedBlockingQueue(this.initQueueSize);
+        } else if (this.type.equals(ThreadQueueType.DeadlineQueue.getValue())) {
+            blockingQueue = new DeadlineBlockingQueue(this.initQueueSize);
+        } else if (this.type.equals(ThreadQueueType.CoDelQueue.getValue())) {
+            blockingQueue = new CoDelBlockingQueue(this.initQueueSize, this.coDel, task -> this.dropTask(task, TaskDropHandler.Reason.OVERLOADED));
+        } else if (this.type.equals(ThreadQueueType.TenantFairQueue.getValue())) {
+            blockingQueue = new TenantFairBlockingQueue(this.tenant, this.initQueueSize);
+        } else if (this.type.equals(ThreadQueueType.ResizableQueue.getValue())) {
+            blockingQueue = new ResizableBlockingQueue<>(this.initQueueSize);
+        } else if (this.type.equals(ThreadQueueType.ElasticQueue.getValue())) {
+            blockingQueue = new EagerTaskQueue(this.initQueueSize);
+        } else if (this.type.equals(ThreadQueueType.RingBufferQueue.getValue())) {
+            blockingQueue = new RingBufferBlockingQueue<>(this.initQueueSize, this.waitStrategy);
+        } else if (this.virtualThreadMode || this.type.equals(ThreadQueueType.SharedCarrier.getValue())) {
+            blockingQueue = new LinkedBlockingQueue<>(this.initQueueSize);
         } else {
             blockingQueue = new SynchronousQueue();
         }
@@ -172,14 +710,35 @@ public class CustomThreadPool {
         return blockingQueue;
     }
 
-    private void isOvertime(final Future future) {
+    private static ThreadPoolExecutor newTimeoutDispatcher() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "CustomThreadPool-timeout-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private boolean resolveVirtualThreadMode() {
+        if (!this.type.equals(ThreadQueueType.VirtualThread.getValue())) {
+            return false;
+        }
+        if (!VirtualThreadExecutor.isSupported()) {
+            log.warn("virtual thread is not supported, fallback to SynchronousQueue. key:{}", this.key);
+            return false;
+        }
+        return true;
+    }
+
+    private void isOvertime(final CustomFutureTask<?> future) {
         if (this.timeout > 0L) {
-            this.scdTaskPool.schedule(()->{
-                if (!future.isDone()) {
-                    future.cancel(true);
-                    log.warn("task cancel because out of time: over <" + CustomThreadPool.this.timeout + "ms> key<" + CustomThreadPool.this.key + ">");
+            future.setTimeout(CustomThreadPoolManager.getTimeoutTimer().newTimeout(()->{
+                if (!future.isDone() && future.cancel(true)) {
+                    CustomThreadPool.this.metrics.recordTimeoutCancelled();
+                    log.warn("task cancel because out of time: over <{}ms> key<{}>", CustomThreadPool.this.timeout, CustomThreadPool.this.key);
                 }
-            }, this.timeout, TimeUnit.MILLISECONDS);
+            }, this.timeout, TimeUnit.MILLISECONDS));
         }
 
     }
@@ -188,8 +747,29 @@ public class CustomThreadPool {
         return this.taskPool.awaitTermination(timeout, timeUnit);
     }
 
+    /**
+     * 立即关闭线程池：与{@link #shutdown()}一样停止各组件并释放共享资源，中断正在执行的任务；
+     * 未执行的submit/submitAsync任务以{@link RejectedExecutionException}异常完成，等待结果的调用方不会一直阻塞
+     * @return 未执行的任务，包括按key串行提交、仍在同key队列中等待的任务
+     * @throws InterruptedException
+     */
     public List<Runnable> shutdownNow() throws InterruptedException {
-        return this.taskPool.shutdownNow();
+        this.stopComponents();
+        // 先于中断取出同key队列中的任务，被中断的任务结束时不会再交接（或在当前线程执行）同key的后续任务
+        List<Runnable> keyedTasks = this.keyOrderedExecutor.drain();
+        List<Runnable> tasks = new ArrayList<>();
+        for (Runnable task : this.taskPool.shutdownNow()) {
+            tasks.add(KeyOrderedExecutor.unwrap(task));
+        }
+        tasks.addAll(keyedTasks);
+        // 期间新提交的按key任务
+        tasks.addAll(this.keyOrderedExecutor.drain());
+        for (Runnable task : tasks) {
+            this.discard(task, "shutdownNow");
+        }
+        CustomThreadPoolManager.releaseSharedResources(this);
+        log.info("CustomThreadPool[" + this.key + "] is shutdown now, unexecuted tasks:" + tasks.size());
+        return tasks;
     }
 
     public BlockingQueue<Runnable> getQueue() {
@@ -201,8 +781,58 @@ public class CustomThreadPool {
     }
 
     public void setPoolSize(int corePoolSize, int maxPoolSize) {
-        this.taskPool.setCorePoolSize(corePoolSize);
-        this.taskPool.setMaximumPoolSize(maxPoolSize);
+        if (corePoolSize > maxPoolSize) {
+            throw new IllegalArgumentException("corePoolSize(" + corePoolSize + ") is greater than maxPoolSize(" + maxPoolSize + ")");
+        }
+        // 调整过程中需始终满足 corePoolSize <= maximumPoolSize
+        if (maxPoolSize >= this.taskPool.getCorePoolSize()) {
+            this.taskPool.setMaximumPoolSize(maxPoolSize);
+            this.taskPool.setCorePoolSize(corePoolSize);
+        } else {
+            this.taskPool.setCorePoolSize(corePoolSize);
+            this.taskPool.setMaximumPoolSize(maxPoolSize);
+        }
+        this.corePoolSize = corePoolSize;
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * 把新的配置应用到运行中的线程池，只调整以下参数（值为0表示沿用当前值），其他参数（如队列类型）需重建线程池才能生效：
+     * 1. corePoolSize、maxPoolSize、keepAliveTime
+     * 2. timeout：只对之后提交的任务生效
+     * 3. initQueueSize：队列类型为{@link ThreadQueueType#ResizableQueue}、{@link ThreadQueueType#DeadlineQueue}或{@link ThreadQueueType#CoDelQueue}时同步调整队列容量
+     * 启用了自适应调整线程数时，线程数由控制器决定，不在此调整
+     * @param conf
+     */
+    public synchronized void reconfigure(ThreadPoolConfigure conf) {
+        if (null == this.adaptivePoolSizer) {
+            int newCore = conf.getCorePoolSize() == 0 ? this.corePoolSize : conf.getCorePoolSize();
+            int newMax = conf.getMaxPoolSize() == 0 ? this.maxPoolSize : conf.getMaxPoolSize();
+            if (newCore != this.corePoolSize || newMax != this.maxPoolSize) {
+                this.setPoolSize(newCore, newMax);
+            }
+        }
+        if (conf.getKeepAliveTime() != 0L && conf.getKeepAliveTime() != this.keepAliveTime) {
+            this.taskPool.setKeepAliveTime(conf.getKeepAliveTime(), TimeUnit.SECONDS);
+            this.keepAliveTime = conf.getKeepAliveTime();
+        }
+        if (conf.getTimeout() != 0L) {
+            this.timeout = conf.getTimeout();
+        }
+        if (conf.getInitQueueSize() != 0 && conf.getInitQueueSize() != this.initQueueSize) {
+            // 只有容量取自initQueueSize的可调整队列才同步调整
+            if (this.queue instanceof ResizableBlockingQueue || this.queue instanceof DeadlineBlockingQueue
+                    || this.queue instanceof CoDelBlockingQueue) {
+                ((AbstractBoundedBlockingQueue<?>) this.queue).setCapacity(conf.getInitQueueSize());
+                this.initQueueSize = conf.getInitQueueSize();
+            } else {
+                log.warn("queue capacity of key<{}> can not be changed at runtime, queue: {}", this.key, this.queue.getClass().getSimpleName());
+            }
+        }
+        if (StringUtils.hasText(conf.getType()) && !conf.getType().equals(this.type)) {
+            log.warn("queue type of key<{}> can not be changed at runtime: {} -> {}", this.key, this.type, conf.getType());
+        }
+        log.info("Thread pool reconfigured: {}", this.toString());
     }
 
     public int getActiveCount() {
@@ -218,12 +848,26 @@ public class CustomThreadPool {
     }
 
     public void shutdown() {
+        this.stopComponents();
         this.taskPool.shutdown();
+        CustomThreadPoolManager.releaseSharedResources(this);
         log.info("CustomThreadPool[" + this.key + "] is shutdown:" + this.taskPool.isShutdown());
     }
 
+    private void stopComponents() {
+        if (null != this.adaptivePoolSizer) {
+            this.adaptivePoolSizer.stop();
+        }
+        if (null != this.stallDetector) {
+            this.stallDetector.stop();
+        }
+        if (null != this.overflowSpill) {
+            this.overflowSpill.stop();
+        }
+    }
+
     @Override
     public String toString() {
-        return "CustomThreadPool{key='" + this.key + '\'' + ", timeout=" + this.timeout + ", type='" + this.type + '\'' + ", corePoolSize=" + this.corePoolSize + ", maxPoolSize=" + this.maxPoolSize + ", keepAliveTime=" + this.keepAliveTime + ", fair=" + this.fair + ", initQueueSize=" + this.initQueueSize + ", taskPool=" + this.taskPool + ", queue=" + this.queue + ", scdTaskPool=" + this.scdTaskPool + '}';
+        return "CustomThreadPool{key='" + this.key + '\'' + ", timeout=" + this.timeout + ", type='" + this.type + '\'' + ", corePoolSize=" + this.corePoolSize + ", maxPoolSize=" + this.maxPoolSize + ", keepAliveTime=" + this.keepAliveTime + ", fair=" + this.fair + ", initQueueSize=" + this.initQueueSize + ", taskPool=" + this.taskPool + ", queue=" + this.queue + '}';
     }
 }
@@ -3,8 +3,10 @@ package com.walter.threadpool.core;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -17,6 +19,21 @@ public class CustomThreadPoolManager {
 
     private static final ConcurrentHashMap<String, CustomThreadPool> THREAD_POOLS = new ConcurrentHashMap<>();
 
+    /**
+     * 所有线程池共享的任务超时定时器
+     */
+    private static volatile HashedWheelTimer timeoutTimer;
+
+    /**
+     * 共享载体模式下所有逻辑线程池共用的载体线程
+     */
+    private static volatile SharedCarrierPool sharedCarrier;
+
+    /**
+     * 使用共享定时器与载体线程的线程池（包括不由本类管理、直接创建的线程池），全部关闭后才停止共享资源
+     */
+    private static final Set<CustomThreadPool> SHARED_RESOURCE_USERS = ConcurrentHashMap.newKeySet();
+
     private CustomThreadPoolManager(){}
 
     public static CustomThreadPool getThreadPool(ThreadPoolConfigure conf) {
@@ -24,13 +41,66 @@ public class CustomThreadPoolManager {
         if (!THREAD_POOLS.containsKey(key)) {
             synchronized (CustomThreadPoolManager.class) {
                 if (!THREAD_POOLS.containsKey(key)) {
-                    THREAD_POOLS.put(key, new CustomThreadPool(conf));
+                    CustomThreadPool pool = new CustomThreadPool(conf);
+                    pool.getMetrics().registerMBean();
+                    THREAD_POOLS.put(key, pool);
                 }
             }
         }
         return THREAD_POOLS.get(key);
     }
 
+    /**
+     * 返回所有线程池共享的任务超时定时器，精度为10ms
+     * @return
+     */
+    public static HashedWheelTimer getTimeoutTimer() {
+        HashedWheelTimer timer = timeoutTimer;
+        if (null == timer) {
+            synchronized (CustomThreadPoolManager.class) {
+                timer = timeoutTimer;
+                if (null == timer) {
+                    timer = new HashedWheelTimer("CustomThreadPool-timeout", 10L, TimeUnit.MILLISECONDS, 512);
+                    timeoutTimer = timer;
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * 返回共享载体模式（{@link ThreadQueueType#SharedCarrier}）下所有逻辑线程池共用的载体线程，线程数等于CPU核数
+     * @return
+     */
+    static SharedCarrierPool getSharedCarrier() {
+        SharedCarrierPool carrier = sharedCarrier;
+        if (null == carrier) {
+            synchronized (CustomThreadPoolManager.class) {
+                carrier = sharedCarrier;
+                if (null == carrier) {
+                    carrier = new SharedCarrierPool("CustomThreadPool-carrier", Runtime.getRuntime().availableProcessors());
+                    sharedCarrier = carrier;
+                }
+            }
+        }
+        return carrier;
+    }
+
+    /**
+     * 登记线程池为共享资源的使用者，线程池关闭前shutdownAll不会停止共享的定时器与载体线程。
+     * 需在获取共享资源之前调用，与stopSharedResources互斥，保证不会拿到即将被停止的定时器或载体线程
+     * @param pool
+     */
+    static void retainSharedResources(CustomThreadPool pool) {
+        synchronized (CustomThreadPoolManager.class) {
+            SHARED_RESOURCE_USERS.add(pool);
+        }
+    }
+
+    static void releaseSharedResources(CustomThreadPool pool) {
+        SHARED_RESOURCE_USERS.remove(pool);
+    }
+
     public static Map<String, CustomThreadPool> getThreadPool() {
         return THREAD_POOLS;
     }
@@ -41,25 +111,92 @@ public class CustomThreadPoolManager {
             return;
         }
         pool.shutdown();
+        pool.getMetrics().unregisterMBean();
         THREAD_POOLS.remove(type);
     }
 
-    public static void shutdownAll(long timeout, TimeUnit timeUnit) {
+    /**
+     * 关闭所有线程池：所有线程池同时开始关闭，并共享同一个截止时间，到期仍未结束的线程池调用shutdownNow。
+     * 所有线程池关闭后，如果不再有未关闭的线程池（包括直接创建、不由本类管理的线程池）使用共享的超时时间轮与载体线程，
+     * 同时停止它们（再次使用时会重新创建）；否则保留，由仍在运行的线程池继续使用。
+     * @param timeout 所有线程池总的等待时间
+     * @param timeUnit
+     * @return 每个线程池的关闭结果，包括被中断的任务数与被丢弃的排队任务
+     */
+    public static ShutdownReport shutdownAll(long timeout, TimeUnit timeUnit) {
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + timeUnit.toNanos(timeout);
         List<CustomThreadPool> customThreadPoolList = new ArrayList<>(THREAD_POOLS.values());
-        if (!customThreadPoolList.isEmpty()) {
-            for (CustomThreadPool customThreadPool : customThreadPoolList) {
-                log.info("thread pool is closing: {}", customThreadPool.getKey());
-                customThreadPool.shutdown();
+        for (CustomThreadPool customThreadPool : customThreadPoolList) {
+            log.info("thread pool is closing: {}", customThreadPool.getKey());
+            customThreadPool.shutdown();
+        }
+
+        List<ShutdownReport.PoolReport> poolReports = new ArrayList<>(customThreadPoolList.size());
+        boolean interrupted = false;
+        for (CustomThreadPool customThreadPool : customThreadPoolList) {
+            boolean terminated = false;
+            if (!interrupted) {
                 try {
-                    if (!customThreadPool.awaitTermination(timeout, timeUnit)) {
-                        customThreadPool.shutdownNow();
-                    }
-                    log.info("thread pool is closed: {}", customThreadPool.getKey());
+                    terminated = customThreadPool.awaitTermination(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
                 } catch (InterruptedException e) {
-                    throw new RuntimeException("Interrupted while waiting for customThreadPool to be shutdown. key:" + customThreadPool.getKey());
+                    // 不再等待，其余线程池直接shutdownNow，最后恢复中断状态
+                    interrupted = true;
+                }
+            }
+            int interruptedCount = 0;
+            List<Runnable> droppedTasks = Collections.emptyList();
+            if (!terminated) {
+                interruptedCount = customThreadPool.getActiveCount();
+                try {
+                    droppedTasks = customThreadPool.shutdownNow();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                log.warn("thread pool is forced to close: {}, interrupted: {}, dropped: {}", customThreadPool.getKey(), interruptedCount, droppedTasks.size());
+            } else {
+                log.info("thread pool is closed: {}", customThreadPool.getKey());
+            }
+            customThreadPool.getMetrics().unregisterMBean();
+            THREAD_POOLS.remove(customThreadPool.getKey(), customThreadPool);
+            poolReports.add(new ShutdownReport.PoolReport(customThreadPool.getKey(), terminated, interruptedCount, droppedTasks));
+        }
+
+        stopSharedResources(Math.max(0L, deadline - System.nanoTime()));
+        ShutdownReport report = new ShutdownReport(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), poolReports);
+        log.info("all thread pools are closed: {}", report);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return report;
+    }
+
+    private static void stopSharedResources(long timeoutNanos) {
+        HashedWheelTimer timer;
+        SharedCarrierPool carrier;
+        synchronized (CustomThreadPoolManager.class) {
+            SHARED_RESOURCE_USERS.removeIf(pool -> null == pool.getTaskPool() || pool.getTaskPool().isShutdown());
+            if (!SHARED_RESOURCE_USERS.isEmpty()) {
+                log.info("shared timer and carrier are kept, still used by {} thread pools", SHARED_RESOURCE_USERS.size());
+                return;
+            }
+            timer = timeoutTimer;
+            carrier = sharedCarrier;
+            timeoutTimer = null;
+            sharedCarrier = null;
+        }
+        if (null != timer) {
+            long cancelled = timer.stop();
+            log.info("timeout timer is stopped, cancelled timeouts: {}", cancelled);
+        }
+        if (null != carrier) {
+            try {
+                if (!carrier.stop(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    log.warn("shared carrier threads are still running after stop.");
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
-        THREAD_POOLS.clear();
     }
 }
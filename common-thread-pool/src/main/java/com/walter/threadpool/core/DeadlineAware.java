@@ -0,0 +1,29 @@
+package com.walter.threadpool.core;
+
+/**
+ * 带有截止时间的任务，截止时间为{@link System#nanoTime()}的绝对值
+ * @author walter.tan
+ */
+interface DeadlineAware {
+
+    /**
+     * 是否设置了截止时间
+     * @return
+     */
+    boolean hasDeadline();
+
+    /**
+     * 截止时间，仅在{@link #hasDeadline()}为true时有意义
+     * @return
+     */
+    long getDeadlineNanos();
+
+    /**
+     * 是否已超过截止时间
+     * @param nowNanos
+     * @return
+     */
+    default boolean isExpired(long nowNanos) {
+        return hasDeadline() && nowNanos - getDeadlineNanos() > 0;
+    }
+}
@@ -0,0 +1,105 @@
+package com.walter.threadpool.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 按截止时间排序（EDF，最早截止时间优先）的有界阻塞队列：
+ * 1. 带截止时间的任务按截止时间升序出队
+ * 2. 未设置截止时间的任务排在所有带截止时间的任务之后
+ * 3. 截止时间相同或均未设置时按入队顺序（FIFO）出队
+ * 已过期的任务不在队列中丢弃，而是由线程池在工作线程取出任务后丢弃并回调{@link TaskDropHandler}。
+ *
+ * @author walter.tan
+ */
+public class DeadlineBlockingQueue extends AbstractBoundedBlockingQueue<Runnable> {
+
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>();
+    private long sequence;
+
+    /**
+     * @param capacity 队列容量
+     */
+    public DeadlineBlockingQueue(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected boolean doOffer(Runnable task) {
+        heap.add(new Entry(task, sequence++));
+        return true;
+    }
+
+    @Override
+    protected Runnable doPoll() {
+        Entry entry = heap.poll();
+        return entry == null ? null : entry.task;
+    }
+
+    @Override
+    protected Runnable doPeek() {
+        Entry entry = heap.peek();
+        return entry == null ? null : entry.task;
+    }
+
+    @Override
+    protected int doSize() {
+        return heap.size();
+    }
+
+    @Override
+    protected boolean doRemove(Object o) {
+        for (Iterator<Entry> it = heap.iterator(); it.hasNext(); ) {
+            if (it.next().task.equals(o)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected List<Runnable> doSnapshot() {
+        List<Runnable> snapshot = new ArrayList<>(heap.size());
+        for (Entry entry : heap) {
+            snapshot.add(entry.task);
+        }
+        return snapshot;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final Runnable task;
+        private final long sequence;
+        private final boolean hasDeadline;
+        private final long deadlineNanos;
+
+        private Entry(Runnable task, long sequence) {
+            this.task = task;
+            this.sequence = sequence;
+            if (task instanceof DeadlineAware && ((DeadlineAware) task).hasDeadline()) {
+                this.hasDeadline = true;
+                this.deadlineNanos = ((DeadlineAware) task).getDeadlineNanos();
+            } else {
+                this.hasDeadline = false;
+                this.deadlineNanos = 0L;
+            }
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            if (hasDeadline != o.hasDeadline) {
+                return hasDeadline ? -1 : 1;
+            }
+            if (hasDeadline) {
+                // nanoTime可能溢出，只能比较差值
+                long diff = deadlineNanos - o.deadlineNanos;
+                if (diff != 0) {
+                    return diff < 0 ? -1 : 1;
+                }
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
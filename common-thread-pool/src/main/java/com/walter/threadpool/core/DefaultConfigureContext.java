@@ -28,6 +28,14 @@ public class DefaultConfigureContext implements ConfigureContext {
         return map.putIfAbsent(configure.getKey(), configure) == null;
     }
 
+    /**
+     * 替换已有的线程池配置
+     * @param configure
+     */
+    protected void replaceThreadPoolConfigure(ThreadPoolConfigure configure) {
+        map.put(configure.getKey(), configure);
+    }
+
     /**
      * 默认线程池的配置
      * @return
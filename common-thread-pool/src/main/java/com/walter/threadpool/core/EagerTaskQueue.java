@@ -0,0 +1,58 @@
+package com.walter.threadpool.core;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 优先扩容线程再排队的任务队列（参考Tomcat的TaskQueue），需配合{@link EagerThreadPoolExecutor}使用。
+ * <p>
+ * {@link java.util.concurrent.ThreadPoolExecutor}只有在入队失败时才会创建核心线程以外的线程，
+ * 本队列在线程数未达到最大线程数且没有空闲线程时拒绝入队，使线程池先扩容到maximumPoolSize，之后任务才开始排队。
+ * 因扩容失败（如并发下线程数已达上限）而被拒绝的任务，由执行器的拒绝策略通过{@link #force(Runnable)}重新入队。
+ *
+ * @author walter.tan
+ */
+public class EagerTaskQueue extends LinkedBlockingQueue<Runnable> {
+
+    private transient volatile EagerThreadPoolExecutor executor;
+
+    public EagerTaskQueue(int capacity) {
+        super(capacity);
+    }
+
+    void setExecutor(EagerThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 跳过扩容判断直接入队，仅在线程池拒绝任务时使用
+     * @param task
+     * @return 队列已满时返回false
+     * @throws RejectedExecutionException 线程池已关闭
+     */
+    boolean force(Runnable task) {
+        if (null == executor || executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor not running, can't force a command into the queue");
+        }
+        return super.offer(task);
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        EagerThreadPoolExecutor parent = this.executor;
+        if (null == parent) {
+            return super.offer(task);
+        }
+        int poolSize = parent.getPoolSize();
+        // 线程数已达上限，只能排队
+        if (poolSize >= parent.getMaximumPoolSize()) {
+            return super.offer(task);
+        }
+        // 有空闲线程，排队即可被立即取走
+        if (parent.getSubmittedCount() <= poolSize) {
+            return super.offer(task);
+        }
+        // 返回false使线程池创建新线程
+        return false;
+    }
+}
@@ -0,0 +1,111 @@
+package com.walter.threadpool.core;
+
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 配合{@link EagerTaskQueue}使用的线程池：记录已提交但未执行完的任务数，供队列判断是否有空闲线程，
+ * 排队中的任务未执行就离开队列（remove、purge、shutdownNow、DiscardOldestPolicy）时同样扣减；
+ * 任务因扩容失败被拒绝时，先尝试强制入队，队列也满时才交由原拒绝策略处理。
+ *
+ * @author walter.tan
+ */
+class EagerThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private final AtomicInteger submittedCount = new AtomicInteger();
+
+    EagerThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                            EagerTaskQueue workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, new ForceQueuePolicy(handler));
+        workQueue.setExecutor(this);
+    }
+
+    /**
+     * 返回已提交但未执行完的任务数，包括正在执行与排队中的任务
+     * @return
+     */
+    int getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        // 必须先计数再入队，否则队列会误判存在空闲线程
+        submittedCount.incrementAndGet();
+        super.execute(command);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        submittedCount.decrementAndGet();
+    }
+
+    /**
+     * 排队中的任务未执行就被移出队列时（如DiscardOldestPolicy）调用，否则计数只增不减，队列会一直误判没有空闲线程
+     */
+    void dequeued() {
+        submittedCount.decrementAndGet();
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        boolean removed = super.remove(task);
+        if (removed) {
+            dequeued();
+        }
+        return removed;
+    }
+
+    /**
+     * 父类直接从队列中移除已取消的任务，改为逐个调用{@link #remove(Runnable)}以扣减计数
+     */
+    @Override
+    public void purge() {
+        for (Object r : getQueue().toArray()) {
+            if (r instanceof Future<?> && ((Future<?>) r).isCancelled()) {
+                remove((Runnable) r);
+            }
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = super.shutdownNow();
+        submittedCount.addAndGet(-tasks.size());
+        return tasks;
+    }
+
+    /**
+     * 先尝试强制入队，失败时再交由原拒绝策略处理
+     */
+    private static class ForceQueuePolicy implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegate;
+
+        private ForceQueuePolicy(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            EagerTaskQueue queue = (EagerTaskQueue) executor.getQueue();
+            try {
+                if (queue.force(r)) {
+                    return;
+                }
+            } catch (RejectedExecutionException e) {
+                // 线程池已关闭，交由原拒绝策略处理
+            }
+            ((EagerThreadPoolExecutor) executor).submittedCount.decrementAndGet();
+            delegate.rejectedExecution(r, executor);
+        }
+    }
+}
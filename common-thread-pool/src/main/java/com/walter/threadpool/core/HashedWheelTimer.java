@@ -0,0 +1,313 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 时间轮定时器，用于调度大量短生命周期的超时任务。
+ * <p>
+ * 新增与取消超时项均为O(1)：新增的超时项先放入无锁队列，由唯一的工作线程在每个tick转移到对应的槽位；
+ * 取消的超时项会立即释放对任务的引用，并在下一个tick从槽位的双向链表中摘除。
+ * 到期的任务在工作线程中执行，因此必须是非阻塞的轻量操作。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+public class HashedWheelTimer {
+
+    private static final int STATE_STARTED = 0;
+    private static final int STATE_SHUTDOWN = 1;
+
+    /**
+     * 每个tick最多从新增队列转移的超时项数量，避免工作线程在突发流量下长时间无法推进
+     */
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime;
+    private final Thread workerThread;
+
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    private volatile int state = STATE_STARTED;
+    private long tick;
+
+    /**
+     * @param name 工作线程的名称
+     * @param tickDuration 每个tick的时长，即超时的精度
+     * @param unit tickDuration的时间单位
+     * @param ticksPerWheel 时间轮的槽位数量，会向上取整为2的幂
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+            throw new IllegalArgumentException("ticksPerWheel must be in (0, 2^30]: " + ticksPerWheel);
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.startTime = System.nanoTime();
+
+        this.workerThread = new Thread(this::runWorker, name);
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * 提交一个超时任务
+     * @param task 到期时在时间轮工作线程中执行的任务
+     * @param delay 延迟时间
+     * @param unit 延迟的时间单位
+     * @return 可用于取消的超时项
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (state == STATE_SHUTDOWN) {
+            throw new IllegalStateException("HashedWheelTimer has been stopped: " + workerThread.getName());
+        }
+        long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+        // 防止溢出
+        if (delay > 0 && deadline < 0) {
+            deadline = Long.MAX_VALUE;
+        }
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 返回尚未到期且未取消的超时项数量
+     * @return
+     */
+    public long pendingTimeouts() {
+        return pendingCount.get();
+    }
+
+    public boolean isStopped() {
+        return state == STATE_SHUTDOWN;
+    }
+
+    /**
+     * 停止工作线程，尚未到期的超时项将不再被执行
+     * @return 被丢弃的超时项数量
+     */
+    public long stop() {
+        if (state == STATE_SHUTDOWN) {
+            return 0L;
+        }
+        state = STATE_SHUTDOWN;
+        workerThread.interrupt();
+        try {
+            workerThread.join(TimeUnit.NANOSECONDS.toMillis(tickNanos) * 10 + 100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return pendingCount.getAndSet(0L);
+    }
+
+    private void runWorker() {
+        while (state == STATE_STARTED) {
+            if (waitForNextTick() <= 0) {
+                continue;
+            }
+            processCancelledTimeouts();
+            transferTimeoutsToBuckets();
+            wheel[(int) (tick & mask)].expireTimeouts();
+            tick++;
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        for (;;) {
+            long currentTime = System.nanoTime() - startTime;
+            long sleepTimeMs = (deadline - currentTime + 999999) / 1000000;
+            if (sleepTimeMs <= 0) {
+                return currentTime;
+            }
+            try {
+                Thread.sleep(sleepTimeMs);
+            } catch (InterruptedException e) {
+                if (state == STATE_SHUTDOWN) {
+                    return Long.MIN_VALUE;
+                }
+            }
+        }
+    }
+
+    private void transferTimeoutsToBuckets() {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            Timeout timeout = pendingTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            if (timeout.state() == Timeout.ST_CANCELLED) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // 已经过期的超时项放到当前槽位，本tick即会执行
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        for (;;) {
+            Timeout timeout = cancelledTimeouts.poll();
+            if (timeout == null) {
+                break;
+            }
+            Bucket bucket = timeout.bucket;
+            if (bucket != null) {
+                bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 超时项，同时作为槽位双向链表的节点
+     */
+    public static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedWheelTimer timer;
+        private final long deadline;
+        private volatile Runnable task;
+        private volatile int state = ST_INIT;
+
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout prev;
+        private Bucket bucket;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消超时项，并立即释放对任务的引用
+         * @return true: 取消成功，false: 已经到期或已取消
+         */
+        public boolean cancel() {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            task = null;
+            timer.pendingCount.decrementAndGet();
+            timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        private int state() {
+            return state;
+        }
+
+        private void expire() {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            Runnable r = task;
+            task = null;
+            timer.pendingCount.decrementAndGet();
+            try {
+                r.run();
+            } catch (Throwable t) {
+                log.warn("An exception was thrown by the timeout task.", t);
+            }
+        }
+    }
+
+    /**
+     * 时间轮的槽位，仅由工作线程访问
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expireTimeouts() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                if (timeout == tail) {
+                    tail = null;
+                    head = null;
+                } else {
+                    head = next;
+                }
+            } else if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一次对冲调用：先提交原请求，原请求在hedgeDelay内未完成时再提交一个备份请求，
+ * 以先成功的结果为准并取消另一个；原请求在备份请求发出前失败时，立即发出备份请求。
+ * 备份请求由共享时间轮触发，在对冲线程中提交，且提交时不持有本对象的锁
+ *
+ * @author walter.tan
+ */
+@Slf4j
+class HedgedCall<T> {
+
+    /**
+     * 备份请求的提交线程，所有对冲调用共享：时间轮回调只负责转交，避免拒绝策略（阻塞或在调用者线程执行）
+     * 占用时间轮线程而拖慢所有线程池的超时调度，空闲60秒后线程退出
+     */
+    private static final ThreadPoolExecutor HEDGE_DISPATCHER = newHedgeDispatcher();
+
+    private final CustomThreadPool threadPool;
+    private final Callable<T> task;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    /**
+     * 以下状态在this锁内访问
+     */
+    private final List<CompletableFuture<T>> attempts = new ArrayList<>(2);
+    private boolean hedged;
+    private int launched;
+    private int failed;
+
+    private HashedWheelTimer.Timeout hedgeTimeout;
+
+    HedgedCall(CustomThreadPool threadPool, Callable<T> task) {
+        this.threadPool = threadPool;
+        this.task = task;
+    }
+
+    /**
+     * 提交原请求并等待结果
+     * @param hedgeDelayNanos 发出备份请求前等待的时间，小于0表示不发出备份请求
+     * @param timeout
+     * @param unit
+     * @return
+     * @throws InterruptedException
+     * @throws ExecutionException 原请求与备份请求均失败，cause为最后一个失败的异常
+     * @throws TimeoutException
+     */
+    T invoke(long hedgeDelayNanos, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        synchronized (this) {
+            hedged = hedgeDelayNanos < 0L;
+            launched++;
+        }
+        launch(false);
+        if (hedgeDelayNanos >= 0L) {
+            hedgeTimeout = CustomThreadPoolManager.getTimeoutTimer().newTimeout(() -> HEDGE_DISPATCHER.execute(this::hedge),
+                    hedgeDelayNanos, TimeUnit.NANOSECONDS);
+        }
+        try {
+            return result.get(timeout, unit);
+        } finally {
+            if (null != hedgeTimeout) {
+                hedgeTimeout.cancel();
+            }
+            cancelAttempts();
+        }
+    }
+
+    private void hedge() {
+        synchronized (this) {
+            if (hedged || result.isDone()) {
+                return;
+            }
+            hedged = true;
+            launched++;
+        }
+        threadPool.getMetrics().recordHedged();
+        try {
+            launch(true);
+        } catch (RejectedExecutionException e) {
+            // 备份请求被拒绝时仍等待原请求
+            log.warn("hedged request rejected. key<{}>", threadPool.getKey());
+            synchronized (this) {
+                launched--;
+                if (failed >= launched) {
+                    result.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 调用方不持有this锁：拒绝策略可能在当前线程中执行任务，调用前已把该请求计入launched
+     * @param backup
+     */
+    private void launch(boolean backup) {
+        CompletableFuture<T> attempt = threadPool.submitAsync(task, 0L, TimeUnit.MILLISECONDS);
+        boolean done;
+        synchronized (this) {
+            attempts.add(attempt);
+            done = result.isDone();
+        }
+        // 结果已在提交期间完成时，cancelAttempts可能已经执行过
+        if (done) {
+            attempt.cancel(true);
+        }
+        attempt.whenComplete((value, ex) -> {
+            if (null == ex) {
+                // 先记录再完成结果，调用方拿到结果时统计已经可见
+                synchronized (this) {
+                    if (!result.isDone()) {
+                        if (backup) {
+                            threadPool.getMetrics().recordHedgeWon();
+                        }
+                        result.complete(value);
+                    }
+                }
+                return;
+            }
+            boolean hedgeNow;
+            synchronized (this) {
+                failed++;
+                hedgeNow = !hedged;
+                if (!hedgeNow && failed >= launched) {
+                    result.completeExceptionally(ex);
+                }
+            }
+            if (hedgeNow) {
+                hedge();
+            }
+        });
+    }
+
+    private static ThreadPoolExecutor newHedgeDispatcher() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "HedgedCall-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void cancelAttempts() {
+        List<CompletableFuture<T>> copy;
+        synchronized (this) {
+            copy = new ArrayList<>(attempts);
+        }
+        for (CompletableFuture<T> attempt : copy) {
+            attempt.cancel(true);
+        }
+    }
+}
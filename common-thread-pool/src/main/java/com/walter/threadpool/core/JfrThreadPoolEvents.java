@@ -0,0 +1,179 @@
+package com.walter.threadpool.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 线程池任务生命周期的JFR事件定义，只能通过{@link ThreadPoolEvents}访问，保证不支持JFR的JDK上不会加载本类。
+ * 每个方法先通过缓存的{@link EventType}判断事件是否开启，开启时才创建事件对象：没有录制时开销只有一次判断，也不产生对象分配。
+ *
+ * @author walter.tan
+ */
+final class JfrThreadPoolEvents {
+
+    private static final String CATEGORY = "CustomThreadPool";
+
+    private static final EventType TASK_ENQUEUE = EventType.getEventType(TaskEnqueueEvent.class);
+    private static final EventType TASK_START = EventType.getEventType(TaskStartEvent.class);
+    private static final EventType TASK_END = EventType.getEventType(TaskEndEvent.class);
+    private static final EventType TASK_REJECT = EventType.getEventType(TaskRejectEvent.class);
+    private static final EventType TASK_TIMEOUT_CANCEL = EventType.getEventType(TaskTimeoutCancelEvent.class);
+    private static final EventType POOL_STALL = EventType.getEventType(PoolStallEvent.class);
+
+    private JfrThreadPoolEvents() {
+    }
+
+    static void register() {
+        // 触发本类与事件类的加载，由调用方捕获加载失败
+        TASK_ENQUEUE.isEnabled();
+    }
+
+    static void enqueue(ThreadPoolMetrics metrics) {
+        if (!TASK_ENQUEUE.isEnabled()) {
+            return;
+        }
+        TaskEnqueueEvent event = new TaskEnqueueEvent();
+        event.poolKey = metrics.getKey();
+        event.queueSize = metrics.getQueueSize();
+        event.commit();
+    }
+
+    static void start(ThreadPoolMetrics metrics, long queueWaitNanos) {
+        if (!TASK_START.isEnabled()) {
+            return;
+        }
+        TaskStartEvent event = new TaskStartEvent();
+        event.poolKey = metrics.getKey();
+        event.queueWait = queueWaitNanos;
+        event.commit();
+    }
+
+    static void end(ThreadPoolMetrics metrics, long runTimeNanos) {
+        if (!TASK_END.isEnabled()) {
+            return;
+        }
+        TaskEndEvent event = new TaskEndEvent();
+        event.poolKey = metrics.getKey();
+        event.runTime = runTimeNanos;
+        event.commit();
+    }
+
+    static void reject(ThreadPoolMetrics metrics) {
+        if (!TASK_REJECT.isEnabled()) {
+            return;
+        }
+        TaskRejectEvent event = new TaskRejectEvent();
+        event.poolKey = metrics.getKey();
+        event.queueSize = metrics.getQueueSize();
+        event.commit();
+    }
+
+    static void timeoutCancel(ThreadPoolMetrics metrics) {
+        if (!TASK_TIMEOUT_CANCEL.isEnabled()) {
+            return;
+        }
+        TaskTimeoutCancelEvent event = new TaskTimeoutCancelEvent();
+        event.poolKey = metrics.getKey();
+        event.commit();
+    }
+
+    static void stall(StallReport report) {
+        if (!POOL_STALL.isEnabled()) {
+            return;
+        }
+        PoolStallEvent event = new PoolStallEvent();
+        event.poolKey = report.getKey();
+        event.stalled = report.getStalledMillis();
+        event.queueSize = report.getQueueSize();
+        event.sampledThreads = report.getSampledThreads();
+        event.topBlockingFrame = report.getTopBlockingFrame();
+        event.blockingFrames = String.valueOf(report.getBlockingFrames());
+        event.commit();
+    }
+
+    @Name("com.walter.threadpool.TaskEnqueue")
+    @Label("Task Enqueue")
+    @Description("A task was submitted to a CustomThreadPool")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class TaskEnqueueEvent extends Event {
+        @Label("Pool Key")
+        String poolKey;
+        @Label("Queue Size")
+        int queueSize;
+    }
+
+    @Name("com.walter.threadpool.TaskStart")
+    @Label("Task Start")
+    @Description("A task of a CustomThreadPool started running")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class TaskStartEvent extends Event {
+        @Label("Pool Key")
+        String poolKey;
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+    }
+
+    @Name("com.walter.threadpool.TaskEnd")
+    @Label("Task End")
+    @Description("A task of a CustomThreadPool finished running")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class TaskEndEvent extends Event {
+        @Label("Pool Key")
+        String poolKey;
+        @Label("Run Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long runTime;
+    }
+
+    @Name("com.walter.threadpool.TaskReject")
+    @Label("Task Reject")
+    @Description("A task was rejected by a CustomThreadPool")
+    @Category(CATEGORY)
+    static class TaskRejectEvent extends Event {
+        @Label("Pool Key")
+        String poolKey;
+        @Label("Queue Size")
+        int queueSize;
+    }
+
+    @Name("com.walter.threadpool.TaskTimeoutCancel")
+    @Label("Task Timeout Cancel")
+    @Description("A task of a CustomThreadPool was cancelled because it ran out of time")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class TaskTimeoutCancelEvent extends Event {
+        @Label("Pool Key")
+        String poolKey;
+    }
+
+    @Name("com.walter.threadpool.PoolStall")
+    @Label("Pool Stall")
+    @Description("A CustomThreadPool made no progress while its queue was not empty")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static class PoolStallEvent extends Event {
+        @Label("Pool Key")
+        String poolKey;
+        @Label("Stalled")
+        @Timespan(Timespan.MILLISECONDS)
+        long stalled;
+        @Label("Queue Size")
+        int queueSize;
+        @Label("Sampled Threads")
+        int sampledThreads;
+        @Label("Top Blocking Frame")
+        String topBlockingFrame;
+        @Label("Blocking Frames")
+        String blockingFrames;
+    }
+}
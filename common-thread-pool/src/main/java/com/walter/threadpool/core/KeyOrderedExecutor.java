@@ -0,0 +1,181 @@
+package com.walter.threadpool.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 按key串行执行任务：同一个key的任务严格按提交顺序逐个执行，不同key的任务在线程池的所有工作线程上并行执行。
+ * <p>
+ * 与"hash(key) % N 个单线程池"的做法不同，key不绑定固定的线程：每个任务执行完后，同key的下一个任务会重新提交到线程池，
+ * 因此一个慢任务只会阻塞同key的后续任务，不会阻塞恰好映射到同一线程的其他key。
+ * 每个key的等待队列在任务全部执行完后立即从map中移除，不会因key的数量而无限增长。
+ * <p>
+ * 拒绝语义：
+ * <ul>
+ *     <li>key的第一个任务被拒绝时，该任务不执行，异常抛给调用方；期间已排在其后的同key任务会重新提交，仍被拒绝时在调用方线程中执行</li>
+ *     <li>交接同key的下一个任务时被拒绝（抛出异常或CallerRunsPolicy），在当前线程中循环执行，保证顺序且不会递归</li>
+ *     <li>已被接受（排入同key队列）的任务不会被丢弃，因此拒绝策略不能静默丢弃任务；只有线程池shutdownNow时才通过{@link #drain()}取出，与线程池队列中的任务一并返回</li>
+ * </ul>
+ *
+ * @author walter.tan
+ */
+class KeyOrderedExecutor {
+
+    /**
+     * key存在表示该key有任务正在执行（或已提交到线程池），value为同key排队等待的后续任务
+     * 所有状态变更都在ConcurrentHashMap.compute中完成，保证同一个key同时只有一个任务在执行
+     */
+    private final ConcurrentHashMap<Object, ArrayDeque<Runnable>> pendingTasks = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    KeyOrderedExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    void execute(Object key, Runnable task) {
+        if (key == null || task == null) {
+            throw new NullPointerException();
+        }
+        boolean[] first = new boolean[1];
+        pendingTasks.compute(key, (k, queue) -> {
+            if (queue == null) {
+                first[0] = true;
+                return new ArrayDeque<>(4);
+            }
+            queue.addLast(task);
+            return queue;
+        });
+        if (!first[0]) {
+            return;
+        }
+        try {
+            executor.execute(new OrderedTask(key, task));
+        } catch (RejectedExecutionException e) {
+            // 本任务被拒绝且不会执行，但期间可能已有同key的任务被接受并排在其后，需要把执行权交给它们：
+            // 先尝试提交到线程池，仍被拒绝时才在当前（调用者）线程中执行，已接受的任务不会被丢弃
+            Runnable next = pollNext(key);
+            if (next != null && !handOff(key, next)) {
+                runChain(key, next);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 返回当前有任务在执行或排队的key数量
+     * @return
+     */
+    int keyCount() {
+        return pendingTasks.size();
+    }
+
+    /**
+     * 取出所有key排队等待的任务，用于线程池shutdownNow：key被移除后，正在执行的任务结束（包括被中断）时不再交接同key的后续任务
+     * @return 按key分组、同key内按提交顺序排列的未执行任务
+     */
+    List<Runnable> drain() {
+        List<Runnable> tasks = new ArrayList<>();
+        for (Object key : pendingTasks.keySet()) {
+            pendingTasks.computeIfPresent(key, (k, queue) -> {
+                tasks.addAll(queue);
+                return null;
+            });
+        }
+        return tasks;
+    }
+
+    /**
+     * 线程池shutdownNow返回的任务中，把本类提交的包装任务还原为调用方提交的任务
+     * @param task
+     * @return
+     */
+    static Runnable unwrap(Runnable task) {
+        return task instanceof KeyOrderedExecutor.OrderedTask ? ((KeyOrderedExecutor.OrderedTask) task).task : task;
+    }
+
+    private Runnable pollNext(Object key) {
+        Runnable[] next = new Runnable[1];
+        pendingTasks.computeIfPresent(key, (k, queue) -> {
+            next[0] = queue.pollFirst();
+            return next[0] == null ? null : queue;
+        });
+        return next[0];
+    }
+
+    /**
+     * 在当前线程中执行task，之后把同key的下一个任务交给线程池；交接被拒绝，或被CallerRunsPolicy放在当前线程执行时，
+     * 在本循环中继续执行下一个任务，而不是递归调用，同key积压再多也不会栈溢出
+     * @param key
+     * @param task
+     */
+    private void runChain(Object key, Runnable task) {
+        Runnable current = task;
+        while (current != null) {
+            try {
+                current.run();
+            } catch (Throwable t) {
+                // 异常不能中断同key后续任务的调度，直接交由线程的UncaughtExceptionHandler处理
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+            }
+            Runnable next = pollNext(key);
+            if (next == null || handOff(key, next)) {
+                return;
+            }
+            current = next;
+        }
+    }
+
+    /**
+     * 把同key的下一个任务提交到线程池
+     * @param key
+     * @param next
+     * @return true表示已交给线程池；false表示被拒绝或拒绝策略要在当前线程执行，需要调用方在当前线程中继续执行
+     */
+    private boolean handOff(Object key, Runnable next) {
+        OrderedTask successor = new OrderedTask(key, next);
+        successor.handOffThread = Thread.currentThread();
+        try {
+            executor.execute(successor);
+        } catch (RejectedExecutionException e) {
+            return false;
+        } finally {
+            successor.handOffThread = null;
+        }
+        return !successor.ranInline;
+    }
+
+    private class OrderedTask implements Runnable {
+        private final Object key;
+        private final Runnable task;
+        /**
+         * 正在提交本任务的线程，只在提交期间非空；本任务在该线程中被执行，说明是拒绝策略在调用者线程中执行了它
+         */
+        private Thread handOffThread;
+        private boolean ranInline;
+
+        private OrderedTask(Object key, Runnable task) {
+            this.key = key;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (handOffThread == Thread.currentThread()) {
+                // 交由提交方的循环执行，避免递归
+                ranInline = true;
+                return;
+            }
+            runChain(key, task);
+        }
+
+        @Override
+        public String toString() {
+            return "OrderedTask{key=" + key + ", task=" + task + '}';
+        }
+    }
+}
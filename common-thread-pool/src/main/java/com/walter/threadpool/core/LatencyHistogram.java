@@ -0,0 +1,145 @@
+package com.walter.threadpool.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的对数分桶直方图，用于记录纳秒级的耗时分布。
+ * <p>
+ * 每个2的幂区间再细分为8个子桶，相对误差不超过12.5%；记录操作只有数组下标计算和一次原子累加，不产生任何对象分配。
+ *
+ * @author walter.tan
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     * @param nanos 耗时（纳秒），负数按0处理
+     */
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : nanos;
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 返回当前累计数据的快照
+     * @return
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, sum.sum(), max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & SUB_BUCKET_MASK;
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long subBucket = index & SUB_BUCKET_MASK;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * 直方图快照，可通过{@link #minus(Snapshot)}计算两个快照之间的区间分布
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0D : (double) sum / count;
+        }
+
+        /**
+         * 返回指定百分位的耗时上界（纳秒）
+         * @param percentile 取值范围[0, 100]
+         * @return
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0L;
+            }
+            long target = (long) Math.ceil(count * Math.min(100D, Math.max(0D, percentile)) / 100D);
+            target = Math.max(1L, target);
+            long accumulated = 0;
+            for (int i = 0; i < counts.length; i++) {
+                accumulated += counts[i];
+                if (accumulated >= target) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        public double getPercentileMillis(double percentile) {
+            return getPercentile(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * 返回本快照相对于更早的快照的增量分布，增量快照的max沿用本快照的值
+         * @param earlier 更早的快照
+         * @return
+         */
+        public Snapshot minus(Snapshot earlier) {
+            long[] delta = new long[counts.length];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                delta[i] = Math.max(0L, counts[i] - earlier.counts[i]);
+                total += delta[i];
+            }
+            return new Snapshot(delta, total, Math.max(0L, sum - earlier.sum), max);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 微批处理器：将大量很小的任务（如单次缓存写入、单次指标更新）累积成批，再以一个任务的形式提交到线程池，
+ * 避免每个小任务都产生FutureTask、队列交接与超时调度的开销。
+ * <p>
+ * 满足以下任一条件时将当前批次提交到线程池：
+ * 1. 批次大小达到maxBatchSize（在调用{@link #add(Object)}的线程中提交）
+ * 2. 批次中第一个元素等待超过maxLinger（由共享时间轮触发，时间轮线程只把到期批次转交给提交线程，批次不会在时间轮线程中执行；
+ *    拒绝策略在调用者线程执行（如CallerRunsPolicy）时批次在提交线程中执行，被拒绝时批次以拒绝失败）
+ * 3. 调用{@link #flush()}或{@link #close()}
+ * 批次之间并行执行，同一批次内的元素按加入顺序传给consumer。
+ * 仅在需要时才通过{@link #addWithFuture(Object)}为单个元素创建完成通知，批次执行成功或失败时一并完成。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+public class MicroBatcher<T> implements AutoCloseable {
+
+    /**
+     * 到期批次的提交线程，所有MicroBatcher共享：时间轮回调只负责转交，避免拒绝策略（阻塞或在调用者线程执行）
+     * 占用时间轮线程而拖慢所有线程池的超时调度；CallerRunsPolicy下批次在该线程中执行，与其他提交方一样受到反压。
+     * 空闲60秒后线程退出
+     */
+    private static final ThreadPoolExecutor LINGER_DISPATCHER = newLingerDispatcher();
+
+    private final CustomThreadPool threadPool;
+    private final Consumer<List<T>> consumer;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final HashedWheelTimer timer;
+
+    /**
+     * 当前批次，所有字段都在this锁内访问
+     */
+    private List<T> items;
+    private List<CompletableFuture<Void>> futures;
+    private HashedWheelTimer.Timeout lingerTimeout;
+    private long generation;
+    private boolean closed;
+
+    MicroBatcher(CustomThreadPool threadPool, Consumer<List<T>> consumer, int maxBatchSize, long maxLinger, TimeUnit unit, HashedWheelTimer timer) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than 0: " + maxBatchSize);
+        }
+        if (maxLinger <= 0) {
+            throw new IllegalArgumentException("maxLinger must be greater than 0: " + maxLinger);
+        }
+        if (consumer == null) {
+            throw new NullPointerException();
+        }
+        this.threadPool = threadPool;
+        this.consumer = consumer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = unit.toNanos(maxLinger);
+        this.timer = timer;
+    }
+
+    /**
+     * 加入一个元素，不关心其执行结果，批次内的异常由consumer自行处理或打印error日志
+     * @param item
+     * @throws RejectedExecutionException 已关闭，或本次触发的批次被线程池拒绝
+     */
+    public void add(T item) {
+        append(item, null);
+    }
+
+    /**
+     * 加入一个元素，并返回其所在批次的完成通知
+     * @param item
+     * @return 批次执行成功时正常完成，consumer抛出异常或批次被线程池拒绝时异常完成
+     * @throws RejectedExecutionException 已关闭，或本次触发的批次被线程池拒绝
+     */
+    public CompletableFuture<Void> addWithFuture(T item) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        append(item, future);
+        return future;
+    }
+
+    /**
+     * 立即提交当前批次
+     * @throws RejectedExecutionException 批次被线程池拒绝
+     */
+    public void flush() {
+        Batch batch;
+        synchronized (this) {
+            batch = takeBatch();
+        }
+        dispatch(batch);
+    }
+
+    /**
+     * 提交当前批次，之后不再接收新元素
+     */
+    @Override
+    public void close() {
+        Batch batch;
+        synchronized (this) {
+            closed = true;
+            batch = takeBatch();
+        }
+        dispatch(batch);
+    }
+
+    /**
+     * 返回当前批次中等待提交的元素数量
+     * @return
+     */
+    public synchronized int pendingCount() {
+        return null == items ? 0 : items.size();
+    }
+
+    private void append(T item, CompletableFuture<Void> future) {
+        Batch batch = null;
+        synchronized (this) {
+            if (closed) {
+                throw new RejectedExecutionException("MicroBatcher of CustomThreadPool[" + threadPool.getKey() + "] is closed.");
+            }
+            if (null == items) {
+                items = new ArrayList<>(Math.min(maxBatchSize, 64));
+                final long current = generation;
+                lingerTimeout = timer.newTimeout(() -> LINGER_DISPATCHER.execute(() -> flushLingered(current)),
+                        maxLingerNanos, TimeUnit.NANOSECONDS);
+            }
+            if (null != future) {
+                if (null == futures) {
+                    futures = new ArrayList<>();
+                }
+                // 元素与future一一对应，前面未要求future的元素以null占位
+                while (futures.size() < items.size()) {
+                    futures.add(null);
+                }
+                futures.add(future);
+            }
+            items.add(item);
+            if (items.size() >= maxBatchSize) {
+                batch = takeBatch();
+            }
+        }
+        dispatch(batch);
+    }
+
+    private void flushLingered(long expectedGeneration) {
+        Batch batch;
+        synchronized (this) {
+            // 批次已因大小或手动flush提交，不再重复提交
+            if (generation != expectedGeneration) {
+                return;
+            }
+            lingerTimeout = null;
+            batch = takeBatch();
+        }
+        if (null == batch) {
+            return;
+        }
+        try {
+            threadPool.execute(batch);
+        } catch (RejectedExecutionException e) {
+            batch.fail(e);
+            log.warn("lingered batch rejected. key<{}>, size:{}", threadPool.getKey(), batch.items.size(), e);
+        }
+    }
+
+    private static ThreadPoolExecutor newLingerDispatcher() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "MicroBatcher-linger-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 取出当前批次，调用时已持有this锁
+     * @return 当前批次为空时返回null
+     */
+    private Batch takeBatch() {
+        if (null == items) {
+            return null;
+        }
+        Batch batch = new Batch(items, futures);
+        items = null;
+        futures = null;
+        generation++;
+        if (null != lingerTimeout) {
+            lingerTimeout.cancel();
+            lingerTimeout = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(Batch batch) {
+        if (null == batch) {
+            return;
+        }
+        try {
+            threadPool.execute(batch);
+        } catch (RejectedExecutionException e) {
+            batch.fail(e);
+            throw e;
+        }
+    }
+
+    private class Batch implements Runnable {
+        private final List<T> items;
+        private final List<CompletableFuture<Void>> futures;
+
+        private Batch(List<T> items, List<CompletableFuture<Void>> futures) {
+            this.items = items;
+            this.futures = futures;
+        }
+
+        @Override
+        public void run() {
+            try {
+                consumer.accept(Collections.unmodifiableList(items));
+            } catch (Throwable t) {
+                if (null == futures) {
+                    log.error("batch execute fail. key<{}>, size:{}", threadPool.getKey(), items.size(), t);
+                }
+                fail(t);
+                return;
+            }
+            if (null != futures) {
+                for (CompletableFuture<Void> future : futures) {
+                    if (null != future) {
+                        future.complete(null);
+                    }
+                }
+            }
+        }
+
+        private void fail(Throwable t) {
+            if (null != futures) {
+                for (CompletableFuture<Void> future : futures) {
+                    if (null != future) {
+                        future.completeExceptionally(t);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "MicroBatcher.Batch{key=" + threadPool.getKey() + ", size=" + items.size() + '}';
+        }
+    }
+}
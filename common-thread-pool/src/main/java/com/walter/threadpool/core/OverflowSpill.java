@@ -0,0 +1,370 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 负载任务的溢出层：线程池拒绝的负载任务追加到内存映射的段文件中，积压的任务不占用堆内存，
+ * 由共享时间轮定期检查，队列长度降到低水位以下后按写入顺序重新提交，再次被拒绝时停在原处等待下次检查。
+ * <p>
+ * 每条记录的格式为 [key长度(int)][负载长度(int)][key(UTF-8)][负载]，一个段写满后创建下一个段，
+ * 段中的记录全部重新提交后删除该段；积压清空时复用最后一个段，不再创建新文件。
+ * 溢出层用于吸收突发流量，不保证持久性：线程池关闭或进程退出时未重新提交的任务会丢失，启动时清理目录中遗留的段文件。
+ * 删除段时立即解除内存映射，不等待buffer被GC回收。
+ * <p>
+ * 溢出与重新提交并非零分配：溢出时编码key，重新提交时为每个任务复制出key与负载交给{@link PayloadHandler}，
+ * 处理器可以在任务结束后继续持有负载，因此不复用缓冲区。
+ * <p>
+ * 重新提交由共享时间轮触发，在所有线程池共享的重新提交线程中执行，且提交时不持有溢出层的锁：
+ * 拒绝策略为CallerRunsPolicy时，{@link PayloadHandler}在重新提交线程中执行，不会阻塞时间轮或溢出写入。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+class OverflowSpill implements Runnable {
+
+    private static final String SUFFIX = ".spill";
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * 解除内存映射的方法，不可用时为null，段文件的映射在buffer被回收时释放
+     */
+    private static final MethodHandle UNMAPPER = findUnmapper();
+    /**
+     * 重新提交线程，所有线程池共享：时间轮回调只负责转交，读取段文件、删除文件与提交任务都不占用时间轮线程，空闲60秒后线程退出
+     */
+    private static final ThreadPoolExecutor READMITTER = newReadmitter();
+
+    private final CustomThreadPool threadPool;
+    private final OverflowSpillConfigure conf;
+    private final HashedWheelTimer timer;
+    private final Path directory;
+    private final int lowWatermark;
+
+    /**
+     * 以下状态由this保护，头部为读取中的段，尾部为写入中的段
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long nextSegmentId;
+
+    private volatile long backlog;
+    private volatile boolean stopped;
+    private volatile HashedWheelTimer.Timeout nextCheck;
+
+    OverflowSpill(CustomThreadPool threadPool, OverflowSpillConfigure conf, int initQueueSize, HashedWheelTimer timer) {
+        if (null == conf.getHandler() || conf.getSegmentSize() <= HEADER_SIZE || conf.getMaxSegments() <= 0 || conf.getCheckIntervalMillis() <= 0) {
+            throw new IllegalArgumentException("invalid overflow spill configure: " + conf);
+        }
+        this.threadPool = threadPool;
+        this.conf = conf;
+        this.timer = timer;
+        this.directory = null != conf.getDirectory() ? Paths.get(conf.getDirectory())
+                : Paths.get(System.getProperty("java.io.tmpdir"), "custom-thread-pool-spill", threadPool.getKey());
+        this.lowWatermark = conf.getLowWatermark() < 0 ? initQueueSize / 2 : conf.getLowWatermark();
+    }
+
+    void start() {
+        try {
+            Files.createDirectories(directory);
+            // 溢出层不保证持久性，遗留的段文件属于已退出的进程
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : stream) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("can not prepare spill directory: " + directory, e);
+        }
+        this.nextCheck = timer.newTimeout(this, conf.getCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        this.stopped = true;
+        HashedWheelTimer.Timeout t = this.nextCheck;
+        if (t != null) {
+            t.cancel();
+        }
+        synchronized (this) {
+            if (backlog > 0L) {
+                log.warn("{} spilled tasks discarded because thread pool is shutdown. key<{}>", backlog, threadPool.getKey());
+            }
+            while (!segments.isEmpty()) {
+                segments.pollFirst().delete();
+            }
+            backlog = 0L;
+        }
+    }
+
+    /**
+     * 返回已溢出未重新提交的任务数
+     * @return
+     */
+    long getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * 提交一个负载任务：没有积压时直接提交到线程池，被拒绝或已有积压（保证顺序）时追加到段文件
+     * @param key
+     * @param payload
+     * @throws RejectedExecutionException 线程池已关闭，或段文件已写满
+     */
+    void execute(String key, byte[] payload) {
+        if (0L == backlog) {
+            try {
+                threadPool.execute(new PayloadTask(key, payload, false));
+                return;
+            } catch (RejectedExecutionException e) {
+                if (threadPool.getTaskPool().isShutdown() || !spill(key, payload)) {
+                    throw e;
+                }
+                return;
+            }
+        }
+        if (!spill(key, payload)) {
+            throw new RejectedExecutionException("overflow spill is full. key<" + threadPool.getKey() + ">");
+        }
+    }
+
+    /**
+     * 时间轮回调，只负责转交给重新提交线程
+     */
+    @Override
+    public void run() {
+        if (!stopped) {
+            READMITTER.execute(this::checkAndReschedule);
+        }
+    }
+
+    private void checkAndReschedule() {
+        if (stopped) {
+            return;
+        }
+        if (threadPool.getTaskPool().isShutdown()) {
+            stop();
+            return;
+        }
+        try {
+            readmit();
+        } catch (Exception e) {
+            log.warn("overflow spill readmit fail. key:{}", threadPool.getKey(), e);
+        }
+        if (!stopped && !timer.isStopped()) {
+            this.nextCheck = timer.newTimeout(this, conf.getCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized boolean spill(String key, byte[] payload) {
+        if (stopped) {
+            return false;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER_SIZE + keyBytes.length + payload.length;
+        if (recordSize > conf.getSegmentSize()) {
+            log.warn("task too large to spill: {} bytes. key<{}>", recordSize, threadPool.getKey());
+            return false;
+        }
+        Segment tail = segments.peekLast();
+        if (null == tail || tail.writePosition + recordSize > conf.getSegmentSize()) {
+            if (segments.size() >= conf.getMaxSegments()) {
+                return false;
+            }
+            try {
+                tail = new Segment(directory.resolve(String.format("%020d%s", nextSegmentId++, SUFFIX)), conf.getSegmentSize());
+            } catch (IOException e) {
+                log.error("create spill segment fail. key<{}>", threadPool.getKey(), e);
+                return false;
+            }
+            segments.addLast(tail);
+        }
+        MappedByteBuffer buffer = tail.buffer;
+        buffer.position(tail.writePosition);
+        buffer.putInt(keyBytes.length).putInt(payload.length).put(keyBytes).put(payload);
+        tail.writePosition += recordSize;
+        backlog++;
+        threadPool.getMetrics().recordSpilled();
+        return true;
+    }
+
+    /**
+     * 只在重新提交线程中执行，读位置只由该线程修改；在锁内读出记录，在锁外提交任务
+     */
+    private void readmit() {
+        while (threadPool.getQueue().size() <= lowWatermark) {
+            Segment head;
+            int recordSize;
+            byte[] keyBytes;
+            byte[] payload;
+            synchronized (this) {
+                if (backlog <= 0L) {
+                    break;
+                }
+                head = segments.peekFirst();
+                if (head.readPosition >= head.writePosition) {
+                    // 已读完的段一定不是写入中的段，否则backlog为0
+                    segments.pollFirst().delete();
+                    continue;
+                }
+                MappedByteBuffer buffer = head.buffer;
+                buffer.position(head.readPosition);
+                int keyLength = buffer.getInt();
+                int payloadLength = buffer.getInt();
+                keyBytes = new byte[keyLength];
+                payload = new byte[payloadLength];
+                buffer.get(keyBytes).get(payload);
+                // 先出队再提交，任务执行时积压数已不包含自身
+                recordSize = HEADER_SIZE + keyLength + payloadLength;
+                head.readPosition += recordSize;
+                backlog--;
+            }
+            try {
+                threadPool.execute(new PayloadTask(new String(keyBytes, StandardCharsets.UTF_8), payload, true));
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    // 仍然繁忙，退回原处等待下次检查；已停止时段文件已删除，任务随之丢弃
+                    if (!stopped) {
+                        head.readPosition -= recordSize;
+                        backlog++;
+                    }
+                }
+                return;
+            }
+        }
+        synchronized (this) {
+            if (0L == backlog && !segments.isEmpty()) {
+                while (segments.size() > 1) {
+                    segments.pollFirst().delete();
+                }
+                Segment last = segments.peekFirst();
+                last.readPosition = 0;
+                last.writePosition = 0;
+            }
+        }
+    }
+
+    private static ThreadPoolExecutor newReadmitter() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "OverflowSpill-readmitter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 是否为重新提交的溢出任务，线程池据此把再次拒绝与首次拒绝分开统计
+     * @param task 提交给线程池执行器的任务
+     * @return
+     */
+    static boolean isReadmitted(Runnable task) {
+        return task instanceof CustomTask && ((CustomTask) task).getTask() instanceof PayloadTask
+                && ((PayloadTask) ((CustomTask) task).getTask()).readmitted;
+    }
+
+    /**
+     * JDK 9及以上使用Unsafe.invokeCleaner，JDK 8使用DirectBuffer.cleaner().clean()
+     * @return
+     */
+    private static MethodHandle findUnmapper() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return lookup.unreflect(invokeCleaner).bindTo(theUnsafe.get(null));
+        } catch (Throwable ignore) {
+            // JDK 8没有invokeCleaner
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            MethodHandle getCleaner = lookup.unreflect(cleaner).asType(MethodType.methodType(Object.class, ByteBuffer.class));
+            MethodHandle doClean = lookup.unreflect(clean).asType(MethodType.methodType(void.class, Object.class));
+            return MethodHandles.filterReturnValue(getCleaner, doClean);
+        } catch (Throwable t) {
+            log.warn("can not unmap spill segments explicitly, mapped memory is released on GC: {}", t.toString());
+            return null;
+        }
+    }
+
+    /**
+     * 负载任务，捕获处理器的异常并打印error日志
+     */
+    private final class PayloadTask implements Runnable {
+        private final String key;
+        private final byte[] payload;
+        private final boolean readmitted;
+
+        private PayloadTask(String key, byte[] payload, boolean readmitted) {
+            this.key = key;
+            this.payload = payload;
+            this.readmitted = readmitted;
+        }
+
+        @Override
+        public void run() {
+            try {
+                conf.getHandler().handle(key, payload);
+            } catch (Exception e) {
+                log.error("payload task fail. key<{}> payloadKey<{}>", threadPool.getKey(), key, e);
+            }
+        }
+    }
+
+    private static class Segment {
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        private Segment(Path file, int size) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        /**
+         * 解除映射后关闭并删除段文件，之后不能再访问buffer
+         */
+        private void delete() {
+            if (null != UNMAPPER) {
+                try {
+                    UNMAPPER.invokeExact((ByteBuffer) buffer);
+                } catch (Throwable t) {
+                    log.warn("unmap spill segment fail: {}", file, t);
+                }
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("delete spill segment fail: {}", file, e);
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+}
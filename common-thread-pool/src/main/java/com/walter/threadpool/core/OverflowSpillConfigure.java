@@ -0,0 +1,43 @@
+package com.walter.threadpool.core;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * 负载任务溢出到磁盘的配置：线程池拒绝的负载任务追加到内存映射的段文件中，队列长度降到低水位以下后按顺序重新提交
+ * @author walter.tan
+ */
+@Data
+@NoArgsConstructor
+@ToString
+public class OverflowSpillConfigure {
+    /**
+     * 段文件所在目录，为null时使用 ${java.io.tmpdir}/custom-thread-pool-spill/线程池key，目录由线程池独占
+     */
+    private String directory;
+    /**
+     * 单个段文件的大小（字节），单个任务的key与负载之和不能超过此值
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+    /**
+     * 最多同时存在的段文件数，全部写满后不再溢出，按原拒绝策略拒绝任务
+     */
+    private int maxSegments = 16;
+    /**
+     * 队列长度小于等于此值时重新提交溢出的任务，小于0时为initQueueSize的一半
+     */
+    private int lowWatermark = -1;
+    /**
+     * 检查是否可以重新提交的间隔（毫秒）
+     */
+    private long checkIntervalMillis = 10L;
+    /**
+     * 负载任务的处理器
+     */
+    private PayloadHandler handler;
+
+    public OverflowSpillConfigure(PayloadHandler handler) {
+        this.handler = handler;
+    }
+}
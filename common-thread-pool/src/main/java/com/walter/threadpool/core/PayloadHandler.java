@@ -0,0 +1,17 @@
+package com.walter.threadpool.core;
+
+/**
+ * 负载任务的处理器，负载任务由一个key与一段字节数组描述，可以在线程池拒绝时溢出到磁盘，参考{@link OverflowSpillConfigure}
+ * @author walter.tan
+ */
+@FunctionalInterface
+public interface PayloadHandler {
+
+    /**
+     * 在工作线程中处理一个负载任务，抛出的异常只打印error日志
+     * @param key 任务的key
+     * @param payload 任务的负载
+     * @throws Exception
+     */
+    void handle(String key, byte[] payload) throws Exception;
+}
@@ -0,0 +1,87 @@
+package com.walter.threadpool.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一次法定数量调用：同时提交n个请求，k个成功后立即返回并取消其余请求；
+ * 失败的请求数使剩余请求不可能凑够k个成功时，立即以最后一个失败的异常结束。
+ *
+ * @author walter.tan
+ */
+class QuorumCall<T> {
+
+    private final CustomThreadPool threadPool;
+    private final int quorum;
+    private final CompletableFuture<List<T>> result = new CompletableFuture<>();
+
+    /**
+     * 以下状态在this锁内访问
+     */
+    private final List<CompletableFuture<T>> attempts;
+    private final List<T> values;
+    private int failed;
+
+    QuorumCall(CustomThreadPool threadPool, int quorum, int total) {
+        this.threadPool = threadPool;
+        this.quorum = quorum;
+        this.attempts = new ArrayList<>(total);
+        this.values = new ArrayList<>(quorum);
+    }
+
+    /**
+     * 提交所有请求并等待k个成功的结果
+     * @param tasks
+     * @param timeout
+     * @param unit
+     * @return 按完成先后排列的k个结果
+     * @throws InterruptedException
+     * @throws ExecutionException 已不可能凑够k个成功的结果
+     * @throws TimeoutException
+     */
+    List<T> invoke(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        final int total = tasks.size();
+        try {
+            for (Callable<T> task : tasks) {
+                CompletableFuture<T> attempt = threadPool.submitAsync(task, 0L, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    attempts.add(attempt);
+                }
+                attempt.whenComplete((value, ex) -> {
+                    synchronized (this) {
+                        if (result.isDone()) {
+                            return;
+                        }
+                        if (null == ex) {
+                            values.add(value);
+                            if (values.size() >= quorum) {
+                                result.complete(new ArrayList<>(values));
+                            }
+                        } else if (total - ++failed < quorum) {
+                            result.completeExceptionally(ex);
+                        }
+                    }
+                });
+            }
+            return result.get(timeout, unit);
+        } finally {
+            cancelAttempts();
+        }
+    }
+
+    private void cancelAttempts() {
+        List<CompletableFuture<T>> copy;
+        synchronized (this) {
+            copy = new ArrayList<>(attempts);
+        }
+        for (CompletableFuture<T> attempt : copy) {
+            attempt.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 支持热更新的线程池配置上下文：配置来自properties/YAML文件或Spring {@link Environment}，格式为
+ * <pre>
+ * threadpool.order.corePoolSize=10
+ * threadpool.order.maxPoolSize=50
+ * threadpool.order.keepAliveTime=60
+ * threadpool.order.timeout=3000
+ * threadpool.order.initQueueSize=200
+ * threadpool.order.type=12
+ * </pre>
+ * 重新加载时更新已有的配置或添加新的配置，并通过{@link CustomThreadPool#reconfigure(ThreadPoolConfigure)}应用到运行中的线程池。
+ * 只有配置中出现的属性会被修改；配置中删除的属性不会恢复为默认值。
+ * 配置先在副本上修改并校验（0 < corePoolSize <= maxPoolSize），校验或应用失败时保留原配置并打印warn日志，不影响其他线程池。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+public class ReloadableConfigureContext extends DefaultConfigureContext {
+
+    public static final String DEFAULT_PREFIX = "threadpool.";
+
+    /**
+     * 检查与重新加载文件的线程，所有上下文共享：时间轮只负责按间隔触发，文件IO、YAML解析与重新配置线程池
+     * 都在该线程上执行，不会拖慢所有线程池的超时调度，空闲60秒后线程退出
+     */
+    private static final ThreadPoolExecutor RELOADER = newReloader();
+
+    private final String prefix;
+
+    private volatile HashedWheelTimer.Timeout nextCheck;
+    private volatile boolean watching;
+    private long lastModified;
+
+    public ReloadableConfigureContext() {
+        this(DEFAULT_PREFIX);
+    }
+
+    /**
+     * @param prefix 配置属性的前缀，如"threadpool."
+     */
+    public ReloadableConfigureContext(String prefix) {
+        super();
+        this.prefix = prefix.endsWith(".") ? prefix : prefix + ".";
+    }
+
+    /**
+     * 从Spring Environment重新加载配置，可在配置刷新事件（如Spring Cloud的EnvironmentChangeEvent）中调用
+     * @param environment
+     * @return 配置有变化的线程池key
+     */
+    public Set<String> reload(Environment environment) {
+        Properties properties = new Properties();
+        if (environment instanceof ConfigurableEnvironment) {
+            for (PropertySource<?> propertySource : ((ConfigurableEnvironment) environment).getPropertySources()) {
+                if (!(propertySource instanceof EnumerablePropertySource)) {
+                    continue;
+                }
+                for (String name : ((EnumerablePropertySource<?>) propertySource).getPropertyNames()) {
+                    // 按Environment的优先级取值
+                    if (name.startsWith(prefix) && !properties.containsKey(name)) {
+                        String value = environment.getProperty(name);
+                        if (null != value) {
+                            properties.setProperty(name, value);
+                        }
+                    }
+                }
+            }
+        }
+        return reload(properties);
+    }
+
+    /**
+     * 从properties/YAML文件重新加载配置，文件扩展名为.yml或.yaml时按YAML解析
+     * @param file
+     * @return 配置有变化的线程池key
+     * @throws IOException
+     */
+    public Set<String> reload(Path file) throws IOException {
+        return reload(loadFile(file));
+    }
+
+    /**
+     * 重新加载配置并应用到运行中的线程池
+     * @param properties
+     * @return 配置有变化的线程池key
+     */
+    public synchronized Set<String> reload(Properties properties) {
+        Map<String, Map<String, String>> updates = new HashMap<>();
+        // YAML加载的属性值可能是Integer等非String类型
+        for (Map.Entry<Object, Object> property : properties.entrySet()) {
+            String name = String.valueOf(property.getKey());
+            int dot = name.lastIndexOf('.');
+            if (!name.startsWith(prefix) || dot <= prefix.length()) {
+                continue;
+            }
+            updates.computeIfAbsent(name.substring(prefix.length(), dot), k -> new HashMap<>())
+                    .put(name.substring(dot + 1), String.valueOf(property.getValue()).trim());
+        }
+
+        Set<String> changedKeys = new LinkedHashSet<>();
+        for (Map.Entry<String, Map<String, String>> entry : updates.entrySet()) {
+            String key = entry.getKey();
+            try {
+                if (reload(key, entry.getValue())) {
+                    changedKeys.add(key);
+                }
+            } catch (RuntimeException e) {
+                // 单个线程池的配置有误时保留原配置，不影响其他线程池
+                log.warn("thread pool configure reload fail. key:{}", key, e);
+            }
+        }
+        return changedKeys;
+    }
+
+    /**
+     * 在副本上应用并校验配置，校验通过后才替换已有的配置并应用到运行中的线程池
+     * @param key
+     * @param values 属性名到属性值的映射
+     * @return 配置是否有变化
+     */
+    private boolean reload(String key, Map<String, String> values) {
+        ThreadPoolConfigure current = getThreadPoolConfig(key);
+        ThreadPoolConfigure conf;
+        if (null == current) {
+            conf = new ThreadPoolConfigure();
+            conf.setKey(key);
+        } else {
+            conf = new ThreadPoolConfigure(current);
+        }
+        if (!apply(conf, values) && null != current) {
+            return false;
+        }
+        validate(conf);
+        if (null == current) {
+            if (tryAddThreadPoolConfigure(conf)) {
+                log.info("thread pool configure added: {}", conf);
+                return true;
+            }
+            return false;
+        }
+        // 先替换再应用，观察到线程池变化时读取的配置也已是新的
+        replaceThreadPoolConfigure(conf);
+        CustomThreadPool pool = CustomThreadPoolManager.getThreadPool().get(key);
+        if (null != pool) {
+            pool.reconfigure(conf);
+        }
+        return true;
+    }
+
+    /**
+     * 加载文件中的配置，之后按interval检查文件的修改时间，有变化时重新加载
+     * @param file
+     * @param interval 检查间隔，精度为共享时间轮的tick（10ms）
+     * @param unit
+     * @throws IOException 首次加载失败
+     */
+    public void watch(Path file, long interval, TimeUnit unit) throws IOException {
+        synchronized (this) {
+            if (watching) {
+                throw new IllegalStateException("already watching a file");
+            }
+            watching = true;
+            lastModified = Files.getLastModifiedTime(file).toMillis();
+        }
+        reload(file);
+        scheduleCheck(file, interval, unit);
+    }
+
+    /**
+     * 停止检查文件
+     */
+    public void stopWatching() {
+        watching = false;
+        HashedWheelTimer.Timeout t = this.nextCheck;
+        if (null != t) {
+            t.cancel();
+        }
+    }
+
+    private void scheduleCheck(Path file, long interval, TimeUnit unit) {
+        HashedWheelTimer timer = CustomThreadPoolManager.getTimeoutTimer();
+        this.nextCheck = timer.newTimeout(() -> {
+            if (watching) {
+                RELOADER.execute(() -> checkAndReschedule(file, interval, unit));
+            }
+        }, interval, unit);
+    }
+
+    private void checkAndReschedule(Path file, long interval, TimeUnit unit) {
+        if (!watching) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (modified != lastModified) {
+                Set<String> changedKeys = reload(file);
+                // 加载成功后才记录修改时间，失败时下次检查重试
+                lastModified = modified;
+                log.info("thread pool configure reloaded from {}, changed: {}", file, changedKeys);
+            }
+        } catch (Exception e) {
+            // 文件暂时不可读（如正在被替换）时等待下次检查
+            log.warn("thread pool configure reload fail. file:{}", file, e);
+        }
+        if (watching) {
+            scheduleCheck(file, interval, unit);
+        }
+    }
+
+    private static ThreadPoolExecutor newReloader() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "ReloadableConfigureContext-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @param conf
+     * @param values 属性名到属性值的映射
+     * @return 是否有属性发生变化
+     */
+    private boolean apply(ThreadPoolConfigure conf, Map<String, String> values) {
+        boolean changed = false;
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String value = entry.getValue();
+            try {
+                switch (entry.getKey()) {
+                    case "type":
+                        changed |= !value.equals(conf.getType());
+                        conf.setType(value);
+                        break;
+                    case "corePoolSize":
+                        changed |= Integer.parseInt(value) != conf.getCorePoolSize();
+                        conf.setCorePoolSize(Integer.parseInt(value));
+                        break;
+                    case "maxPoolSize":
+                        changed |= Integer.parseInt(value) != conf.getMaxPoolSize();
+                        conf.setMaxPoolSize(Integer.parseInt(value));
+                        break;
+                    case "keepAliveTime":
+                        changed |= Long.parseLong(value) != conf.getKeepAliveTime();
+                        conf.setKeepAliveTime(Long.parseLong(value));
+                        break;
+                    case "timeout":
+                        changed |= Long.parseLong(value) != conf.getTimeout();
+                        conf.setTimeout(Long.parseLong(value));
+                        break;
+                    case "fair":
+                        changed |= !Boolean.valueOf(value).equals(conf.getFair());
+                        conf.setFair(Boolean.valueOf(value));
+                        break;
+                    case "initQueueSize":
+                        changed |= Integer.parseInt(value) != conf.getInitQueueSize();
+                        conf.setInitQueueSize(Integer.parseInt(value));
+                        break;
+                    case "showThreadQueueSize":
+                        changed |= Integer.parseInt(value) != conf.getShowThreadQueueSize();
+                        conf.setShowThreadQueueSize(Integer.parseInt(value));
+                        break;
+                    default:
+                        log.warn("unknown thread pool property: {}{}.{}", prefix, conf.getKey(), entry.getKey());
+                }
+            } catch (NumberFormatException e) {
+                log.warn("invalid thread pool property: {}{}.{}={}", prefix, conf.getKey(), entry.getKey(), value);
+            }
+        }
+        return changed;
+    }
+
+    private static void validate(ThreadPoolConfigure conf) {
+        if (conf.getCorePoolSize() <= 0 || conf.getMaxPoolSize() <= 0 || conf.getCorePoolSize() > conf.getMaxPoolSize()) {
+            throw new IllegalArgumentException("invalid pool size of key<" + conf.getKey() + ">, corePoolSize: "
+                    + conf.getCorePoolSize() + ", maxPoolSize: " + conf.getMaxPoolSize());
+        }
+    }
+
+    private static Properties loadFile(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".yml") || name.endsWith(".yaml")) {
+            YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+            yaml.setResources(new FileSystemResource(file.toFile()));
+            Properties properties = yaml.getObject();
+            return null == properties ? new Properties() : properties;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+}
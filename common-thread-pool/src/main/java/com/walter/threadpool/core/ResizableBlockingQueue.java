@@ -0,0 +1,54 @@
+package com.walter.threadpool.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 容量可以在运行时调整的有界FIFO阻塞队列，用于配置热更新时修改队列长度（{@link java.util.concurrent.LinkedBlockingQueue}的容量不可修改）。
+ * 缩容时已在队列中的元素不受影响，只是在长度降到新容量以下之前拒绝入队。
+ *
+ * @author walter.tan
+ */
+public class ResizableBlockingQueue<E> extends AbstractBoundedBlockingQueue<E> {
+
+    private final ArrayDeque<E> elements = new ArrayDeque<>();
+
+    /**
+     * @param capacity 队列容量
+     */
+    public ResizableBlockingQueue(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    protected boolean doOffer(E e) {
+        elements.addLast(e);
+        return true;
+    }
+
+    @Override
+    protected E doPoll() {
+        return elements.pollFirst();
+    }
+
+    @Override
+    protected E doPeek() {
+        return elements.peekFirst();
+    }
+
+    @Override
+    protected int doSize() {
+        return elements.size();
+    }
+
+    @Override
+    protected boolean doRemove(Object o) {
+        return elements.remove(o);
+    }
+
+    @Override
+    protected List<E> doSnapshot() {
+        return new ArrayList<>(elements);
+    }
+}
@@ -0,0 +1,412 @@
+package com.walter.threadpool.core;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 基于预分配环形数组的有界无锁MPMC队列（Vyukov算法），入队出队不分配节点对象，也不使用锁。
+ * <p>
+ * 每个槽位带有一个序号：生产者在序号等于写指针时通过CAS占用槽位，写入元素后将序号加1发布给消费者；
+ * 消费者在序号等于读指针+1时通过CAS占用槽位，取出元素后将序号推进一整圈交还给生产者。
+ * 读写指针分别做了缓存行填充，避免生产者与消费者之间的伪共享。阻塞操作按{@link WaitStrategy}等待，
+ * {@link WaitStrategy#PARK}在自旋阶段之后阻塞在notEmpty/notFull条件上，只有存在阻塞的线程时入队/出队才需要加锁唤醒。
+ * <p>
+ * {@link #remove(Object)}将槽位中的元素替换为墓碑，由消费者出队时跳过，因此{@link ThreadPoolExecutor#remove(Runnable)}
+ * 与purge可以正常使用；迭代器为弱一致的快照且不支持remove。
+ *
+ * @author walter.tan
+ */
+public class RingBufferBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    /**
+     * 被remove的元素在槽位中的占位
+     */
+    private static final Object TOMBSTONE = new Object();
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Object> buffer;
+    private final AtomicLongArray sequences;
+    private final WaitStrategy waitStrategy;
+    /**
+     * 是否可能有线程阻塞在条件上，此时发布槽位需要完整的内存屏障，再检查等待线程数
+     */
+    private final boolean blocking;
+
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+    /**
+     * 已被remove、尚未被消费者跳过的墓碑数
+     */
+    private final AtomicInteger tombstones = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger consumerWaiters = new AtomicInteger();
+    private final AtomicInteger producerWaiters = new AtomicInteger();
+
+    /**
+     * @param capacity 队列容量，会向上取整为2的幂，且至少为2（只有1个槽位时无法通过序号区分满与空）
+     * @param waitStrategy 队列满/空时的等待策略
+     */
+    public RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be in (0, 2^30]: " + capacity);
+        }
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+        this.waitStrategy = null == waitStrategy ? WaitStrategy.PARK : waitStrategy;
+        this.blocking = this.waitStrategy.isBlocking();
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long pos = tail.get();
+        int index;
+        for (;;) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 槽位尚未被消费，队列已满
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        buffer.lazySet(index, e);
+        if (blocking) {
+            sequences.set(index, pos + 1);
+            signal(consumerWaiters, notEmpty);
+        } else {
+            sequences.lazySet(index, pos + 1);
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        for (;;) {
+            long pos = head.get();
+            int index;
+            for (;;) {
+                index = (int) (pos & mask);
+                long diff = sequences.get(index) - (pos + 1);
+                if (diff == 0) {
+                    if (head.compareAndSet(pos, pos + 1)) {
+                        break;
+                    }
+                    pos = head.get();
+                } else if (diff < 0) {
+                    // 槽位尚未被发布，队列为空
+                    return null;
+                } else {
+                    pos = head.get();
+                }
+            }
+            // 与remove竞争槽位中的元素，只有一方能拿到
+            Object e = buffer.getAndSet(index, null);
+            if (blocking) {
+                sequences.set(index, pos + capacity);
+                signal(producerWaiters, notFull);
+            } else {
+                sequences.lazySet(index, pos + capacity);
+            }
+            if (e != TOMBSTONE) {
+                return (E) e;
+            }
+            tombstones.decrementAndGet();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long t = tail.get();
+        for (long pos = head.get(); pos < t; pos++) {
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) {
+                return null;
+            }
+            Object e = buffer.get(index);
+            if (e != TOMBSTONE && e != null) {
+                return (E) e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        int counter = 0;
+        while (!offer(e)) {
+            checkInterrupted();
+            if (waitStrategy.shouldBlock(counter)) {
+                awaitOffer(e, false, 0L);
+                return;
+            }
+            waitStrategy.idle(counter);
+            counter = WaitStrategy.next(counter);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int counter = 0;
+        while (!offer(e)) {
+            checkInterrupted();
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            if (waitStrategy.shouldBlock(counter)) {
+                return awaitOffer(e, true, remaining);
+            }
+            waitStrategy.idle(counter);
+            counter = WaitStrategy.next(counter);
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        int counter = 0;
+        E e;
+        while ((e = poll()) == null) {
+            checkInterrupted();
+            if (waitStrategy.shouldBlock(counter)) {
+                return awaitPoll(false, 0L);
+            }
+            waitStrategy.idle(counter);
+            counter = WaitStrategy.next(counter);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int counter = 0;
+        E e;
+        while ((e = poll()) == null) {
+            checkInterrupted();
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            if (waitStrategy.shouldBlock(counter)) {
+                return awaitPoll(true, remaining);
+            }
+            waitStrategy.idle(counter);
+            counter = WaitStrategy.next(counter);
+        }
+        return e;
+    }
+
+    @Override
+    public int size() {
+        // 先读head，避免并发下得到负数
+        long h = head.get();
+        long t = tail.get();
+        return (int) Math.max(0L, Math.min(capacity, t - h - tombstones.get()));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    /**
+     * 移除一个相等的元素：将其槽位替换为墓碑，墓碑仍占用容量，直到被消费者跳过
+     * @param o
+     * @return 是否移除了元素
+     */
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        long t = tail.get();
+        for (long pos = head.get(); pos < t; pos++) {
+            int index = (int) (pos & mask);
+            if (sequences.get(index) != pos + 1) {
+                continue;
+            }
+            Object e = buffer.get(index);
+            if (e != TOMBSTONE && o.equals(e) && buffer.compareAndSet(index, e, TOMBSTONE)) {
+                tombstones.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            c.add(e);
+            n++;
+        }
+        return n;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long h = head.get();
+        long t = tail.get();
+        for (long pos = h; pos < t; pos++) {
+            int index = (int) (pos & mask);
+            Object e = buffer.get(index);
+            if (sequences.get(index) == pos + 1 && e != null && e != TOMBSTONE) {
+                snapshot.add((E) e);
+            }
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    /**
+     * 自旋阶段结束后阻塞在notFull上，直到入队成功
+     * @param e
+     * @param timed 是否限时
+     * @param nanos 限时的剩余时间
+     * @return 是否入队成功，超时返回false
+     * @throws InterruptedException
+     */
+    private boolean awaitOffer(E e, boolean timed, long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // 先登记再重试：之后发布槽位的消费者一定能看到等待者
+            producerWaiters.incrementAndGet();
+            try {
+                while (!offer(e)) {
+                    if (!timed) {
+                        notFull.await();
+                    } else if (nanos <= 0L) {
+                        return false;
+                    } else {
+                        nanos = notFull.awaitNanos(nanos);
+                    }
+                }
+                return true;
+            } finally {
+                producerWaiters.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 自旋阶段结束后阻塞在notEmpty上，直到取出元素
+     * @param timed 是否限时
+     * @param nanos 限时的剩余时间
+     * @return 取出的元素，超时返回null
+     * @throws InterruptedException
+     */
+    private E awaitPoll(boolean timed, long nanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            // 先登记再重试：之后发布槽位的生产者一定能看到等待者
+            consumerWaiters.incrementAndGet();
+            try {
+                E e;
+                while ((e = poll()) == null) {
+                    if (!timed) {
+                        notEmpty.await();
+                    } else if (nanos <= 0L) {
+                        return null;
+                    } else {
+                        nanos = notEmpty.awaitNanos(nanos);
+                    }
+                }
+                return e;
+            } finally {
+                consumerWaiters.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 有线程阻塞在条件上时唤醒其中一个
+     */
+    private void signal(AtomicInteger waiters, Condition condition) {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                condition.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * 填充到独占缓存行的AtomicLong
+     */
+    @SuppressWarnings("unused")
+    private static class PaddedAtomicLong extends AtomicLong {
+        private long p1, p2, p3, p4, p5, p6, p7;
+
+        long sumPaddingToPreventOptimisation() {
+            return p1 + p2 + p3 + p4 + p5 + p6 + p7;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.walter.threadpool.core;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+
+/**
+ * 共享载体模式下的逻辑线程池：不持有线程，任务进入等待队列后由{@link SharedCarrierPool}的载体线程按权重调度执行，
+ * 同时执行的任务数不超过maximumPoolSize。
+ *
+ * @author walter.tan
+ */
+class SharedCarrierExecutor extends AbstractLimitedExecutor {
+
+    private final SharedCarrierPool carrier;
+    private final int weight;
+
+    /**
+     * 步幅调度的虚拟时间，仅在{@link SharedCarrierPool}的锁内访问
+     */
+    long pass;
+
+    SharedCarrierExecutor(int weight, int concurrency, BlockingQueue<Runnable> waitingQueue, RejectedExecutionHandler handler, SharedCarrierPool carrier) {
+        super(concurrency, waitingQueue, handler);
+        if (weight <= 0 || weight > SharedCarrierPool.MAX_WEIGHT) {
+            throw new IllegalArgumentException("weight must be in [1, " + SharedCarrierPool.MAX_WEIGHT + "]: " + weight);
+        }
+        this.weight = weight;
+        this.carrier = carrier;
+        carrier.register(this);
+    }
+
+    int getWeight() {
+        return weight;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (isShutdown() || carrier.isStopped() || !waitingQueue.offer(command)) {
+            handler.rejectedExecution(command, this);
+            return;
+        }
+        carrier.signal();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = super.shutdownNow();
+        carrier.signal();
+        return tasks;
+    }
+
+    @Override
+    protected void onConcurrencyChanged(int delta) {
+        if (delta > 0) {
+            carrier.signal();
+        }
+    }
+
+    @Override
+    protected void onTerminated() {
+        carrier.unregister(this);
+    }
+}
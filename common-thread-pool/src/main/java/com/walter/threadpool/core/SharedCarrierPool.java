@@ -0,0 +1,203 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多个逻辑线程池共享的一组载体线程，线程数默认等于CPU核数。
+ * <p>
+ * 每个逻辑线程池（{@link SharedCarrierExecutor}）只是一个带权重与并发上限的等待队列，
+ * 载体线程按加权公平队列（步幅调度）从中挑选任务：每个逻辑线程池有一个虚拟时间pass，
+ * 每被调度一次pass增加 STRIDE/weight，总是选择pass最小、队列非空且未达到并发上限的逻辑线程池。
+ * 长时间空闲的逻辑线程池重新活跃时，其pass不会小于全局虚拟时间，避免积攒"信用"后独占载体线程。
+ * 因此权重决定了繁忙时各逻辑线程池分得的载体线程比例，并发上限保证单个逻辑线程池不会占满所有载体线程。
+ * <p>
+ * 注：调度在一把全局锁内进行，每次调度遍历所有逻辑线程池（O(N)）以跳过队列为空或已达并发上限的线程池，
+ * 适用于逻辑线程池数量不多（几十个以内）的场景；数量很多时锁竞争与遍历开销会成为瓶颈。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+class SharedCarrierPool {
+
+    private static final long STRIDE = 1L << 20;
+    /**
+     * 权重的上限，更大的权重会使STRIDE/weight为0，pass不再增长而独占载体线程
+     */
+    static final int MAX_WEIGHT = (int) STRIDE;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final List<SharedCarrierExecutor> executors = new ArrayList<>();
+    private final Thread[] workers;
+    /**
+     * 正在等待的载体线程数，提交任务时只有大于0才需要获取锁唤醒
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * 全局虚拟时间，即最近一次被调度的逻辑线程池的pass，仅在lock内访问
+     */
+    private long virtualTime;
+    private volatile boolean stopped;
+
+    SharedCarrierPool(String name, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0: " + size);
+        }
+        this.workers = new Thread[size];
+        for (int i = 0; i < size; i++) {
+            Thread worker = new Thread(this::runWorker, name + "-" + (i + 1));
+            worker.setDaemon(true);
+            worker.setUncaughtExceptionHandler((thread, e) -> log.error("Thread {}", thread.getName(), e));
+            this.workers[i] = worker;
+        }
+        for (Thread worker : this.workers) {
+            worker.start();
+        }
+    }
+
+    int getSize() {
+        return workers.length;
+    }
+
+    void register(SharedCarrierExecutor executor) {
+        lock.lock();
+        try {
+            executor.pass = virtualTime;
+            executors.add(executor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void unregister(SharedCarrierExecutor executor) {
+        lock.lock();
+        try {
+            executors.remove(executor);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 逻辑线程池有新任务入队或并发上限扩大时调用，唤醒空闲的载体线程；没有载体线程在等待时不获取锁
+     */
+    void signal() {
+        if (waiters.get() == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止所有载体线程，正在执行的任务会被中断
+     * @param timeout
+     * @param unit
+     * @return 是否所有载体线程都已退出
+     * @throws InterruptedException
+     */
+    boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        stopped = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis > 0) {
+                worker.join(remainingMillis);
+            }
+        }
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    private void runWorker() {
+        while (!stopped) {
+            SharedCarrierExecutor executor;
+            Runnable task;
+            lock.lock();
+            try {
+                while ((executor = select()) == null || (task = executor.waitingQueue.poll()) == null) {
+                    if (stopped) {
+                        return;
+                    }
+                    waiters.incrementAndGet();
+                    try {
+                        // 登记为等待者后再检查一次，提交方入队后看到等待者为0时不会唤醒
+                        if ((executor = select()) != null && (task = executor.waitingQueue.poll()) != null) {
+                            break;
+                        }
+                        available.await();
+                    } finally {
+                        waiters.decrementAndGet();
+                    }
+                }
+                executor.incrementActive();
+                // 还有可调度的任务时，交给其他空闲的载体线程
+                available.signal();
+            } catch (InterruptedException e) {
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                executor.runTask(task);
+            } finally {
+                lock.lock();
+                try {
+                    executor.decrementActive();
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+                executor.tryTerminate();
+            }
+        }
+    }
+
+    /**
+     * 选择下一个被调度的逻辑线程池，调用时已持有lock
+     * @return 没有可调度的逻辑线程池时返回null
+     */
+    private SharedCarrierExecutor select() {
+        SharedCarrierExecutor selected = null;
+        long selectedPass = 0L;
+        for (SharedCarrierExecutor executor : executors) {
+            if (executor.getActiveCount() >= executor.getMaximumPoolSize() || executor.waitingQueue.isEmpty()) {
+                continue;
+            }
+            long pass = Math.max(executor.pass, virtualTime);
+            if (selected == null || pass < selectedPass) {
+                selected = executor;
+                selectedPass = pass;
+            }
+        }
+        if (selected != null) {
+            virtualTime = selectedPass;
+            selected.pass = selectedPass + STRIDE / selected.getWeight();
+        }
+        return selected;
+    }
+}
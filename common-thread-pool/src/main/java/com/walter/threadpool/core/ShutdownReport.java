@@ -0,0 +1,96 @@
+package com.walter.threadpool.core;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link CustomThreadPoolManager#shutdownAll(long, java.util.concurrent.TimeUnit)}的结果：
+ * 记录每个线程池是否在截止时间内正常结束，以及未正常结束时被中断的任务数与被丢弃的排队任务
+ * @author walter.tan
+ */
+@Getter
+public class ShutdownReport {
+
+    /**
+     * 关闭所有线程池的总耗时（毫秒）
+     */
+    private final long elapsedMillis;
+
+    /**
+     * 每个线程池的关闭结果，key为线程池的Key
+     */
+    private final Map<String, PoolReport> pools;
+
+    ShutdownReport(long elapsedMillis, List<PoolReport> poolReports) {
+        this.elapsedMillis = elapsedMillis;
+        Map<String, PoolReport> map = new LinkedHashMap<>();
+        for (PoolReport poolReport : poolReports) {
+            map.put(poolReport.getKey(), poolReport);
+        }
+        this.pools = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * 是否所有线程池都在截止时间内正常结束
+     * @return
+     */
+    public boolean isAllTerminated() {
+        for (PoolReport poolReport : pools.values()) {
+            if (!poolReport.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 所有线程池中被丢弃的排队任务总数
+     * @return
+     */
+    public int getDroppedTaskCount() {
+        int count = 0;
+        for (PoolReport poolReport : pools.values()) {
+            count += poolReport.getDroppedTasks().size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "ShutdownReport{elapsedMillis=" + elapsedMillis + ", pools=" + pools.values() + '}';
+    }
+
+    @Getter
+    public static class PoolReport {
+        private final String key;
+        /**
+         * 是否在截止时间内正常结束，为false时已调用shutdownNow
+         */
+        private final boolean terminated;
+        /**
+         * 调用shutdownNow时仍在执行（被中断）的任务数
+         */
+        private final int interruptedCount;
+        /**
+         * 调用shutdownNow时仍在排队、未被执行的任务
+         */
+        private final List<Runnable> droppedTasks;
+
+        PoolReport(String key, boolean terminated, int interruptedCount, List<Runnable> droppedTasks) {
+            this.key = key;
+            this.terminated = terminated;
+            this.interruptedCount = interruptedCount;
+            this.droppedTasks = Collections.unmodifiableList(droppedTasks);
+        }
+
+        @Override
+        public String toString() {
+            return "PoolReport{key='" + key + '\'' + ", terminated=" + terminated + ", interruptedCount=" + interruptedCount
+                    + ", droppedTaskCount=" + droppedTasks.size() + '}';
+        }
+    }
+}
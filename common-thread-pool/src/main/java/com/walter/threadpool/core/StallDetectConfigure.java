@@ -0,0 +1,40 @@
+package com.walter.threadpool.core;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * 线程池停滞检测的配置
+ * @author walter.tan
+ */
+@Data
+@NoArgsConstructor
+@ToString
+public class StallDetectConfigure {
+    /**
+     * 检测间隔（毫秒）
+     */
+    private long checkIntervalMillis = 1000L;
+    /**
+     * 队列非空且已完成任务数持续不变超过此时长（毫秒）时判定为停滞
+     */
+    private long stallThresholdMillis = 5000L;
+    /**
+     * 采样线程栈的最大深度
+     */
+    private int maxStackDepth = 64;
+    /**
+     * 报告中保留的阻塞栈帧个数
+     */
+    private int topFrames = 5;
+    /**
+     * 判定为停滞时的回调，为null时只打印warn日志并发出JFR事件
+     */
+    private StallListener listener;
+
+    public StallDetectConfigure(long checkIntervalMillis, long stallThresholdMillis) {
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.stallThresholdMillis = stallThresholdMillis;
+    }
+}
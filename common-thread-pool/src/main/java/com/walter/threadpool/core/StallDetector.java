@@ -0,0 +1,197 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程池停滞检测：由共享时间轮定期触发、在独立的采样线程上检查，队列非空而已完成任务数持续不变超过阈值时，
+ * 采样正在执行任务的线程栈，按阻塞栈帧聚合后打印warn日志、发出JFR事件并回调{@link StallListener}。
+ * 每次停滞只报告一次，已完成任务数再次变化后重新开始检测。
+ * <p>
+ * 正在执行任务的线程由任务包装类在执行前后登记，因此同样适用于虚拟线程与共享载体模式。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+class StallDetector implements Runnable {
+
+    private static final String[] FRAMEWORK_PREFIXES = {"java.", "javax.", "sun.", "jdk.", "com.walter.threadpool.core."};
+
+    /**
+     * 检查与采样线程，所有StallDetector共享：采样线程栈需要进入安全点，监听器也可能很慢，
+     * 放在时间轮线程上会拖慢所有线程池的超时调度，空闲60秒后线程退出
+     */
+    private static final ThreadPoolExecutor SAMPLER = newSampler();
+
+    private final CustomThreadPool threadPool;
+    private final StallDetectConfigure conf;
+    private final HashedWheelTimer timer;
+    private final Set<Thread> runningThreads = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean stopped;
+    private volatile HashedWheelTimer.Timeout nextCheck;
+
+    private long lastCompleted = -1L;
+    private long lastProgressNanos;
+    private boolean reported;
+
+    StallDetector(CustomThreadPool threadPool, StallDetectConfigure conf, HashedWheelTimer timer) {
+        if (conf.getCheckIntervalMillis() <= 0 || conf.getStallThresholdMillis() <= 0) {
+            throw new IllegalArgumentException("invalid stall detect configure: " + conf);
+        }
+        this.threadPool = threadPool;
+        this.conf = conf;
+        this.timer = timer;
+    }
+
+    void start() {
+        this.nextCheck = timer.newTimeout(this, conf.getCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        this.stopped = true;
+        HashedWheelTimer.Timeout t = this.nextCheck;
+        if (t != null) {
+            t.cancel();
+        }
+    }
+
+    /**
+     * 登记当前线程开始执行任务
+     * @return 是否新登记，同一线程嵌套执行任务时只有最外层返回true
+     */
+    boolean enter() {
+        return runningThreads.add(Thread.currentThread());
+    }
+
+    void exit() {
+        runningThreads.remove(Thread.currentThread());
+    }
+
+    /**
+     * 时间轮回调，只负责转交给采样线程
+     */
+    @Override
+    public void run() {
+        if (!stopped) {
+            SAMPLER.execute(this::checkAndReschedule);
+        }
+    }
+
+    /**
+     * 在采样线程上执行，检查状态只由采样线程访问
+     */
+    private void checkAndReschedule() {
+        if (stopped) {
+            return;
+        }
+        if (threadPool.getTaskPool().isShutdown()) {
+            stopped = true;
+            return;
+        }
+        try {
+            check();
+        } catch (Exception e) {
+            log.warn("stall detect fail. key:{}", threadPool.getKey(), e);
+        }
+        if (!stopped && !timer.isStopped()) {
+            this.nextCheck = timer.newTimeout(this, conf.getCheckIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static ThreadPoolExecutor newSampler() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "StallDetector-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        long completed = threadPool.getMetrics().getCompletedCount();
+        int queueSize = threadPool.getMetrics().getQueueSize();
+        if (completed != lastCompleted || queueSize == 0) {
+            lastCompleted = completed;
+            lastProgressNanos = now;
+            reported = false;
+            return;
+        }
+        long stalledMillis = TimeUnit.NANOSECONDS.toMillis(now - lastProgressNanos);
+        if (reported || stalledMillis < conf.getStallThresholdMillis()) {
+            return;
+        }
+        reported = true;
+        publish(sample(stalledMillis, queueSize, completed));
+    }
+
+    private StallReport sample(long stalledMillis, int queueSize, long completed) {
+        Map<Thread.State, Integer> states = new EnumMap<>(Thread.State.class);
+        Map<String, Integer> frames = new HashMap<>();
+        int sampled = 0;
+        for (Thread thread : runningThreads) {
+            StackTraceElement[] stack = thread.getStackTrace();
+            Thread.State state = thread.getState();
+            if (stack.length == 0 || state == Thread.State.TERMINATED) {
+                continue;
+            }
+            sampled++;
+            states.merge(state, 1, Integer::sum);
+            frames.merge(blockingFrame(stack), 1, Integer::sum);
+        }
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(frames.entrySet());
+        sorted.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        Map<String, Integer> topFrames = new LinkedHashMap<>();
+        for (int i = 0; i < sorted.size() && i < conf.getTopFrames(); i++) {
+            topFrames.put(sorted.get(i).getKey(), sorted.get(i).getValue());
+        }
+        return new StallReport(threadPool.getKey(), stalledMillis, queueSize, completed, sampled, states, topFrames);
+    }
+
+    private String blockingFrame(StackTraceElement[] stack) {
+        int depth = Math.min(stack.length, conf.getMaxStackDepth());
+        for (int i = 0; i < depth; i++) {
+            if (!isFrameworkFrame(stack[i].getClassName())) {
+                return stack[i].toString();
+            }
+        }
+        return stack[0].toString();
+    }
+
+    private static boolean isFrameworkFrame(String className) {
+        for (String prefix : FRAMEWORK_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void publish(StallReport report) {
+        log.warn("thread pool stalled. key<{}> stalled: {}ms, queueSize: {}, threadStates: {}, blockingFrames: {}",
+                report.getKey(), report.getStalledMillis(), report.getQueueSize(), report.getThreadStates(), report.getBlockingFrames());
+        ThreadPoolEvents.stall(report);
+        StallListener listener = conf.getListener();
+        if (null == listener) {
+            return;
+        }
+        try {
+            listener.onStall(report, threadPool);
+        } catch (Throwable t) {
+            log.error("stall listener fail. key<{}>", report.getKey(), t);
+        }
+    }
+}
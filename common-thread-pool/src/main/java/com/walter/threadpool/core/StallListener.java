@@ -0,0 +1,15 @@
+package com.walter.threadpool.core;
+
+/**
+ * 线程池停滞时的回调，在共享时间轮的线程中执行，不应有耗时操作
+ * @author walter.tan
+ */
+@FunctionalInterface
+public interface StallListener {
+
+    /**
+     * @param report 停滞报告
+     * @param threadPool 所属线程池
+     */
+    void onStall(StallReport report, CustomThreadPool threadPool);
+}
@@ -0,0 +1,56 @@
+package com.walter.threadpool.core;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 线程池停滞时的诊断报告：停滞时长、队列长度，以及正在执行任务的工作线程的状态分布与最常见的阻塞栈帧
+ * @author walter.tan
+ */
+@Getter
+@ToString
+public class StallReport {
+
+    private final String key;
+    /**
+     * 已完成任务数保持不变的时长（毫秒）
+     */
+    private final long stalledMillis;
+    private final int queueSize;
+    private final long completedCount;
+    /**
+     * 采样到的正在执行任务的线程数
+     */
+    private final int sampledThreads;
+    /**
+     * 各线程状态的线程数
+     */
+    private final Map<Thread.State, Integer> threadStates;
+    /**
+     * 阻塞栈帧及停在此处的线程数，按线程数降序排列。
+     * 阻塞栈帧为线程栈中第一个业务代码栈帧（跳过JDK与线程池自身的栈帧），找不到时为栈顶帧
+     */
+    private final Map<String, Integer> blockingFrames;
+
+    StallReport(String key, long stalledMillis, int queueSize, long completedCount, int sampledThreads,
+                Map<Thread.State, Integer> threadStates, Map<String, Integer> blockingFrames) {
+        this.key = key;
+        this.stalledMillis = stalledMillis;
+        this.queueSize = queueSize;
+        this.completedCount = completedCount;
+        this.sampledThreads = sampledThreads;
+        this.threadStates = Collections.unmodifiableMap(threadStates);
+        this.blockingFrames = Collections.unmodifiableMap(blockingFrames);
+    }
+
+    /**
+     * 最常见的阻塞栈帧，没有采样到线程时返回null
+     * @return
+     */
+    public String getTopBlockingFrame() {
+        return blockingFrames.isEmpty() ? null : blockingFrames.keySet().iterator().next();
+    }
+}
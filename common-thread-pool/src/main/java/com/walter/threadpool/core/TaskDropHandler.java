@@ -0,0 +1,28 @@
+package com.walter.threadpool.core;
+
+/**
+ * 已入队的任务在执行前被线程池主动丢弃时的回调，与{@link java.util.concurrent.RejectedExecutionHandler}不同，
+ * 此时任务已被线程池接收。回调在工作线程中执行，不应有耗时操作。
+ * @author walter.tan
+ */
+@FunctionalInterface
+public interface TaskDropHandler {
+
+    /**
+     * @param task 被丢弃的任务，通过submit提交的任务为{@link java.util.concurrent.Future}，回调前已被取消
+     * @param reason 丢弃原因
+     * @param threadPool 所属线程池
+     */
+    void onDrop(Runnable task, Reason reason, CustomThreadPool threadPool);
+
+    enum Reason {
+        /**
+         * 出队时已超过截止时间
+         */
+        EXPIRED,
+        /**
+         * 排队时延持续超过目标值，被CoDel队列主动丢弃
+         */
+        OVERLOADED
+    }
+}
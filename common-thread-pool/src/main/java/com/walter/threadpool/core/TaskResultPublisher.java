@@ -0,0 +1,202 @@
+package com.walter.threadpool.core;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 以Reactive Streams发布任务结果的发布者：只在下游有需求时才从任务源取出任务提交到线程池，
+ * 已提交未发出的任务数不超过下游的剩余需求与maxInFlight，结果按完成先后发出。
+ * 任一任务失败时取消其余任务并以该异常结束。只允许一个订阅者。
+ *
+ * @author walter.tan
+ */
+public class TaskResultPublisher<T> implements Publisher<T> {
+
+    private final CustomThreadPool threadPool;
+    private final Iterator<? extends Callable<? extends T>> tasks;
+    private final int maxInFlight;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    TaskResultPublisher(CustomThreadPool threadPool, Iterable<? extends Callable<? extends T>> tasks, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.threadPool = threadPool;
+        this.tasks = tasks.iterator();
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (null == subscriber) {
+            throw new NullPointerException("subscriber");
+        }
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("TaskResultPublisher allows only one subscriber"));
+            return;
+        }
+        ResultSubscription subscription = new ResultSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    private class ResultSubscription implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final ConcurrentLinkedQueue<Signal> signals = new ConcurrentLinkedQueue<>();
+        private final Set<CompletableFuture<?>> running = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        /**
+         * 以下状态只在drain循环中访问
+         */
+        private int inFlight;
+        private boolean sourceDone;
+        private boolean terminated;
+
+        private ResultSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+            } else {
+                requested.getAndUpdate(r -> r + n < 0L ? Long.MAX_VALUE : r + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * 串行执行所有对下游的调用与任务提交，并发调用时由正在执行的线程代为处理
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!terminated) {
+                    drainOnce();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainOnce() {
+            if (cancelled) {
+                terminate(null);
+                return;
+            }
+            if (null != invalidRequest) {
+                terminate(invalidRequest);
+                return;
+            }
+            Signal signal;
+            while (null != (signal = signals.peek())) {
+                // 失败不受下游需求的限制，立即通知
+                if (null != signal.error) {
+                    terminate(signal.error);
+                    return;
+                }
+                if (requested.get() == 0L) {
+                    break;
+                }
+                signals.poll();
+                inFlight--;
+                requested.decrementAndGet();
+                subscriber.onNext(signal.value);
+                if (cancelled) {
+                    terminate(null);
+                    return;
+                }
+            }
+            while (!sourceDone && inFlight < maxInFlight && inFlight < requested.get()) {
+                Callable<? extends T> task;
+                try {
+                    if (!tasks.hasNext()) {
+                        sourceDone = true;
+                        break;
+                    }
+                    task = tasks.next();
+                    submit(task);
+                } catch (Throwable t) {
+                    terminate(t);
+                    return;
+                }
+            }
+            if (sourceDone && inFlight == 0) {
+                terminated = true;
+                subscriber.onComplete();
+            }
+        }
+
+        private void submit(Callable<? extends T> task) {
+            CompletableFuture<? extends T> future = threadPool.submitAsync(task::call, 0L, TimeUnit.MILLISECONDS);
+            inFlight++;
+            running.add(future);
+            future.whenComplete((value, ex) -> {
+                running.remove(future);
+                // 规范不允许发出null元素
+                Throwable error = null == ex && null == value ? new NullPointerException("task returned null") : ex;
+                signals.offer(new Signal(value, error));
+                drain();
+            });
+        }
+
+        /**
+         * @param error 为null表示下游取消，不再通知下游
+         */
+        private void terminate(Throwable error) {
+            terminated = true;
+            signals.clear();
+            for (CompletableFuture<?> future : running) {
+                future.cancel(true);
+            }
+            if (null != error) {
+                subscriber.onError(error);
+            }
+        }
+    }
+
+    private class Signal {
+        private final T value;
+        private final Throwable error;
+
+        private Signal(T value, Throwable error) {
+            this.value = value;
+            this.error = error;
+        }
+    }
+}
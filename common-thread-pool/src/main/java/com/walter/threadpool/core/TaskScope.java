@@ -0,0 +1,242 @@
+package com.walter.threadpool.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 结构化并发的任务作用域：在作用域内fork的子任务提交到所属线程池执行，由join统一等待，子任务的生命周期不超出作用域。
+ * 1. {@link Policy#SHUTDOWN_ON_FAILURE}：任一子任务失败时立即取消其余子任务，join抛出该失败
+ * 2. {@link Policy#SHUTDOWN_ON_SUCCESS}：任一子任务成功时立即取消其余子任务，join后通过{@link #result()}获取该结果
+ * 3. 作用域的截止时间到达时，由共享时间轮取消所有未结束的子任务，join抛出{@link TimeoutException}
+ * 4. close时取消所有未结束的子任务，建议配合try-with-resources使用
+ * <p>
+ * 作用域只应由创建它的线程使用（fork、join、close），子任务内部可以再打开新的作用域。
+ *
+ * @author walter.tan
+ */
+public class TaskScope<T> implements AutoCloseable {
+
+    public enum Policy {
+        /**
+         * 任一子任务失败时取消其余子任务
+         */
+        SHUTDOWN_ON_FAILURE,
+        /**
+         * 任一子任务成功时取消其余子任务
+         */
+        SHUTDOWN_ON_SUCCESS
+    }
+
+    private final CustomThreadPool threadPool;
+    private final Policy policy;
+    private final long timeoutMillis;
+    private final HashedWheelTimer.Timeout deadline;
+
+    /**
+     * 子任务按fork顺序排列，以下状态在this锁内访问
+     */
+    private final List<CompletableFuture<T>> subtasks = new ArrayList<>();
+    /**
+     * 子任务结束且已处理完结果后完成，join等待这些future，避免先于结果处理返回
+     */
+    private final List<CompletableFuture<Void>> completions = new ArrayList<>();
+    private final CompletableFuture<Void> shutdown = new CompletableFuture<>();
+    private Throwable firstFailure;
+    private boolean hasSuccess;
+    private T firstSuccess;
+    private boolean timedOut;
+    private boolean joined;
+    private boolean closed;
+
+    TaskScope(CustomThreadPool threadPool, Policy policy, long timeout, TimeUnit unit) {
+        this.threadPool = threadPool;
+        this.policy = policy;
+        this.timeoutMillis = unit.toMillis(timeout);
+        this.deadline = timeout > 0L
+                ? CustomThreadPoolManager.getTimeoutTimer().newTimeout(this::onDeadline, timeout, unit)
+                : null;
+    }
+
+    /**
+     * 在作用域内提交一个子任务
+     * @param task
+     * @return 子任务的future，作用域关闭后未结束的子任务会被取消
+     * @throws IllegalStateException 作用域已经join、关闭或已触发取消
+     */
+    public Future<T> fork(Callable<? extends T> task) {
+        synchronized (this) {
+            if (joined || closed || shutdown.isDone()) {
+                throw new IllegalStateException("task scope is already " + (closed ? "closed" : joined ? "joined" : "shutdown"));
+            }
+        }
+        CompletableFuture<T> subtask = threadPool.submitAsync(task::call, 0L, TimeUnit.MILLISECONDS);
+        CompletableFuture<Void> completion = subtask.handle((value, ex) -> {
+            onComplete(value, ex);
+            return null;
+        });
+        synchronized (this) {
+            subtasks.add(subtask);
+            completions.add(completion);
+        }
+        // fork期间作用域可能已被其他子任务或截止时间触发取消
+        if (shutdown.isDone()) {
+            subtask.cancel(true);
+        }
+        return subtask;
+    }
+
+    /**
+     * 等待所有子任务结束，或按策略提前结束
+     * @throws InterruptedException 等待时被中断，此时会取消所有未结束的子任务
+     * @throws ExecutionException {@link Policy#SHUTDOWN_ON_FAILURE}下第一个失败的子任务的异常；
+     *                            {@link Policy#SHUTDOWN_ON_SUCCESS}下所有子任务均失败时第一个失败的异常
+     * @throws TimeoutException 作用域的截止时间已到达
+     */
+    public void join() throws InterruptedException, ExecutionException, TimeoutException {
+        CompletableFuture<?>[] copy;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("task scope is already closed");
+            }
+            joined = true;
+            copy = completions.toArray(new CompletableFuture<?>[0]);
+        }
+        try {
+            CompletableFuture.anyOf(CompletableFuture.allOf(copy), shutdown).get();
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+        synchronized (this) {
+            if (timedOut) {
+                throw new TimeoutException("task scope timeout: over <" + timeoutMillis + "ms> key<" + threadPool.getKey() + ">");
+            }
+            if (null != firstFailure && (policy == Policy.SHUTDOWN_ON_FAILURE || !hasSuccess)) {
+                throw new ExecutionException(firstFailure);
+            }
+        }
+    }
+
+    /**
+     * 返回所有子任务的结果，按fork顺序排列，仅在{@link Policy#SHUTDOWN_ON_FAILURE}下join成功后调用
+     * @return
+     */
+    public List<T> results() {
+        List<T> results = new ArrayList<>();
+        synchronized (this) {
+            checkJoined(Policy.SHUTDOWN_ON_FAILURE);
+            for (CompletableFuture<T> subtask : subtasks) {
+                results.add(subtask.join());
+            }
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * 返回第一个成功的子任务的结果，仅在{@link Policy#SHUTDOWN_ON_SUCCESS}下join成功后调用
+     * @return
+     */
+    public synchronized T result() {
+        checkJoined(Policy.SHUTDOWN_ON_SUCCESS);
+        return firstSuccess;
+    }
+
+    /**
+     * 关闭作用域，取消所有未结束的子任务
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (null != deadline) {
+            deadline.cancel();
+        }
+        cancelAll();
+    }
+
+    private void checkJoined(Policy expected) {
+        if (policy != expected) {
+            throw new IllegalStateException("not available for policy " + policy);
+        }
+        if (!joined || timedOut || (null != firstFailure && (policy == Policy.SHUTDOWN_ON_FAILURE || !hasSuccess))) {
+            throw new IllegalStateException("task scope is not joined successfully");
+        }
+    }
+
+    private void onComplete(T value, Throwable ex) {
+        boolean shouldShutdown;
+        synchronized (this) {
+            if (shutdown.isDone()) {
+                return;
+            }
+            if (null == ex) {
+                shouldShutdown = policy == Policy.SHUTDOWN_ON_SUCCESS && !hasSuccess;
+                if (shouldShutdown) {
+                    hasSuccess = true;
+                    firstSuccess = value;
+                }
+            } else {
+                if (ex instanceof CancellationException) {
+                    return;
+                }
+                if (null == firstFailure) {
+                    firstFailure = ex;
+                }
+                shouldShutdown = policy == Policy.SHUTDOWN_ON_FAILURE;
+            }
+        }
+        if (shouldShutdown) {
+            shutdown();
+        }
+    }
+
+    private void onDeadline() {
+        synchronized (this) {
+            if (shutdown.isDone()) {
+                return;
+            }
+            // 子任务都已结束时不算超时，但之后不能再fork
+            timedOut = !allDone();
+        }
+        if (timedOut) {
+            threadPool.getMetrics().recordTimeoutCancelled();
+        }
+        shutdown();
+    }
+
+    private boolean allDone() {
+        for (CompletableFuture<T> subtask : subtasks) {
+            if (!subtask.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void shutdown() {
+        shutdown.complete(null);
+        cancelAll();
+    }
+
+    private void cancelAll() {
+        List<CompletableFuture<T>> copy;
+        synchronized (this) {
+            copy = new ArrayList<>(subtasks);
+        }
+        for (CompletableFuture<T> subtask : copy) {
+            subtask.cancel(true);
+        }
+    }
+}
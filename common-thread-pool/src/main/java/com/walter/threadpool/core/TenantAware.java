@@ -0,0 +1,14 @@
+package com.walter.threadpool.core;
+
+/**
+ * 带有租户标识的任务
+ * @author walter.tan
+ */
+interface TenantAware {
+
+    /**
+     * 租户标识，未设置时返回null
+     * @return
+     */
+    String getTenant();
+}
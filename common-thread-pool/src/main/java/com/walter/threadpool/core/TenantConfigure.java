@@ -0,0 +1,47 @@
+package com.walter.threadpool.core;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 租户公平队列的配置，仅对{@link ThreadQueueType#TenantFairQueue}有效
+ * @author walter.tan
+ */
+@Data
+@NoArgsConstructor
+@ToString
+public class TenantConfigure {
+    /**
+     * 未单独配置的租户的权重，即每轮可以出队的任务数
+     */
+    private int defaultWeight = 1;
+    /**
+     * 未单独配置的租户的队列上限，小于等于0时使用线程池的initQueueSize
+     */
+    private int defaultQueueCap;
+    /**
+     * 各租户的权重
+     */
+    private Map<String, Integer> weights = new HashMap<>();
+    /**
+     * 各租户的队列上限
+     */
+    private Map<String, Integer> queueCaps = new HashMap<>();
+
+    public int getWeight(String tenant) {
+        Integer weight = weights.get(tenant);
+        return null == weight || weight <= 0 ? Math.max(1, defaultWeight) : weight;
+    }
+
+    public int getQueueCap(String tenant, int defaultCap) {
+        Integer cap = queueCaps.get(tenant);
+        if (null != cap && cap > 0) {
+            return cap;
+        }
+        return defaultQueueCap > 0 ? defaultQueueCap : defaultCap;
+    }
+}
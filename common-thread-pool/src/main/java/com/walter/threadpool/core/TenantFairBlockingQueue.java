@@ -0,0 +1,219 @@
+package com.walter.threadpool.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 按租户隔离的公平队列：每个租户一个子队列，出队时按差额轮询（Deficit Round Robin）在有任务的租户之间轮转，
+ * 每轮租户获得与权重相等的额度，每出队一个任务消耗1个额度，额度用完或子队列为空时轮到下一个租户。
+ * 因此单个租户大量提交只会占满自己的子队列（达到上限后被拒绝），不会让其他租户的任务一直排在其后。
+ * <p>
+ * 未标记租户的任务归入{@link #DEFAULT_TENANT}。子队列为空的租户会被移除，租户标识不受控时也不会无限增长。
+ * 需配合{@link TenantFairThreadPoolExecutor}使用，否则超限的任务会被线程池交给新建的非核心线程执行。
+ *
+ * @author walter.tan
+ */
+public class TenantFairBlockingQueue extends AbstractBoundedBlockingQueue<Runnable> {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private final TenantConfigure conf;
+    private final int defaultQueueCap;
+
+    /**
+     * 有排队任务的租户，子队列为空时移除
+     */
+    private final Map<String, TenantQueue> tenants = new HashMap<>();
+    /**
+     * 有任务的租户，按轮询顺序排列，队首为当前租户
+     */
+    private final ArrayDeque<TenantQueue> activeTenants = new ArrayDeque<>();
+    private int size;
+    /**
+     * 租户达到上限时offer抛出{@link TenantQueueFullException}，而不是返回false
+     */
+    private volatile boolean rejectOverCap;
+
+    /**
+     * @param conf 租户配置
+     * @param defaultQueueCap 未配置上限的租户的队列上限，小于等于0表示不限制
+     */
+    public TenantFairBlockingQueue(TenantConfigure conf, int defaultQueueCap) {
+        super(Integer.MAX_VALUE);
+        this.conf = null == conf ? new TenantConfigure() : conf;
+        this.defaultQueueCap = defaultQueueCap > 0 ? defaultQueueCap : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 返回各租户当前的排队任务数
+     * @return
+     */
+    public Map<String, Integer> tenantSizes() {
+        lock.lock();
+        try {
+            Map<String, Integer> sizes = new LinkedHashMap<>();
+            for (TenantQueue tenantQueue : tenants.values()) {
+                sizes.put(tenantQueue.tenant, tenantQueue.tasks.size());
+            }
+            return sizes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 移除并返回指定租户最早入队的任务，供DiscardOldestPolicy在租户达到上限时只丢弃该租户自己的任务
+     * @param tenant
+     * @return 该租户没有排队任务时返回null
+     */
+    Runnable pollTenant(String tenant) {
+        lock.lock();
+        try {
+            TenantQueue tenantQueue = tenants.get(tenant);
+            Runnable oldest = null == tenantQueue ? null : tenantQueue.tasks.peekFirst();
+            return null != oldest && remove(oldest) ? oldest : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void setRejectOverCap(boolean rejectOverCap) {
+        this.rejectOverCap = rejectOverCap;
+    }
+
+    /**
+     * 总容量不限，入队失败只可能是租户达到上限
+     * @param task
+     * @return
+     * @throws TenantQueueFullException 租户达到上限，且由{@link TenantFairThreadPoolExecutor}使用
+     */
+    @Override
+    public boolean offer(Runnable task) {
+        if (super.offer(task)) {
+            return true;
+        }
+        if (rejectOverCap) {
+            throw new TenantQueueFullException(tenantOf(task));
+        }
+        return false;
+    }
+
+    @Override
+    protected boolean doOffer(Runnable task) {
+        String tenant = tenantOf(task);
+        TenantQueue tenantQueue = tenants.get(tenant);
+        if (null == tenantQueue) {
+            tenantQueue = new TenantQueue(tenant, conf.getWeight(tenant), conf.getQueueCap(tenant, defaultQueueCap));
+            tenants.put(tenant, tenantQueue);
+        }
+        if (tenantQueue.tasks.size() >= tenantQueue.cap) {
+            return false;
+        }
+        if (tenantQueue.tasks.isEmpty()) {
+            activeTenants.addLast(tenantQueue);
+        }
+        tenantQueue.tasks.addLast(task);
+        size++;
+        return true;
+    }
+
+    @Override
+    protected Runnable doPoll() {
+        while (!activeTenants.isEmpty()) {
+            TenantQueue current = activeTenants.peekFirst();
+            if (current.deficit <= 0) {
+                // 新一轮开始，获得与权重相等的额度
+                current.deficit += current.weight;
+            }
+            Runnable task = current.tasks.pollFirst();
+            if (null == task) {
+                activeTenants.pollFirst();
+                tenants.remove(current.tenant);
+                continue;
+            }
+            size--;
+            current.deficit--;
+            if (current.tasks.isEmpty()) {
+                // 子队列为空时退出轮询并移除租户，剩余额度不保留
+                activeTenants.pollFirst();
+                tenants.remove(current.tenant);
+            } else if (current.deficit <= 0) {
+                activeTenants.addLast(activeTenants.pollFirst());
+            }
+            return task;
+        }
+        return null;
+    }
+
+    @Override
+    protected Runnable doPeek() {
+        TenantQueue current = activeTenants.peekFirst();
+        return null == current ? null : current.tasks.peekFirst();
+    }
+
+    @Override
+    protected int doSize() {
+        return size;
+    }
+
+    @Override
+    protected boolean doRemove(Object o) {
+        if (!(o instanceof Runnable)) {
+            return false;
+        }
+        TenantQueue tenantQueue = tenants.get(tenantOf((Runnable) o));
+        if (null == tenantQueue || !tenantQueue.tasks.remove(o)) {
+            return false;
+        }
+        size--;
+        if (tenantQueue.tasks.isEmpty()) {
+            activeTenants.remove(tenantQueue);
+            tenants.remove(tenantQueue.tenant);
+        }
+        return true;
+    }
+
+    @Override
+    protected List<Runnable> doSnapshot() {
+        List<Runnable> snapshot = new ArrayList<>(size);
+        for (TenantQueue tenantQueue : activeTenants) {
+            snapshot.addAll(tenantQueue.tasks);
+        }
+        return snapshot;
+    }
+
+    static String tenantOf(Runnable task) {
+        String tenant = task instanceof TenantAware ? ((TenantAware) task).getTenant() : null;
+        return null == tenant ? DEFAULT_TENANT : tenant;
+    }
+
+    /**
+     * 租户排队数达到上限
+     */
+    static class TenantQueueFullException extends RejectedExecutionException {
+        private static final long serialVersionUID = 1L;
+
+        TenantQueueFullException(String tenant) {
+            super("tenant queue is full: " + tenant);
+        }
+    }
+
+    private static class TenantQueue {
+        private final String tenant;
+        private final int weight;
+        private final int cap;
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private int deficit;
+
+        private TenantQueue(String tenant, int weight, int cap) {
+            this.tenant = tenant;
+            this.weight = weight;
+            this.cap = cap;
+        }
+    }
+}
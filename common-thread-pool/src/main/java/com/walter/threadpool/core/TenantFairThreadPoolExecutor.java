@@ -0,0 +1,31 @@
+package com.walter.threadpool.core;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配合{@link TenantFairBlockingQueue}使用的线程池：租户排队数达到上限时直接交由拒绝策略处理。
+ * {@link ThreadPoolExecutor}在入队失败时会创建非核心线程直接执行该任务，超限租户的任务反而插到所有排队任务之前，
+ * 因此maxPoolSize大于corePoolSize时也不会为超限的任务创建线程。
+ *
+ * @author walter.tan
+ */
+class TenantFairThreadPoolExecutor extends ThreadPoolExecutor {
+
+    TenantFairThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                 TenantFairBlockingQueue workQueue, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        workQueue.setRejectOverCap(true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        try {
+            super.execute(command);
+        } catch (TenantFairBlockingQueue.TenantQueueFullException e) {
+            getRejectedExecutionHandler().rejectedExecution(command, this);
+        }
+    }
+}
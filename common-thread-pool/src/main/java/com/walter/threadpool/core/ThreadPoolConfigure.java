@@ -1,6 +1,5 @@
 package com.walter.threadpool.core;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
@@ -13,7 +12,6 @@ import java.util.concurrent.ThreadFactory;
  */
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 @ToString
 public class ThreadPoolConfigure {
     /**
@@ -47,4 +45,78 @@ public class ThreadPoolConfigure {
     private ThreadFactory threadFactory;
 
     private RejectedExecutionHandler rejectedExecutionHandler;
+
+    /**
+     * 无锁队列的等待策略，仅对{@link ThreadQueueType#RingBufferQueue}有效，默认为{@link WaitStrategy#PARK}
+     */
+    private WaitStrategy waitStrategy;
+
+    /**
+     * 自适应调整线程数的配置，为null表示不启用
+     */
+    private AdaptiveSizingConfigure adaptiveSizing;
+
+    /**
+     * 停滞检测的配置，为null表示不启用
+     */
+    private StallDetectConfigure stallDetect;
+
+    /**
+     * 已入队的任务被丢弃（如超过截止时间）时的回调，为null时只打印warn日志
+     */
+    private TaskDropHandler taskDropHandler;
+
+    /**
+     * 共享载体模式下的调度权重，仅对{@link ThreadQueueType#SharedCarrier}有效，小于等于0时为1，不能大于2^20
+     */
+    private int weight;
+
+    /**
+     * CoDel队列的配置，仅对{@link ThreadQueueType#CoDelQueue}有效，为null时使用默认配置
+     */
+    private CoDelConfigure coDel;
+
+    /**
+     * 租户配置，仅对{@link ThreadQueueType#TenantFairQueue}有效，为null时所有租户使用默认配置
+     */
+    private TenantConfigure tenant;
+
+    /**
+     * 负载任务溢出到磁盘的配置，为null表示不启用，此时不能调用{@link CustomThreadPool#executePayload(String, byte[])}
+     */
+    private OverflowSpillConfigure overflowSpill;
+
+    public ThreadPoolConfigure(String key, String type, int corePoolSize, int maxPoolSize, long keepAliveTime,
+                               long timeout, Boolean fair, int initQueueSize, int showThreadQueueSize,
+                               ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler) {
+        this.key = key;
+        this.type = type;
+        this.corePoolSize = corePoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.keepAliveTime = keepAliveTime;
+        this.timeout = timeout;
+        this.fair = fair;
+        this.initQueueSize = initQueueSize;
+        this.showThreadQueueSize = showThreadQueueSize;
+        this.threadFactory = threadFactory;
+        this.rejectedExecutionHandler = rejectedExecutionHandler;
+    }
+
+    /**
+     * 复制配置，引用类型的属性（如threadFactory、各子配置）与原配置共享
+     * @param other
+     */
+    public ThreadPoolConfigure(ThreadPoolConfigure other) {
+        this(other.key, other.type, other.corePoolSize, other.maxPoolSize, other.keepAliveTime,
+                other.timeout, other.fair, other.initQueueSize, other.showThreadQueueSize,
+                other.threadFactory, other.rejectedExecutionHandler);
+        this.waitStrategy = other.waitStrategy;
+        this.adaptiveSizing = other.adaptiveSizing;
+        this.stallDetect = other.stallDetect;
+        this.taskDropHandler = other.taskDropHandler;
+        this.weight = other.weight;
+        this.coDel = other.coDel;
+        this.tenant = other.tenant;
+        this.overflowSpill = other.overflowSpill;
+    }
 }
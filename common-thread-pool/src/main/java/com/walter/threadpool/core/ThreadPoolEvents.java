@@ -0,0 +1,67 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 线程池任务生命周期的JFR事件入口：运行环境不支持JFR（低于8u262的JDK）时所有方法为空操作，
+ * 支持时由{@link JfrThreadPoolEvents}发出事件，且只有在录制中开启了对应事件时才会创建事件对象。
+ * 事件名以"com.walter.threadpool."开头，可在JMC中与GC暂停、锁竞争等事件按线程和时间关联。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+final class ThreadPoolEvents {
+
+    private static final boolean AVAILABLE = isJfrAvailable();
+
+    private ThreadPoolEvents() {
+    }
+
+    static void enqueue(ThreadPoolMetrics metrics) {
+        if (AVAILABLE) {
+            JfrThreadPoolEvents.enqueue(metrics);
+        }
+    }
+
+    static void start(ThreadPoolMetrics metrics, long queueWaitNanos) {
+        if (AVAILABLE) {
+            JfrThreadPoolEvents.start(metrics, queueWaitNanos);
+        }
+    }
+
+    static void end(ThreadPoolMetrics metrics, long runTimeNanos) {
+        if (AVAILABLE) {
+            JfrThreadPoolEvents.end(metrics, runTimeNanos);
+        }
+    }
+
+    static void reject(ThreadPoolMetrics metrics) {
+        if (AVAILABLE) {
+            JfrThreadPoolEvents.reject(metrics);
+        }
+    }
+
+    static void timeoutCancel(ThreadPoolMetrics metrics) {
+        if (AVAILABLE) {
+            JfrThreadPoolEvents.timeoutCancel(metrics);
+        }
+    }
+
+    static void stall(StallReport report) {
+        if (AVAILABLE) {
+            JfrThreadPoolEvents.stall(report);
+        }
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            // 提前加载事件类，不可用时（如类校验失败）统一降级为空操作
+            JfrThreadPoolEvents.register();
+            return true;
+        } catch (Throwable t) {
+            log.info("jfr events of CustomThreadPool disabled: {}", t.toString());
+            return false;
+        }
+    }
+}
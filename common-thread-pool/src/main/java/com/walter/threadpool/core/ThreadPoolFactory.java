@@ -28,8 +28,9 @@ public class ThreadPoolFactory {
         return CustomThreadPoolManager.getThreadPool(conf);
     }
 
-    public void shutdownAll(long timeout, TimeUnit timeUnit) {
-        CustomThreadPoolManager.shutdownAll(timeout, timeUnit);
+    public ShutdownReport shutdownAll(long timeout, TimeUnit timeUnit) {
+        ShutdownReport report = CustomThreadPoolManager.shutdownAll(timeout, timeUnit);
         log.info("ThreadPoolFactory has shutdown all thread pools.");
+        return report;
     }
 }
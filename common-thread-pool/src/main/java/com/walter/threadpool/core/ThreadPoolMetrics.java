@@ -0,0 +1,354 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程池的监控指标：计数器使用分段累加的{@link LongAdder}，耗时使用{@link LatencyHistogram}，
+ * 记录时均不产生对象分配；活跃线程数等瞬时值在读取时才从线程池中获取。
+ * @author walter.tan
+ */
+@Slf4j
+public class ThreadPoolMetrics implements ThreadPoolMetricsMXBean {
+
+    public static final String OBJECT_NAME_PREFIX = "com.walter.threadpool:type=CustomThreadPool,name=";
+
+    /**
+     * 按租户统计排队耗时的租户数上限，避免租户标识不受控时指标无限增长
+     */
+    public static final int MAX_TENANT_TAGS = 64;
+    /**
+     * 超过租户数上限后，新租户的排队耗时合并计入的标签
+     */
+    public static final String OTHER_TENANT = "_other";
+
+    private final CustomThreadPool threadPool;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timeoutCancelled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWon = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder spillReadmitRejected = new LongAdder();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    /**
+     * 按租户统计的排队耗时，租户数超过{@link #MAX_TENANT_TAGS}后新出现的租户合并计入{@link #OTHER_TENANT}
+     */
+    private final ConcurrentHashMap<String, LatencyHistogram> tenantQueueWait = new ConcurrentHashMap<>();
+
+    public ThreadPoolMetrics(CustomThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    public void recordSubmitted() {
+        submitted.increment();
+        ThreadPoolEvents.enqueue(this);
+    }
+
+    public void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+        ThreadPoolEvents.start(this, nanos);
+    }
+
+    /**
+     * 记录排队耗时，同时计入所属租户的排队耗时
+     * @param tenant 租户标识，为null时只计入线程池的排队耗时
+     * @param nanos
+     */
+    public void recordQueueWait(String tenant, long nanos) {
+        queueWait.record(nanos);
+        ThreadPoolEvents.start(this, nanos);
+        if (null != tenant) {
+            LatencyHistogram histogram = tenantQueueWait.get(tenant);
+            if (null == histogram) {
+                // 并发时可能略微超过上限
+                String tag = tenantQueueWait.size() < MAX_TENANT_TAGS ? tenant : OTHER_TENANT;
+                histogram = tenantQueueWait.computeIfAbsent(tag, k -> new LatencyHistogram());
+            }
+            histogram.record(nanos);
+        }
+    }
+
+    public void recordRunTime(long nanos) {
+        completed.increment();
+        runTime.record(nanos);
+        ThreadPoolEvents.end(this, nanos);
+    }
+
+    public void recordRejected() {
+        rejected.increment();
+        ThreadPoolEvents.reject(this);
+    }
+
+    public void recordTimeoutCancelled() {
+        timeoutCancelled.increment();
+        ThreadPoolEvents.timeoutCancel(this);
+    }
+
+    public void recordDropped() {
+        dropped.increment();
+    }
+
+    public void recordHedged() {
+        hedged.increment();
+    }
+
+    public void recordHedgeWon() {
+        hedgeWon.increment();
+    }
+
+    public void recordSpilled() {
+        spilled.increment();
+    }
+
+    /**
+     * 记录重新提交溢出任务时再次被拒绝，不计入被拒绝的任务数（任务已在首次被拒绝时计入）
+     */
+    public void recordSpillReadmitRejected() {
+        spillReadmitRejected.increment();
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getRunTime() {
+        return runTime;
+    }
+
+    /**
+     * 返回各租户的排队耗时
+     * @return
+     */
+    public Map<String, LatencyHistogram> getTenantQueueWait() {
+        return Collections.unmodifiableMap(tenantQueueWait);
+    }
+
+    @Override
+    public String getKey() {
+        return threadPool.getKey();
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return threadPool.getTaskPool().getCorePoolSize();
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return threadPool.getTaskPool().getMaximumPoolSize();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return threadPool.getPoolSize();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return threadPool.getActiveCount();
+    }
+
+    @Override
+    public int getLargestPoolSize() {
+        return threadPool.getTaskPool().getLargestPoolSize();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return threadPool.getQueue().size();
+    }
+
+    @Override
+    public int getQueueRemainingCapacity() {
+        return threadPool.getQueue().remainingCapacity();
+    }
+
+    @Override
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getTimeoutCancelledCount() {
+        return timeoutCancelled.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getHedgedCount() {
+        return hedged.sum();
+    }
+
+    @Override
+    public long getHedgeWonCount() {
+        return hedgeWon.sum();
+    }
+
+    @Override
+    public long getSpilledCount() {
+        return spilled.sum();
+    }
+
+    @Override
+    public long getSpillReadmitRejectedCount() {
+        return spillReadmitRejected.sum();
+    }
+
+    @Override
+    public long getSpillBacklog() {
+        return threadPool.getSpillBacklog();
+    }
+
+    @Override
+    public double getQueueWaitMeanMillis() {
+        return queueWait.snapshot().getMean() / 1000000D;
+    }
+
+    @Override
+    public double getQueueWaitP50Millis() {
+        return queueWait.snapshot().getPercentileMillis(50D);
+    }
+
+    @Override
+    public double getQueueWaitP99Millis() {
+        return queueWait.snapshot().getPercentileMillis(99D);
+    }
+
+    @Override
+    public double getQueueWaitMaxMillis() {
+        return queueWait.snapshot().getMax() / 1000000D;
+    }
+
+    @Override
+    public Map<String, Double> getTenantQueueWaitP99Millis() {
+        Map<String, Double> map = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : tenantQueueWait.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().snapshot().getPercentileMillis(99D));
+        }
+        return map;
+    }
+
+    @Override
+    public double getRunTimeMeanMillis() {
+        return runTime.snapshot().getMean() / 1000000D;
+    }
+
+    @Override
+    public double getRunTimeP50Millis() {
+        return runTime.snapshot().getPercentileMillis(50D);
+    }
+
+    @Override
+    public double getRunTimeP99Millis() {
+        return runTime.snapshot().getPercentileMillis(99D);
+    }
+
+    @Override
+    public double getRunTimeMaxMillis() {
+        return runTime.snapshot().getMax() / 1000000D;
+    }
+
+    /**
+     * 以Map形式返回所有指标，用于actuator等输出
+     * @return
+     */
+    public Map<String, Object> toMap() {
+        ThreadPoolExecutor executor = threadPool.getTaskPool();
+        LatencyHistogram.Snapshot queueWaitSnapshot = queueWait.snapshot();
+        LatencyHistogram.Snapshot runTimeSnapshot = runTime.snapshot();
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("key", getKey());
+        map.put("corePoolSize", executor.getCorePoolSize());
+        map.put("maximumPoolSize", executor.getMaximumPoolSize());
+        map.put("poolSize", executor.getPoolSize());
+        map.put("activeCount", executor.getActiveCount());
+        map.put("largestPoolSize", executor.getLargestPoolSize());
+        map.put("queueSize", getQueueSize());
+        map.put("queueRemainingCapacity", getQueueRemainingCapacity());
+        map.put("submittedCount", getSubmittedCount());
+        map.put("completedCount", getCompletedCount());
+        map.put("rejectedCount", getRejectedCount());
+        map.put("timeoutCancelledCount", getTimeoutCancelledCount());
+        map.put("droppedCount", getDroppedCount());
+        map.put("hedgedCount", getHedgedCount());
+        map.put("hedgeWonCount", getHedgeWonCount());
+        map.put("spilledCount", getSpilledCount());
+        map.put("spillReadmitRejectedCount", getSpillReadmitRejectedCount());
+        map.put("spillBacklog", getSpillBacklog());
+        map.put("queueWaitMillis", histogramToMap(queueWaitSnapshot));
+        map.put("runTimeMillis", histogramToMap(runTimeSnapshot));
+        if (!tenantQueueWait.isEmpty()) {
+            Map<String, Object> tenantMap = new TreeMap<>();
+            for (Map.Entry<String, LatencyHistogram> entry : tenantQueueWait.entrySet()) {
+                tenantMap.put(entry.getKey(), histogramToMap(entry.getValue().snapshot()));
+            }
+            map.put("tenantQueueWaitMillis", tenantMap);
+        }
+        return map;
+    }
+
+    private Map<String, Object> histogramToMap(LatencyHistogram.Snapshot snapshot) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", snapshot.getCount());
+        map.put("mean", snapshot.getMean() / 1000000D);
+        map.put("p50", snapshot.getPercentileMillis(50D));
+        map.put("p90", snapshot.getPercentileMillis(90D));
+        map.put("p99", snapshot.getPercentileMillis(99D));
+        map.put("max", snapshot.getMax() / 1000000D);
+        return map;
+    }
+
+    void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(getKey()));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+            }
+        } catch (Exception e) {
+            log.warn("register thread pool metrics mbean fail. key:{}", getKey(), e);
+        }
+    }
+
+    void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(getKey()));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            log.warn("unregister thread pool metrics mbean fail. key:{}", getKey(), e);
+        }
+    }
+}
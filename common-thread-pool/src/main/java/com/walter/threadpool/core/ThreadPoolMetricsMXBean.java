@@ -0,0 +1,88 @@
+package com.walter.threadpool.core;
+
+import java.util.Map;
+
+/**
+ * 线程池监控指标的JMX接口，ObjectName为：com.walter.threadpool:type=CustomThreadPool,name={key}
+ * @author walter.tan
+ */
+public interface ThreadPoolMetricsMXBean {
+
+    String getKey();
+
+    int getCorePoolSize();
+
+    int getMaximumPoolSize();
+
+    int getPoolSize();
+
+    int getActiveCount();
+
+    int getLargestPoolSize();
+
+    int getQueueSize();
+
+    int getQueueRemainingCapacity();
+
+    long getSubmittedCount();
+
+    long getCompletedCount();
+
+    long getRejectedCount();
+
+    long getTimeoutCancelledCount();
+
+    long getDroppedCount();
+
+    /**
+     * 对冲调用中发出备份请求的次数
+     * @return
+     */
+    long getHedgedCount();
+
+    /**
+     * 对冲调用中备份请求先于原请求成功的次数
+     * @return
+     */
+    long getHedgeWonCount();
+
+    /**
+     * 被拒绝后溢出到磁盘的负载任务数（同时计入被拒绝的任务数）
+     * @return
+     */
+    long getSpilledCount();
+
+    /**
+     * 重新提交溢出的任务时再次被拒绝、退回段文件的次数
+     * @return
+     */
+    long getSpillReadmitRejectedCount();
+
+    /**
+     * 已溢出到磁盘、未重新提交的负载任务数
+     * @return
+     */
+    long getSpillBacklog();
+
+    double getQueueWaitMeanMillis();
+
+    double getQueueWaitP50Millis();
+
+    double getQueueWaitP99Millis();
+
+    double getQueueWaitMaxMillis();
+
+    /**
+     * 各租户的p99排队耗时
+     * @return
+     */
+    Map<String, Double> getTenantQueueWaitP99Millis();
+
+    double getRunTimeMeanMillis();
+
+    double getRunTimeP50Millis();
+
+    double getRunTimeP99Millis();
+
+    double getRunTimeMaxMillis();
+}
@@ -0,0 +1,173 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 把Reactive Streams的上游接入线程池的订阅者：每个元素作为一个任务提交到线程池执行，
+ * 同时在执行中或排队的元素不超过maxInFlight个，一个任务结束后才向上游再请求一个元素，
+ * 由上游按需生产，而不是靠{@link RejectedExecutionException}限流。
+ * <p>
+ * 任务内部的异常只打印error日志，不影响后续元素；任务被线程池拒绝时（如与其他生产者共用线程池）取消订阅，
+ * 并以该异常结束{@link #completion()}。任务被线程池接收后又被丢弃（如CoDel丢弃、DiscardPolicy、shutdownNow）时，
+ * 该元素只打印warn日志，同样释放一个名额并向上游请求下一个元素。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+public class ThreadPoolSubscriber<T> implements Subscriber<T> {
+
+    private final CustomThreadPool threadPool;
+    private final Consumer<? super T> consumer;
+    private final int maxInFlight;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    /**
+     * 已接收未结束的元素数，上游结束时额外持有1，归零时completion完成
+     */
+    private final AtomicInteger pending = new AtomicInteger(1);
+    /**
+     * 待向上游请求的元素数，与取消一起由{@link #drain()}串行发出
+     */
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile Subscription subscription;
+    private volatile boolean cancelled;
+    /**
+     * 只在drain中访问
+     */
+    private boolean cancelSent;
+
+    ThreadPoolSubscriber(CustomThreadPool threadPool, Consumer<? super T> consumer, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.threadPool = threadPool;
+        this.consumer = consumer;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * 上游结束且所有元素处理完毕时完成；上游出错或任务被拒绝时以该异常完成
+     * @return
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    @Override
+    public void onSubscribe(Subscription s) {
+        if (null == s) {
+            throw new NullPointerException("subscription");
+        }
+        synchronized (this) {
+            if (null != subscription) {
+                // 同一个订阅者只能订阅一次
+                s.cancel();
+                return;
+            }
+            subscription = s;
+        }
+        demand.addAndGet(maxInFlight);
+        drain();
+    }
+
+    @Override
+    public void onNext(T item) {
+        if (null == item) {
+            throw new NullPointerException("item");
+        }
+        if (cancelled) {
+            return;
+        }
+        pending.incrementAndGet();
+        CompletableFuture<Void> task;
+        try {
+            task = threadPool.submitAsync(() -> {
+                try {
+                    consumer.accept(item);
+                } catch (Throwable t) {
+                    log.error("subscriber task fail. key<{}>", threadPool.getKey(), t);
+                }
+                return null;
+            }, 0L, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            cancel(e);
+            return;
+        }
+        // 任务执行结束、被丢弃或被取消时都会完成，保证名额一定被释放
+        task.whenComplete((v, t) -> {
+            if (null != t) {
+                log.warn("subscriber item dropped. key<{}>", threadPool.getKey(), t);
+            }
+            onItemDone();
+        });
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (null == t) {
+            throw new NullPointerException("throwable");
+        }
+        completion.completeExceptionally(t);
+    }
+
+    @Override
+    public void onComplete() {
+        if (pending.decrementAndGet() == 0) {
+            completion.complete(null);
+        }
+    }
+
+    private void onItemDone() {
+        if (pending.decrementAndGet() == 0) {
+            completion.complete(null);
+            return;
+        }
+        if (!cancelled) {
+            demand.incrementAndGet();
+            drain();
+        }
+    }
+
+    /**
+     * 规范要求对Subscription的调用串行执行：同一时刻只有一个线程发出请求或取消，其他线程只累加需求后返回。
+     * 不持有锁调用Subscription，元素被丢弃时本方法可能在上游的onNext调用栈内执行，加锁会与工作线程互相等待
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            if (cancelled) {
+                if (!cancelSent) {
+                    cancelSent = true;
+                    subscription.cancel();
+                }
+            } else {
+                long n = demand.getAndSet(0L);
+                if (n > 0L) {
+                    subscription.request(n);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void cancel(Throwable cause) {
+        cancelled = true;
+        drain();
+        log.error("subscriber cancelled because task rejected. key<{}>", threadPool.getKey(), cause);
+        completion.completeExceptionally(cause);
+    }
+}
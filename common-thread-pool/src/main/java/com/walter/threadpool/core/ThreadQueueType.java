@@ -12,7 +12,43 @@ public enum ThreadQueueType {
     SynchronousQueueWithFair("1"),
     SynchronousQueue("2"),
     LinkedBlockingQueue("3"),
-    LinkedBlockingQueueWithQueueSize("4")
+    LinkedBlockingQueueWithQueueSize("4"),
+    /**
+     * 虚拟线程模式（JDK21+）：每个任务在独立的虚拟线程中执行，并发数上限为maxPoolSize，
+     * 超出上限的任务在长度为initQueueSize的队列中等待；JVM不支持虚拟线程时退化为{@link #SynchronousQueue}
+     */
+    VirtualThread("5"),
+    /**
+     * 基于预分配环形数组的有界无锁队列，容量为initQueueSize向上取整的2的幂，等待策略参考{@link WaitStrategy}
+     */
+    RingBufferQueue("6"),
+    /**
+     * 按截止时间先后出队（EDF）的有界队列，容量为initQueueSize，未设置截止时间的任务排在最后，参考{@link DeadlineBlockingQueue}
+     */
+    DeadlineQueue("7"),
+    /**
+     * 优先扩容线程再排队的有界队列，容量为initQueueSize：线程数未达到maxPoolSize且没有空闲线程时先创建新线程，参考{@link EagerTaskQueue}
+     */
+    ElasticQueue("8"),
+    /**
+     * 共享载体模式：不创建独立的线程，任务在长度为initQueueSize的队列中等待，由所有此类线程池共用的载体线程（线程数等于CPU核数）
+     * 按权重（{@link ThreadPoolConfigure#getWeight()}）公平调度执行，同时执行的任务数不超过maxPoolSize，参考{@link SharedCarrierPool}
+     */
+    SharedCarrier("9"),
+    /**
+     * 按排队时延控制负载的有界队列（CoDel），容量为initQueueSize：排队时延持续超过目标值时从队首丢弃任务并回调{@link TaskDropHandler}，
+     * 队列满后线程数增长到maxPoolSize，之后交由拒绝策略处理，配置参考{@link CoDelConfigure}
+     */
+    CoDelQueue("10"),
+    /**
+     * 按租户隔离的公平队列：每个租户一个子队列，按租户权重轮询出队，单个租户排队数达到上限后只拒绝该租户的任务，
+     * 租户配置参考{@link TenantConfigure}，提交方式参考{@link CustomThreadPool#executeForTenant(String, Runnable)}
+     */
+    TenantFairQueue("11"),
+    /**
+     * 容量可以在运行时调整的有界队列，容量为initQueueSize，配置热更新时修改initQueueSize会同步调整队列容量，参考{@link ResizableBlockingQueue}
+     */
+    ResizableQueue("12")
     ;
 
     private String value;
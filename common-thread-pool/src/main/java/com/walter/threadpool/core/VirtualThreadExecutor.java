@@ -0,0 +1,150 @@
+package com.walter.threadpool.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 基于虚拟线程（JDK21+）的执行器：每个任务在新的虚拟线程中执行，并发数由信号量而非线程数限制，
+ * 超出并发上限的任务进入等待队列，队列满时交由拒绝策略处理。
+ * <p>
+ * 虚拟线程通过反射创建，因此可以在JDK8下编译，运行时可用{@link #isSupported()}判断是否支持。
+ *
+ * @author walter.tan
+ */
+@Slf4j
+class VirtualThreadExecutor extends AbstractLimitedExecutor {
+
+    private static final Method OF_VIRTUAL = findOfVirtual();
+
+    private final ThreadFactory virtualThreadFactory;
+    private final ConcurrencyLimit permits;
+
+    VirtualThreadExecutor(String name, int concurrency, BlockingQueue<Runnable> waitingQueue, RejectedExecutionHandler handler) {
+        super(concurrency, waitingQueue, handler);
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("virtual thread is not supported by current jvm: " + System.getProperty("java.version"));
+        }
+        this.virtualThreadFactory = newVirtualThreadFactory(name + "-virtual-");
+        this.permits = new ConcurrencyLimit(concurrency);
+    }
+
+    /**
+     * 当前JVM是否支持虚拟线程
+     * @return
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (isShutdown()) {
+            handler.rejectedExecution(command, this);
+            return;
+        }
+        if (permits.tryAcquire()) {
+            startWorker(command);
+        } else if (waitingQueue.offer(command)) {
+            // 入队期间可能有任务结束并释放了许可，此时需要由提交线程启动新的虚拟线程，避免任务滞留在队列中
+            tryStartQueuedTask();
+        } else {
+            handler.rejectedExecution(command, this);
+        }
+    }
+
+    private void tryStartQueuedTask() {
+        if (!waitingQueue.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waitingQueue.poll();
+            if (next != null) {
+                startWorker(next);
+            } else {
+                permits.release();
+            }
+        }
+    }
+
+    private void startWorker(Runnable firstTask) {
+        incrementActive();
+        try {
+            virtualThreadFactory.newThread(() -> runWorker(firstTask)).start();
+        } catch (Throwable t) {
+            decrementActive();
+            permits.release();
+            throw new RejectedExecutionException("start virtual thread fail.", t);
+        }
+    }
+
+    private void runWorker(Runnable firstTask) {
+        try {
+            Runnable task = firstTask;
+            while (task != null) {
+                runTask(task);
+                task = waitingQueue.poll();
+            }
+        } finally {
+            decrementActive();
+            permits.release();
+            tryStartQueuedTask();
+            tryTerminate();
+        }
+    }
+
+    @Override
+    protected void onConcurrencyChanged(int delta) {
+        if (delta > 0) {
+            permits.release(delta);
+            for (int i = 0; i < delta; i++) {
+                tryStartQueuedTask();
+            }
+        } else {
+            permits.reducePermits(-delta);
+        }
+    }
+
+    private static Method findOfVirtual() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            // JDK19/20中虚拟线程为预览特性，未开启时调用会抛出异常
+            ofVirtual.invoke(null);
+            return ofVirtual;
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory newVirtualThreadFactory(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            Thread.UncaughtExceptionHandler ueh = (thread, e) -> log.error("Thread {}", thread.getName(), e);
+            builder = builderClass.getMethod("uncaughtExceptionHandler", Thread.UncaughtExceptionHandler.class).invoke(builder, ueh);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("create virtual thread factory fail.", e);
+        }
+    }
+
+    /**
+     * 可动态调整许可数的信号量
+     */
+    private static class ConcurrencyLimit extends Semaphore {
+        private ConcurrencyLimit(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
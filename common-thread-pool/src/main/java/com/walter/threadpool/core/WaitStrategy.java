@@ -0,0 +1,78 @@
+package com.walter.threadpool.core;
+
+/**
+ * 无锁队列在满/空时的等待策略
+ * @author walter.tan
+ */
+public enum WaitStrategy {
+    /**
+     * 忙等：延迟最低，但每个等待中的线程会占满一个CPU核，仅适用于线程数不超过CPU核数的场景
+     */
+    SPIN {
+        @Override
+        void idle(int counter) {
+            // 忙等
+        }
+    },
+    /**
+     * 自旋一段时间后让出CPU
+     */
+    YIELD {
+        @Override
+        void idle(int counter) {
+            if (counter >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    },
+    /**
+     * 自旋、让出CPU后阻塞在条件变量上，由之后的入队/出队操作唤醒，空闲时不占用CPU
+     */
+    PARK {
+        @Override
+        void idle(int counter) {
+            if (counter >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        boolean isBlocking() {
+            return true;
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * 执行一次等待
+     * @param counter 本次操作已经等待的次数
+     */
+    abstract void idle(int counter);
+
+    /**
+     * 自旋阶段结束后是否转为阻塞等待
+     * @return
+     */
+    boolean isBlocking() {
+        return false;
+    }
+
+    /**
+     * 是否应结束自旋，转为阻塞等待
+     * @param counter 本次操作已经等待的次数
+     * @return
+     */
+    boolean shouldBlock(int counter) {
+        return isBlocking() && counter >= SPIN_TRIES * 2;
+    }
+
+    /**
+     * 等待次数加1，达到上限后保持不变，避免长时间等待时溢出
+     * @param counter
+     * @return
+     */
+    static int next(int counter) {
+        return counter == Integer.MAX_VALUE ? counter : counter + 1;
+    }
+}
@@ -0,0 +1,33 @@
+package com.walter.threadpool.endpoint;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.CustomThreadPoolManager;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 输出所有线程池监控指标的actuator端点：/actuator/threadpools、/actuator/threadpools/{key}
+ * @author walter.tan
+ */
+@Endpoint(id = "threadpools")
+public class ThreadPoolEndpoint {
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> threadPools() {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        for (Map.Entry<String, CustomThreadPool> entry : CustomThreadPoolManager.getThreadPool().entrySet()) {
+            result.put(entry.getKey(), entry.getValue().getMetrics().toMap());
+        }
+        return result;
+    }
+
+    @ReadOperation
+    public Map<String, Object> threadPool(@Selector String key) {
+        CustomThreadPool pool = CustomThreadPoolManager.getThreadPool().get(key);
+        return null == pool ? null : pool.getMetrics().toMap();
+    }
+}
@@ -0,0 +1,24 @@
+package com.walter.threadpool.endpoint;
+
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnEnabledEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 线程池actuator端点的自动配置，通过META-INF/spring.factories注册，引入本模块即可暴露/actuator/threadpools
+ * @author walter.tan
+ */
+@Configuration
+@ConditionalOnClass(Endpoint.class)
+public class ThreadPoolEndpointAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnEnabledEndpoint
+    public ThreadPoolEndpoint threadPoolEndpoint() {
+        return new ThreadPoolEndpoint();
+    }
+}
@@ -0,0 +1,124 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CoDelBlockingQueue;
+import com.walter.threadpool.core.CoDelConfigure;
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.TaskDropHandler;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author walter.tan
+ */
+public class CoDelBlockingQueueTest {
+
+    @Test
+    public void noDropWithoutStandingQueue() throws InterruptedException {
+        List<Runnable> dropped = new CopyOnWriteArrayList<>();
+        CoDelBlockingQueue queue = new CoDelBlockingQueue(1000, new CoDelConfigure(5L, 20L), dropped::add);
+        for (int i = 0; i < 100; i++) {
+            queue.offer(() -> { });
+            Assert.assertNotNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        }
+        Assert.assertTrue(dropped.isEmpty());
+        Assert.assertFalse(queue.isDropping());
+    }
+
+    @Test
+    public void dropFromHeadWhenOverloaded() throws InterruptedException {
+        List<Runnable> dropped = new CopyOnWriteArrayList<>();
+        CoDelBlockingQueue queue = new CoDelBlockingQueue(1000, new CoDelConfigure(5L, 20L), dropped::add);
+        final int total = 200;
+        for (int i = 0; i < total; i++) {
+            queue.offer(() -> { });
+        }
+        // 消费速度远低于积压量，排队时延持续超过目标值
+        int served = 0;
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            Assert.assertNotNull(task);
+            served++;
+            Thread.sleep(2);
+        }
+        Assert.assertFalse(dropped.isEmpty());
+        Assert.assertEquals(total, served + dropped.size());
+    }
+
+    @Test
+    public void threadPoolDropCallback() throws InterruptedException {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("codel", ThreadQueueType.CoDelQueue.getValue(),
+                1, 1, 0, 0, null, 1000, -1, null, null);
+        CoDelConfigure coDel = new CoDelConfigure(5L, 20L);
+        coDel.setLifoWhenOverloaded(true);
+        conf.setCoDel(coDel);
+        AtomicInteger droppedCount = new AtomicInteger();
+        conf.setTaskDropHandler((task, reason, pool) -> {
+            Assert.assertEquals(TaskDropHandler.Reason.OVERLOADED, reason);
+            droppedCount.incrementAndGet();
+        });
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        AtomicInteger executed = new AtomicInteger();
+        try {
+            for (int i = 0; i < 300; i++) {
+                customThreadPool.execute(() -> {
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    executed.incrementAndGet();
+                });
+            }
+            customThreadPool.shutdown();
+            Assert.assertTrue(customThreadPool.awaitTermination(10, TimeUnit.SECONDS));
+
+            Assert.assertTrue(droppedCount.get() > 0);
+            Assert.assertEquals(300, executed.get() + droppedCount.get());
+            Assert.assertEquals(droppedCount.get(), customThreadPool.getMetrics().getDroppedCount());
+        } finally {
+            customThreadPool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void boundedByInitQueueSize() throws InterruptedException {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("codel-bounded", ThreadQueueType.CoDelQueue.getValue(),
+                1, 2, 0, 0, null, 2, -1, null, null);
+        conf.setCoDel(new CoDelConfigure(5L, 20L));
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        CountDownLatch latch = new CountDownLatch(1);
+        Runnable blockingTask = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            // 队列满后先扩容到maxPoolSize，之后才拒绝
+            for (int i = 0; i < 4; i++) {
+                customThreadPool.execute(blockingTask);
+            }
+            Assert.assertEquals(2, customThreadPool.getQueue().size());
+            Assert.assertEquals(2, customThreadPool.getPoolSize());
+            try {
+                customThreadPool.execute(blockingTask);
+                Assert.fail("expect RejectedExecutionException");
+            } catch (RejectedExecutionException e) {
+                Assert.assertEquals(1L, customThreadPool.getMetrics().getRejectedCount());
+            }
+        } finally {
+            latch.countDown();
+            customThreadPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.CustomThreadPoolManager;
+import com.walter.threadpool.core.HashedWheelTimer;
+import com.walter.threadpool.core.OverflowSpillConfigure;
+import com.walter.threadpool.core.ShutdownReport;
+import com.walter.threadpool.core.StallDetectConfigure;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author walter.tan
+ */
+public class CustomThreadPoolManagerTest {
+
+    @Test
+    public void shutdownAll() throws Exception {
+        CustomThreadPool idle = CustomThreadPoolManager.getThreadPool(newConf("shutdown-idle"));
+        idle.execute(() -> { });
+        for (String key : new String[]{"shutdown-busy-1", "shutdown-busy-2", "shutdown-busy-3"}) {
+            CustomThreadPool busy = CustomThreadPoolManager.getThreadPool(newConf(key));
+            for (int i = 0; i < 3; i++) {
+                busy.execute(() -> {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+        }
+        HashedWheelTimer timer = CustomThreadPoolManager.getTimeoutTimer();
+        Thread.sleep(100);
+
+        long start = System.currentTimeMillis();
+        ShutdownReport report = CustomThreadPoolManager.shutdownAll(500, TimeUnit.MILLISECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // 所有线程池同时关闭，总耗时不超过一个截止时间，而不是线程池个数 × 超时时间
+        Assert.assertTrue("elapsed: " + elapsed, elapsed < 1500);
+        Assert.assertFalse(report.isAllTerminated());
+        Assert.assertTrue(report.getPools().get("shutdown-idle").isTerminated());
+        for (String key : new String[]{"shutdown-busy-1", "shutdown-busy-2", "shutdown-busy-3"}) {
+            ShutdownReport.PoolReport poolReport = report.getPools().get(key);
+            Assert.assertFalse(poolReport.isTerminated());
+            Assert.assertEquals(1, poolReport.getInterruptedCount());
+            Assert.assertEquals(2, poolReport.getDroppedTasks().size());
+        }
+        Assert.assertEquals(6, report.getDroppedTaskCount());
+        Assert.assertTrue(CustomThreadPoolManager.getThreadPool().isEmpty());
+
+        // 共享的时间轮随之停止，再次使用时重新创建
+        Assert.assertTrue(timer.isStopped());
+        Assert.assertNotSame(timer, CustomThreadPoolManager.getTimeoutTimer());
+        Assert.assertFalse(CustomThreadPoolManager.getTimeoutTimer().isStopped());
+    }
+
+    @Test
+    public void sharedResourcesKeptForLivePools() throws Exception {
+        // 直接创建、不由管理类管理的线程池，依赖共享的时间轮做停顿检测与任务超时
+        ThreadPoolConfigure conf = newConf("shutdown-outside");
+        conf.setTimeout(100L);
+        conf.setStallDetect(new StallDetectConfigure(50L, 200L));
+        CustomThreadPool outside = new CustomThreadPool(conf);
+        try {
+            HashedWheelTimer timer = CustomThreadPoolManager.getTimeoutTimer();
+            CustomThreadPoolManager.getThreadPool(newConf("shutdown-managed"));
+            CustomThreadPoolManager.shutdownAll(500, TimeUnit.MILLISECONDS);
+
+            Assert.assertFalse(timer.isStopped());
+            Assert.assertSame(timer, CustomThreadPoolManager.getTimeoutTimer());
+            Future<?> future = outside.submit(() -> {
+                Thread.sleep(5000);
+                return null;
+            });
+            try {
+                future.get(2, TimeUnit.SECONDS);
+                Assert.fail("expect CancellationException");
+            } catch (CancellationException e) {
+                // 超时后由时间轮取消
+            }
+        } finally {
+            outside.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharedResourcesReleasedByFailedPools() throws Exception {
+        // 停顿检测已启动后，溢出层的配置校验失败
+        ThreadPoolConfigure conf = newConf("shutdown-failed");
+        conf.setStallDetect(new StallDetectConfigure(50L, 200L));
+        OverflowSpillConfigure overflowSpill = new OverflowSpillConfigure((key, payload) -> { });
+        overflowSpill.setSegmentSize(1);
+        conf.setOverflowSpill(overflowSpill);
+        try {
+            new CustomThreadPool(conf);
+            Assert.fail("expect IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        CustomThreadPool stopped = new CustomThreadPool(newConf("shutdown-now"));
+        stopped.execute(() -> { });
+        stopped.shutdownNow();
+
+        // 构造失败与shutdownNow的线程池都不再占用共享资源
+        HashedWheelTimer timer = CustomThreadPoolManager.getTimeoutTimer();
+        CustomThreadPoolManager.shutdownAll(500, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(timer.isStopped());
+    }
+
+    @Test
+    public void shutdownAllDropsKeyOrderedTasks() throws Exception {
+        CustomThreadPool keyed = CustomThreadPoolManager.getThreadPool(newConf("shutdown-keyed"));
+        CountDownLatch started = new CountDownLatch(1);
+        keyed.execute("order-1", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+        // 排在同key队列中，而不是线程池的队列中
+        List<Future<Integer>> pending = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pending.add(keyed.submit("order-1", () -> 1));
+        }
+        Assert.assertEquals(0, keyed.getQueue().size());
+        // 其他key的第一个任务排在线程池的队列中
+        pending.add(keyed.submit("order-2", () -> 2));
+        Assert.assertEquals(1, keyed.getQueue().size());
+
+        ShutdownReport report = CustomThreadPoolManager.shutdownAll(200, TimeUnit.MILLISECONDS);
+        ShutdownReport.PoolReport poolReport = report.getPools().get("shutdown-keyed");
+        Assert.assertFalse(poolReport.isTerminated());
+        Assert.assertEquals(4, poolReport.getDroppedTasks().size());
+        for (Future<Integer> future : pending) {
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                Assert.fail("expect ExecutionException");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+
+    private static ThreadPoolConfigure newConf(String key) {
+        return new ThreadPoolConfigure(key, ThreadQueueType.LinkedBlockingQueue.getValue(),
+                1, 1, 0, 1000, null, 0, -1, null, null);
+    }
+}
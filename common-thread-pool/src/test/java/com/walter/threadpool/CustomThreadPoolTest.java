@@ -1,22 +1,42 @@
 package com.walter.threadpool;
 
+import com.walter.threadpool.core.AdaptiveSizingConfigure;
 import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.CustomThreadPoolManager;
+import com.walter.threadpool.core.HashedWheelTimer;
+import com.walter.threadpool.core.TaskDropHandler;
+import com.walter.threadpool.core.ThreadPoolConfigure;
 import com.walter.threadpool.core.ThreadPoolFactory;
+import com.walter.threadpool.core.ThreadPoolMetrics;
+import com.walter.threadpool.core.ThreadQueueType;
+import com.walter.threadpool.endpoint.ThreadPoolEndpoint;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.test.annotation.DirtiesContext;
 
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 /**
  * @author walter.tan
@@ -27,6 +47,42 @@ public class CustomThreadPoolTest extends BaseTests {
     @Autowired
     private ThreadPoolFactory threadPoolFactory;
 
+    @Autowired
+    private ThreadPoolEndpoint threadPoolEndpoint;
+
+    @Test
+    public void adaptiveSizing() throws InterruptedException {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("adaptive", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                1, 1, 0, 0, null, 0, -1, null, null);
+        AdaptiveSizingConfigure adaptiveSizing = new AdaptiveSizingConfigure(1, 16, 10L);
+        adaptiveSizing.setSampleIntervalMillis(200L);
+        conf.setAdaptiveSizing(adaptiveSizing);
+
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        try {
+            for (int i = 0; i < 400; i++) {
+                customThreadPool.execute(() -> {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            // 排队耗时远超目标值，核心线程数应被扩容
+            awaitCondition(() -> customThreadPool.getTaskPool().getCorePoolSize() > 1, 5000L);
+            int corePoolSize = customThreadPool.getTaskPool().getCorePoolSize();
+            log.info("corePoolSize after adaptive sizing: {}", corePoolSize);
+            Assert.assertTrue(corePoolSize > 1);
+            Assert.assertTrue(corePoolSize <= 16);
+            // 采样与调整在独立线程上执行，不占用共享时间轮的线程
+            Assert.assertTrue(Thread.getAllStackTraces().keySet().stream()
+                    .anyMatch(thread -> "AdaptivePoolSizer-sampler".equals(thread.getName())));
+        } finally {
+            customThreadPool.shutdownNow();
+        }
+    }
+
     @Test
     public void execute() {
         log.info("main thread start");
@@ -49,24 +105,602 @@ public class CustomThreadPoolTest extends BaseTests {
     }
 
     @Test(expected = RejectedExecutionException.class)
-    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
-    public void executeReject() {
+    public void executeReject() throws InterruptedException {
         log.info("main thread start");
 
-        CustomThreadPool customThreadPool = threadPoolFactory.getThreadPool(CustomThreadPool.DEFAULT_KEY);
-        customThreadPool.setPoolSize(1, 9);
-        for (int i = 0; i < 10; i++) {
+        // 使用独立的线程池，避免其他测试遗留在共享默认线程池中的空闲线程接收任务
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("reject", ThreadQueueType.SynchronousQueue.getValue(),
+                1, 9, 0, 0, null, 0, -1, null, null);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        try {
+            for (int i = 0; i < 10; i++) {
+                customThreadPool.execute(() -> {
+                    log.info("thread is running...");
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        log.info("thread is interrupted.");
+                        return;
+                    }
+                    log.info("thread is finish.");
+                });
+            }
+        } finally {
+            customThreadPool.shutdownNow();
+        }
+        log.info("main thread end");
+    }
+
+    @Test
+    public void threadPoolEndpoint() {
+        CustomThreadPool customThreadPool = threadPoolFactory.getDefaultThreadPool();
+
+        // 端点由自动配置注册，而不是测试配置
+        Map<String, Object> metrics = threadPoolEndpoint.threadPool(customThreadPool.getKey());
+        Assert.assertNotNull(metrics);
+        Assert.assertTrue(threadPoolEndpoint.threadPools().containsKey(customThreadPool.getKey()));
+    }
+
+    @Test
+    public void elasticQueue() throws Exception {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("elastic", ThreadQueueType.ElasticQueue.getValue(),
+                1, 4, 0, 0, null, 2, -1, null, null);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        CountDownLatch latch = new CountDownLatch(1);
+        Runnable blockingTask = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            // 线程数未达到上限时优先创建线程，而不是排队
+            for (int i = 0; i < 4; i++) {
+                customThreadPool.execute(blockingTask);
+            }
+            Assert.assertEquals(4, customThreadPool.getPoolSize());
+            Assert.assertEquals(0, customThreadPool.getQueue().size());
+
+            // 线程数达到上限后开始排队，队列满后才拒绝
+            customThreadPool.execute(blockingTask);
+            customThreadPool.execute(blockingTask);
+            Assert.assertEquals(2, customThreadPool.getQueue().size());
+            try {
+                customThreadPool.execute(blockingTask);
+                Assert.fail();
+            } catch (RejectedExecutionException e) {
+                Assert.assertEquals(1, customThreadPool.getMetrics().getRejectedCount());
+            }
+
+            latch.countDown();
+            awaitCondition(() -> customThreadPool.getMetrics().getCompletedCount() == 6, 5000L);
+            Assert.assertEquals(0, customThreadPool.getQueue().size());
+            Assert.assertEquals(6, customThreadPool.getMetrics().getCompletedCount());
+        } finally {
+            customThreadPool.shutdown();
+        }
+    }
+
+    @Test
+    public void elasticQueueCountsDequeuedTasks() throws Exception {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("elastic-dequeued", ThreadQueueType.ElasticQueue.getValue(),
+                1, 3, 60, 0, null, 2, -1, null, new ThreadPoolExecutor.DiscardOldestPolicy());
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        CountDownLatch latch = new CountDownLatch(1);
+        Runnable blockingTask = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        CountDownLatch latch2 = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 3; i++) {
+                customThreadPool.execute(blockingTask);
+            }
+            // 排队中的任务分别被DiscardOldestPolicy丢弃、purge清除、remove移除
+            customThreadPool.execute(() -> { });
+            Future<Integer> cancelled = customThreadPool.submit(() -> 1);
+            customThreadPool.execute(() -> { });
+            Assert.assertEquals(2, customThreadPool.getQueue().size());
+            Assert.assertTrue(cancelled.cancel(false));
+            customThreadPool.getTaskPool().purge();
+            Assert.assertEquals(1, customThreadPool.getQueue().size());
+            Runnable removed = () -> { };
+            customThreadPool.getTaskPool().execute(removed);
+            Assert.assertTrue(customThreadPool.getTaskPool().remove(removed));
+            Assert.assertEquals(1, customThreadPool.getQueue().size());
+
+            // 3个阻塞任务与唯一留在队列中的任务
+            latch.countDown();
+            awaitCondition(() -> customThreadPool.getTaskPool().getCompletedTaskCount() == 4, 5000L);
+            Assert.assertEquals(4, customThreadPool.getTaskPool().getCompletedTaskCount());
+            Assert.assertEquals(3, customThreadPool.getPoolSize());
+
+            // 计数已扣减：有空闲线程时直接排队，而不是继续创建线程（不超过队列容量，避免空闲线程取走任务前队列已满）
+            customThreadPool.setPoolSize(1, 6);
+            for (int i = 0; i < 2; i++) {
+                customThreadPool.execute(() -> {
+                    try {
+                        latch2.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            Assert.assertEquals(3, customThreadPool.getPoolSize());
+        } finally {
+            latch.countDown();
+            latch2.countDown();
+            customThreadPool.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedCarrier() throws Exception {
+        ThreadPoolConfigure heavyConf = new ThreadPoolConfigure("carrier-heavy", ThreadQueueType.SharedCarrier.getValue(),
+                0, 100, 0, 0, null, 1000, -1, null, null);
+        heavyConf.setWeight(3);
+        ThreadPoolConfigure lightConf = new ThreadPoolConfigure("carrier-light", ThreadQueueType.SharedCarrier.getValue(),
+                0, 100, 0, 0, null, 1000, -1, null, null);
+        lightConf.setWeight(1);
+        ThreadPoolConfigure cappedConf = new ThreadPoolConfigure("carrier-capped", ThreadQueueType.SharedCarrier.getValue(),
+                0, 1, 0, 0, null, 1000, -1, null, null);
+        CustomThreadPool heavy = new CustomThreadPool(heavyConf);
+        CustomThreadPool light = new CustomThreadPool(lightConf);
+        CustomThreadPool capped = new CustomThreadPool(cappedConf);
+        AtomicInteger heavyDone = new AtomicInteger();
+        AtomicInteger lightDone = new AtomicInteger();
+        AtomicInteger cappedRunning = new AtomicInteger();
+        AtomicInteger cappedMaxRunning = new AtomicInteger();
+        Queue<String> threadNames = new ConcurrentLinkedQueue<>();
+        try {
+            for (int i = 0; i < 400; i++) {
+                heavy.execute(() -> {
+                    sleepQuietly(1);
+                    heavyDone.incrementAndGet();
+                });
+                light.execute(() -> {
+                    sleepQuietly(1);
+                    lightDone.incrementAndGet();
+                });
+            }
+            for (int i = 0; i < 20; i++) {
+                capped.execute(() -> {
+                    cappedMaxRunning.accumulateAndGet(cappedRunning.incrementAndGet(), Math::max);
+                    threadNames.add(Thread.currentThread().getName());
+                    sleepQuietly(1);
+                    cappedRunning.decrementAndGet();
+                });
+            }
+            while (heavyDone.get() < 300) {
+                Thread.sleep(5);
+            }
+            // 两个逻辑线程池都积压时，按3:1的权重分配载体线程
+            int lightCompleted = lightDone.get();
+            log.info("sharedCarrier heavy: {}, light: {}", heavyDone.get(), lightCompleted);
+            Assert.assertTrue(lightCompleted >= 50 && lightCompleted <= 150);
+
+            heavy.shutdown();
+            light.shutdown();
+            capped.shutdown();
+            Assert.assertTrue(heavy.awaitTermination(10, TimeUnit.SECONDS));
+            Assert.assertTrue(light.awaitTermination(10, TimeUnit.SECONDS));
+            Assert.assertTrue(capped.awaitTermination(10, TimeUnit.SECONDS));
+            Assert.assertEquals(400, lightDone.get());
+            Assert.assertEquals(1, cappedMaxRunning.get());
+            Assert.assertEquals(20, threadNames.size());
+            for (String threadName : threadNames) {
+                Assert.assertTrue(threadName.startsWith("CustomThreadPool-carrier-"));
+            }
+        } finally {
+            heavy.shutdownNow();
+            light.shutdownNow();
+            capped.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharedCarrierShutdownNowIsolated() throws Exception {
+        ThreadPoolConfigure otherConf = new ThreadPoolConfigure("carrier-other", ThreadQueueType.SharedCarrier.getValue(),
+                0, 100, 0, 0, null, 100000, -1, null, null);
+        CustomThreadPool other = new CustomThreadPool(otherConf);
+        AtomicInteger otherDone = new AtomicInteger();
+        AtomicInteger otherInterrupted = new AtomicInteger();
+        try {
+            // 载体线程在两个逻辑线程池的任务之间切换时，关闭其中一个不能中断另一个的任务
+            for (int round = 0; round < 200; round++) {
+                CustomThreadPool stopping = new CustomThreadPool(new ThreadPoolConfigure("carrier-stopping", ThreadQueueType.SharedCarrier.getValue(),
+                        0, 100, 0, 0, null, 100000, -1, null, null));
+                for (int i = 0; i < 100; i++) {
+                    stopping.execute(() -> spin(1000L));
+                    other.execute(() -> {
+                        spin(1000L);
+                        if (Thread.currentThread().isInterrupted()) {
+                            otherInterrupted.incrementAndGet();
+                        }
+                        otherDone.incrementAndGet();
+                    });
+                }
+                stopping.shutdownNow();
+            }
+            other.shutdown();
+            Assert.assertTrue(other.awaitTermination(30, TimeUnit.SECONDS));
+            Assert.assertEquals(20000, otherDone.get());
+            Assert.assertEquals(0, otherInterrupted.get());
+        } finally {
+            other.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharedCarrierWeightOutOfRange() {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("carrier-overweight", ThreadQueueType.SharedCarrier.getValue(),
+                0, 1, 0, 0, null, 10, -1, null, null);
+        // 权重超过2^20时步幅为0，该线程池的pass不再增长，会独占载体线程
+        conf.setWeight((1 << 20) + 1);
+        try {
+            new CustomThreadPool(conf);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            log.info(e.getMessage());
+        }
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            // busy
+        }
+    }
+
+    /**
+     * 轮询直到条件成立或超时，代替固定时长的sleep，超时后由调用方的断言报告失败
+     */
+    private static void awaitCondition(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void virtualThread() throws Exception {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("vt", ThreadQueueType.VirtualThread.getValue(),
+                0, 200, 0, 0, null, 1000, -1, null, null);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        boolean virtualThreadSupported = Double.parseDouble(System.getProperty("java.specification.version")) >= 21;
+        // 不支持虚拟线程时退化为SynchronousQueue，任务数不能超过最大线程数
+        int taskCount = virtualThreadSupported ? 1000 : 200;
+        try {
+            long start = System.currentTimeMillis();
+            List<Future<String>> futureList = new ArrayList<>();
+            for (int i = 0; i < taskCount; i++) {
+                futureList.add(customThreadPool.submit(() -> {
+                    Thread.sleep(100);
+                    return Thread.currentThread().getName();
+                }));
+            }
+            for (Future<String> future : futureList) {
+                String threadName = future.get();
+                if (virtualThreadSupported) {
+                    Assert.assertTrue(threadName.startsWith("vt-virtual-"));
+                }
+            }
+            log.info("virtualThread: {}, cost: {}ms, pool: {}", virtualThreadSupported,
+                    System.currentTimeMillis() - start, customThreadPool.getTaskPool());
+
+            if (virtualThreadSupported) {
+                // 并发上限为200，1000个任务至少需要5轮
+                Assert.assertTrue(System.currentTimeMillis() - start >= 500);
+                Assert.assertTrue(customThreadPool.getTaskPool().getLargestPoolSize() <= 200);
+            }
+        } finally {
+            customThreadPool.shutdown();
+            Assert.assertTrue(customThreadPool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void executeByKey() throws Exception {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("keyOrdered", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                8, 8, 0, 0, null, 0, -1, null, null);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        final int keyCount = 50;
+        final int taskPerKey = 200;
+        Map<Integer, List<Integer>> executed = new ConcurrentHashMap<>();
+        AtomicInteger concurrentViolation = new AtomicInteger();
+        Map<Integer, AtomicInteger> running = new ConcurrentHashMap<>();
+        try {
+            List<Future<?>> futureList = new ArrayList<>();
+            for (int i = 0; i < taskPerKey; i++) {
+                for (int key = 0; key < keyCount; key++) {
+                    final int k = key;
+                    final int seq = i;
+                    futureList.add(customThreadPool.submit(k, () -> {
+                        if (running.computeIfAbsent(k, x -> new AtomicInteger()).incrementAndGet() > 1) {
+                            concurrentViolation.incrementAndGet();
+                        }
+                        executed.computeIfAbsent(k, x -> new ArrayList<>()).add(seq);
+                        running.get(k).decrementAndGet();
+                    }));
+                }
+            }
+            for (Future<?> future : futureList) {
+                future.get();
+            }
+
+            Assert.assertEquals(0, concurrentViolation.get());
+            for (int key = 0; key < keyCount; key++) {
+                List<Integer> seqList = executed.get(key);
+                Assert.assertEquals(taskPerKey, seqList.size());
+                for (int i = 0; i < taskPerKey; i++) {
+                    Assert.assertEquals(i, seqList.get(i).intValue());
+                }
+            }
+            // 所有key的任务执行完后，key的等待队列应被清理
+            awaitCondition(() -> customThreadPool.getOrderedKeyCount() == 0, 5000L);
+            Assert.assertEquals(0, customThreadPool.getOrderedKeyCount());
+        } finally {
+            customThreadPool.shutdown();
+        }
+    }
+
+    @Test
+    public void executeByKeyCallerRuns() throws Exception {
+        // 唯一的工作线程交接同key的下一个任务时总会被拒绝，由CallerRunsPolicy在工作线程中执行
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("keyOrderedCallerRuns", ThreadQueueType.SynchronousQueue.getValue(),
+                1, 1, 0, 0, null, 0, -1, null, new ThreadPoolExecutor.CallerRunsPolicy());
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        final int taskCount = 20000;
+        CountDownLatch latch = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(taskCount);
+        List<Integer> executed = new ArrayList<>();
+        try {
+            customThreadPool.execute("key", () -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int i = 0; i < taskCount; i++) {
+                final int seq = i;
+                customThreadPool.execute("key", () -> {
+                    executed.add(seq);
+                    finished.countDown();
+                });
+            }
+            latch.countDown();
+
+            // 在工作线程中循环执行，而不是每次交接递归一层导致栈溢出
+            Assert.assertTrue(finished.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < taskCount; i++) {
+                Assert.assertEquals(i, executed.get(i).intValue());
+            }
+            awaitCondition(() -> customThreadPool.getOrderedKeyCount() == 0, 5000L);
+            Assert.assertEquals(0, customThreadPool.getOrderedKeyCount());
+        } finally {
+            customThreadPool.shutdown();
+        }
+    }
+
+    @Test
+    public void executeByKeyRejected() throws Exception {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("keyOrderedRejected", ThreadQueueType.SynchronousQueue.getValue(),
+                1, 1, 0, 0, null, 0, -1, null, null);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        try {
             customThreadPool.execute(() -> {
-                log.info("thread is running...");
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            // key的第一个任务被拒绝：不执行，异常抛给调用方，key的状态被清理
+            try {
+                customThreadPool.execute("key", executed::incrementAndGet);
+                Assert.fail();
+            } catch (RejectedExecutionException e) {
+                Assert.assertEquals(0, executed.get());
+                Assert.assertEquals(0, customThreadPool.getOrderedKeyCount());
+            }
+
+            latch.countDown();
+            awaitCondition(() -> customThreadPool.getActiveCount() == 0, 5000L);
+            customThreadPool.submit("key", executed::incrementAndGet).get();
+            Assert.assertEquals(1, executed.get());
+        } finally {
+            customThreadPool.shutdown();
+        }
+    }
+
+    @Test
+    public void submitAsyncDiscarded() throws Exception {
+        ThreadPoolConfigure discardConf = new ThreadPoolConfigure("asyncDiscard", ThreadQueueType.SynchronousQueue.getValue(),
+                1, 1, 0, 0, null, 0, -1, null, new ThreadPoolExecutor.DiscardPolicy());
+        ThreadPoolConfigure discardOldestConf = new ThreadPoolConfigure("asyncDiscardOldest", ThreadQueueType.LinkedBlockingQueueWithQueueSize.getValue(),
+                1, 1, 0, 0, null, 1, -1, null, new ThreadPoolExecutor.DiscardOldestPolicy());
+        CustomThreadPool discardPool = new CustomThreadPool(discardConf);
+        CustomThreadPool discardOldestPool = new CustomThreadPool(discardOldestConf);
+        CountDownLatch latch = new CountDownLatch(1);
+        Runnable blockingTask = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            discardPool.execute(blockingTask);
+            discardOldestPool.execute(blockingTask);
+
+            // 未设置超时时间，被丢弃的任务也应异常完成，而不是永远不完成
+            CompletableFuture<Integer> discarded = discardPool.submitAsync(() -> 1, 0, TimeUnit.MILLISECONDS);
+            CompletableFuture<Integer> oldest = discardOldestPool.submitAsync(() -> 1, 0, TimeUnit.MILLISECONDS);
+            CompletableFuture<Integer> newest = discardOldestPool.submitAsync(() -> 2, 0, TimeUnit.MILLISECONDS);
+            for (CompletableFuture<Integer> future : new CompletableFuture[]{discarded, oldest}) {
+                try {
+                    future.get(1, TimeUnit.SECONDS);
+                    Assert.fail();
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+                }
+            }
+
+            latch.countDown();
+            Assert.assertEquals(Integer.valueOf(2), newest.get(1, TimeUnit.SECONDS));
+        } finally {
+            latch.countDown();
+            discardPool.shutdown();
+            discardOldestPool.shutdown();
+        }
+    }
+
+    @Test
+    public void submitAsync() throws Exception {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("async", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                4, 4, 0, 0, null, 0, -1, null, null);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        try {
+            // 回调默认在线程池中执行
+            CompletableFuture<String> result = customThreadPool.submitAsync(() -> 1)
+                    .thenApplyAsync(n -> n + ":" + Thread.currentThread().getName());
+            String value = result.get(5, TimeUnit.SECONDS);
+            Assert.assertTrue(value.startsWith("1:pool-"));
+
+            // 超时后以TimeoutException完成，并中断任务
+            CountDownLatch interrupted = new CountDownLatch(2);
+            CompletableFuture<Integer> timeoutFuture = customThreadPool.submitAsync(() -> {
                 try {
                     Thread.sleep(5000);
                 } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    interrupted.countDown();
+                }
+                return 1;
+            }, 100, TimeUnit.MILLISECONDS);
+            try {
+                timeoutFuture.get(2, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof TimeoutException);
+            }
+
+            // 取消时中断任务
+            CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<Void> cancelFuture = customThreadPool.submitAsync(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
                 }
-                log.info("thread is finish.");
             });
+            Assert.assertTrue(started.await(2, TimeUnit.SECONDS));
+            Assert.assertTrue(cancelFuture.cancel(false));
+            Assert.assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+            Assert.assertEquals(1, customThreadPool.getMetrics().getTimeoutCancelledCount());
+
+            // 超时完成时，非Async回调不在共享时间轮线程中执行
+            CountDownLatch never = new CountDownLatch(1);
+            String timeoutThread = customThreadPool.submitAsync(() -> {
+                never.await();
+                return "";
+            }, 500, TimeUnit.MILLISECONDS).handle((v, t) -> Thread.currentThread().getName()).get(2, TimeUnit.SECONDS);
+            Assert.assertEquals("CustomThreadPool-timeout-dispatcher", timeoutThread);
+        } finally {
+            customThreadPool.shutdown();
+        }
+    }
+
+    @Test
+    public void submitWithDeadline() throws Exception {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("deadline", ThreadQueueType.DeadlineQueue.getValue(),
+                1, 1, 0, 0, null, 100, -1, null, null);
+        Queue<TaskDropHandler.Reason> dropped = new ConcurrentLinkedQueue<>();
+        conf.setTaskDropHandler((task, reason, pool) -> dropped.add(reason));
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        Queue<Integer> executed = new ConcurrentLinkedQueue<>();
+        try {
+            // 阻塞唯一的工作线程，使后续任务都进入队列
+            CountDownLatch latch = new CountDownLatch(1);
+            customThreadPool.execute(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Future<?> noDeadline = customThreadPool.submit(() -> executed.add(0));
+            Future<Boolean> late = customThreadPool.submit(() -> executed.add(3), 3, TimeUnit.SECONDS);
+            Future<Boolean> early = customThreadPool.submit(() -> executed.add(1), 1, TimeUnit.SECONDS);
+            customThreadPool.execute(() -> executed.add(2), 2, TimeUnit.SECONDS);
+            Future<Boolean> expired = customThreadPool.submit(() -> executed.add(-1), 50, TimeUnit.MILLISECONDS);
+
+            Thread.sleep(200);
+            latch.countDown();
+            noDeadline.get();
+            early.get();
+            late.get();
+
+            // 按截止时间先后执行，未设置截止时间的任务排在最后，过期任务被丢弃
+            Assert.assertArrayEquals(new Integer[]{1, 2, 3, 0}, executed.toArray(new Integer[0]));
+            Assert.assertTrue(expired.isCancelled());
+            try {
+                expired.get();
+                Assert.fail();
+            } catch (CancellationException e) {
+                // expected
+            }
+            Assert.assertEquals(1, dropped.size());
+            Assert.assertEquals(TaskDropHandler.Reason.EXPIRED, dropped.peek());
+            Assert.assertEquals(1, customThreadPool.getMetrics().getDroppedCount());
+        } finally {
+            customThreadPool.shutdown();
         }
-        log.info("main thread end");
+    }
+
+    @Test
+    public void metrics() throws Exception {
+        CustomThreadPool customThreadPool = threadPoolFactory.getDefaultThreadPool();
+        ThreadPoolMetrics metrics = customThreadPool.getMetrics();
+        long submittedBefore = metrics.getSubmittedCount();
+        long completedBefore = metrics.getCompletedCount();
+
+        List<Future<Integer>> futureList = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futureList.add(customThreadPool.submit(() -> {
+                Thread.sleep(10);
+                return 1;
+            }));
+        }
+        for (Future<Integer> future : futureList) {
+            future.get();
+        }
+        // future.get()返回时，工作线程可能尚未记录执行耗时
+        awaitCondition(() -> metrics.getCompletedCount() >= completedBefore + 20 && metrics.getRunTimeP99Millis() >= 10D, 5000L);
+
+        Assert.assertEquals(submittedBefore + 20, metrics.getSubmittedCount());
+        Assert.assertTrue(metrics.getCompletedCount() >= completedBefore + 20);
+        Assert.assertTrue(metrics.getRunTimeP99Millis() >= 10D);
+
+        ObjectName objectName = new ObjectName(ThreadPoolMetrics.OBJECT_NAME_PREFIX + ObjectName.quote(customThreadPool.getKey()));
+        Object submitted = ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "SubmittedCount");
+        Assert.assertEquals(metrics.getSubmittedCount(), ((Long) submitted).longValue());
+        log.info("metrics: {}", metrics.toMap());
     }
 
     @Test
@@ -106,6 +740,30 @@ public class CustomThreadPoolTest extends BaseTests {
         log.info("main thread end");
     }
 
+    @Test
+    public void submitCallableReleaseTimeout() throws Exception {
+        HashedWheelTimer timer = CustomThreadPoolManager.getTimeoutTimer();
+        CustomThreadPool customThreadPool = threadPoolFactory.getDefaultThreadPool();
+        long pendingBefore = timer.pendingTimeouts();
+
+        List<Future<Integer>> futureList = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final int n = i;
+            futureList.add(customThreadPool.submit(() -> n));
+        }
+        for (Future<Integer> future : futureList) {
+            future.get();
+        }
+
+        // 任务完成后超时项应立即被取消，而不是保留到超时时间(10s)；
+        // FutureTask在唤醒get()的等待线程之后才回调done()，因此短暂轮询
+        long deadline = System.currentTimeMillis() + 1000L;
+        while (timer.pendingTimeouts() > pendingBefore && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertTrue(timer.pendingTimeouts() <= pendingBefore);
+    }
+
     @Test
     public void submitRunnableWithTimeout() throws InterruptedException {
         log.info("main thread start");
@@ -147,7 +805,7 @@ public class CustomThreadPoolTest extends BaseTests {
             log.info("runnable fail.", ex);
         });
 
-        Thread.sleep(5000);
+        awaitCondition(() -> !isOk.get(), 5000L);
 
         Assert.assertFalse(isOk.get());
     }
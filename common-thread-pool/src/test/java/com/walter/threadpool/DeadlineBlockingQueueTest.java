@@ -0,0 +1,52 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.DeadlineBlockingQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author walter.tan
+ */
+public class DeadlineBlockingQueueTest {
+
+    @Test
+    public void fifoWithoutDeadline() {
+        DeadlineBlockingQueue queue = new DeadlineBlockingQueue(3);
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Runnable task = () -> { };
+            tasks.add(task);
+            Assert.assertTrue(queue.offer(task));
+        }
+        Assert.assertFalse(queue.offer(() -> { }));
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertEquals(3, queue.size());
+
+        Assert.assertTrue(queue.remove(tasks.get(1)));
+        Assert.assertSame(tasks.get(0), queue.poll());
+        Assert.assertSame(tasks.get(2), queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void blockingWithTimeout() throws InterruptedException {
+        DeadlineBlockingQueue queue = new DeadlineBlockingQueue(1);
+        Assert.assertTrue(queue.offer(() -> { }, 10, TimeUnit.MILLISECONDS));
+        long start = System.nanoTime();
+        Assert.assertFalse(queue.offer(() -> { }, 50, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        Assert.assertNotNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        Assert.assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+
+        // 扩容后可以继续入队
+        queue.setCapacity(2);
+        Assert.assertTrue(queue.offer(() -> { }));
+        Assert.assertTrue(queue.offer(() -> { }));
+        Assert.assertFalse(queue.offer(() -> { }));
+    }
+}
@@ -0,0 +1,58 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author walter.tan
+ */
+public class HashedWheelTimerTest {
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void expire() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(3);
+        long start = System.nanoTime();
+        // 超过一轮的延迟需要经过多圈才会到期
+        timer.newTimeout(latch::countDown, 20, TimeUnit.MILLISECONDS);
+        timer.newTimeout(latch::countDown, 100, TimeUnit.MILLISECONDS);
+        timer.newTimeout(latch::countDown, 250, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250);
+        Assert.assertEquals(0L, timer.pendingTimeouts());
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        AtomicInteger counter = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(counter::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1L, timer.pendingTimeouts());
+
+        Assert.assertTrue(timeout.cancel());
+        Assert.assertFalse(timeout.cancel());
+        Assert.assertEquals(0L, timer.pendingTimeouts());
+
+        Thread.sleep(200);
+        Assert.assertEquals(0, counter.get());
+        Assert.assertFalse(timeout.isExpired());
+    }
+}
@@ -0,0 +1,180 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author walter.tan
+ */
+public class HedgedInvokeTest {
+
+    private CustomThreadPool customThreadPool;
+
+    @Before
+    public void setUp() {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("hedged", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                4, 4, 0, 0, null, 100, -1, null, null);
+        customThreadPool = new CustomThreadPool(conf);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        customThreadPool.shutdownNow();
+    }
+
+    @Test
+    public void backupWinsWhenPrimarySlow() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch primaryInterrupted = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+        String result = customThreadPool.invokeHedged(() -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(5000L);
+                } catch (InterruptedException e) {
+                    primaryInterrupted.countDown();
+                }
+                return "primary";
+            }
+            return "backup";
+        }, 50L, 3000L, TimeUnit.MILLISECONDS);
+
+        Assert.assertEquals("backup", result);
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000L);
+        // 备份请求成功后原请求被取消
+        Assert.assertTrue(primaryInterrupted.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(1L, customThreadPool.getMetrics().getHedgedCount());
+        Assert.assertEquals(1L, customThreadPool.getMetrics().getHedgeWonCount());
+    }
+
+    @Test
+    public void backupNotOnTimerThread() throws Exception {
+        // 单线程且CallerRunsPolicy：备份请求被拒绝后在提交它的线程中执行
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("hedged-caller-runs", ThreadQueueType.SynchronousQueue.getValue(),
+                1, 1, 0, 0, null, 0, -1, null, new ThreadPoolExecutor.CallerRunsPolicy());
+        CustomThreadPool callerRunsPool = new CustomThreadPool(conf);
+        try {
+            AtomicInteger calls = new AtomicInteger();
+            String result = callerRunsPool.invokeHedged(() -> {
+                if (calls.incrementAndGet() == 1) {
+                    Thread.sleep(5000L);
+                    return "primary";
+                }
+                return Thread.currentThread().getName();
+            }, 50L, 3000L, TimeUnit.MILLISECONDS);
+            Assert.assertEquals("HedgedCall-dispatcher", result);
+        } finally {
+            callerRunsPool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void noBackupWhenPrimaryFast() throws Exception {
+        Assert.assertEquals(Integer.valueOf(1), customThreadPool.invokeHedged(() -> 1, 500L, 3000L, TimeUnit.MILLISECONDS));
+        Thread.sleep(700L);
+        Assert.assertEquals(0L, customThreadPool.getMetrics().getHedgedCount());
+    }
+
+    @Test
+    public void backupAfterPrimaryFailed() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        String result = customThreadPool.invokeHedged(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("primary fail");
+            }
+            return "backup";
+        }, 1000L, 3000L, TimeUnit.MILLISECONDS);
+        Assert.assertEquals("backup", result);
+
+        try {
+            customThreadPool.invokeHedged(() -> {
+                throw new IllegalStateException("always fail");
+            }, 1000L, 3000L, TimeUnit.MILLISECONDS);
+            Assert.fail("expect ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void hedgeByPercentile() throws Exception {
+        // 样本不足时不发出备份请求
+        Assert.assertEquals(Integer.valueOf(0), customThreadPool.invokeHedged(() -> 0, 99D, 3000L, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < CustomThreadPool.HEDGE_MIN_SAMPLES; i++) {
+            customThreadPool.submit(() -> 0).get();
+        }
+        AtomicInteger calls = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        String result = customThreadPool.invokeHedged(() -> {
+            if (calls.incrementAndGet() == 1) {
+                Thread.sleep(5000L);
+                return "primary";
+            }
+            return "backup";
+        }, 99D, 3000L, TimeUnit.MILLISECONDS);
+        Assert.assertEquals("backup", result);
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000L);
+        Assert.assertEquals(1L, customThreadPool.getMetrics().getHedgeWonCount());
+    }
+
+    @Test
+    public void quorumReturnsFirstK() throws Exception {
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        Callable<String> fast = () -> "fast";
+        Callable<String> slow = () -> {
+            started.incrementAndGet();
+            try {
+                Thread.sleep(5000L);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+            }
+            return "slow";
+        };
+        long start = System.currentTimeMillis();
+        List<String> results = customThreadPool.invokeQuorum(Arrays.asList(slow, fast, slow, fast), 2, 3000L, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(Arrays.asList("fast", "fast"), results);
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000L);
+
+        // 其余任务被取消：已开始的被中断，未开始的不再执行
+        Thread.sleep(500L);
+        Assert.assertEquals(started.get(), interrupted.get());
+    }
+
+    @Test
+    public void quorumUnreachable() throws Exception {
+        Callable<String> fail = () -> {
+            throw new IllegalStateException("fail");
+        };
+        try {
+            customThreadPool.invokeQuorum(Arrays.asList(fail, () -> "ok", fail), 2, 3000L, TimeUnit.MILLISECONDS);
+            Assert.fail("expect ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void quorumTimeout() throws Exception {
+        Callable<String> slow = () -> {
+            Thread.sleep(5000L);
+            return "slow";
+        };
+        customThreadPool.invokeQuorum(Arrays.asList(() -> "fast", slow, slow), 2, 200L, TimeUnit.MILLISECONDS);
+    }
+}
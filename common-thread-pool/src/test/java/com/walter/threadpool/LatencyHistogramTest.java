@@ -0,0 +1,42 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.LatencyHistogram;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author walter.tan
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        Assert.assertEquals(100L, snapshot.getCount());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), snapshot.getMax());
+        // 分桶的相对误差不超过12.5%
+        Assert.assertEquals(50D, snapshot.getPercentileMillis(50D), 50D * 0.125);
+        Assert.assertEquals(99D, snapshot.getPercentileMillis(99D), 99D * 0.125);
+        Assert.assertEquals(50.5D, snapshot.getMean() / 1000000D, 0.001D);
+    }
+
+    @Test
+    public void minus() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000L);
+        LatencyHistogram.Snapshot earlier = histogram.snapshot();
+        histogram.record(1000000L);
+        histogram.record(1000000L);
+
+        LatencyHistogram.Snapshot delta = histogram.snapshot().minus(earlier);
+        Assert.assertEquals(2L, delta.getCount());
+        Assert.assertTrue(delta.getPercentile(1D) >= 1000000L * 7 / 8);
+    }
+}
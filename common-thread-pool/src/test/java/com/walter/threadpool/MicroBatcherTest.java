@@ -0,0 +1,133 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.MicroBatcher;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author walter.tan
+ */
+public class MicroBatcherTest {
+
+    private CustomThreadPool threadPool;
+
+    @Before
+    public void setUp() {
+        threadPool = new CustomThreadPool(new ThreadPoolConfigure("batch", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                2, 2, 0, 0, null, 0, -1, null, null));
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdown();
+    }
+
+    @Test
+    public void flushBySize() throws Exception {
+        Queue<List<Integer>> batches = new ConcurrentLinkedQueue<>();
+        MicroBatcher<Integer> batcher = threadPool.newBatcher(batch -> batches.add(new ArrayList<>(batch)), 10, 10, TimeUnit.SECONDS);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            if (i % 2 == 0) {
+                futures.add(batcher.addWithFuture(i));
+            } else {
+                batcher.add(i);
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        Thread.sleep(100);
+
+        Assert.assertEquals(10, batches.size());
+        int expected = 0;
+        List<List<Integer>> sorted = new ArrayList<>(batches);
+        sorted.sort((a, b) -> a.get(0) - b.get(0));
+        for (List<Integer> batch : sorted) {
+            Assert.assertEquals(10, batch.size());
+            for (Integer item : batch) {
+                Assert.assertEquals(expected++, item.intValue());
+            }
+        }
+        Assert.assertEquals(0, batcher.pendingCount());
+        // 100个元素只产生10个线程池任务
+        Assert.assertEquals(10, threadPool.getMetrics().getSubmittedCount());
+    }
+
+    @Test
+    public void flushByLinger() throws Exception {
+        Queue<List<Integer>> batches = new ConcurrentLinkedQueue<>();
+        MicroBatcher<Integer> batcher = threadPool.newBatcher(batch -> batches.add(new ArrayList<>(batch)), 100, 50, TimeUnit.MILLISECONDS);
+        batcher.add(1);
+        CompletableFuture<Void> future = batcher.addWithFuture(2);
+        Assert.assertEquals(2, batcher.pendingCount());
+        Assert.assertFalse(future.isDone());
+
+        future.get(2, TimeUnit.SECONDS);
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(2, batches.peek().size());
+    }
+
+    @Test
+    public void lingeredBatchRunsOnDispatcherUnderCallerRuns() throws Exception {
+        CustomThreadPool callerRunsPool = new CustomThreadPool(new ThreadPoolConfigure("batchCallerRuns", ThreadQueueType.SynchronousQueue.getValue(),
+                1, 1, 0, 0, null, 0, -1, null, new ThreadPoolExecutor.CallerRunsPolicy()));
+        CountDownLatch latch = new CountDownLatch(1);
+        Queue<String> consumerThreads = new ConcurrentLinkedQueue<>();
+        try {
+            // 唯一的工作线程被占用，到期批次由CallerRunsPolicy在提交线程中执行，而不是被丢弃
+            callerRunsPool.execute(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            MicroBatcher<Integer> batcher = callerRunsPool.newBatcher(batch -> consumerThreads.add(Thread.currentThread().getName()),
+                    100, 20, TimeUnit.MILLISECONDS);
+            CompletableFuture<Void> future = batcher.addWithFuture(1);
+            future.get(2, TimeUnit.SECONDS);
+            // 不在时间轮线程中执行
+            Assert.assertEquals(Arrays.asList("MicroBatcher-linger-dispatcher"), new ArrayList<>(consumerThreads));
+        } finally {
+            latch.countDown();
+            callerRunsPool.shutdown();
+        }
+    }
+
+    @Test
+    public void failAndClose() throws Exception {
+        MicroBatcher<Integer> batcher = threadPool.newBatcher(batch -> {
+            throw new IllegalStateException("batch fail");
+        }, 100, 10, TimeUnit.SECONDS);
+        CompletableFuture<Void> future = batcher.addWithFuture(1);
+        batcher.close();
+        try {
+            future.get(2, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        try {
+            batcher.add(2);
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+}
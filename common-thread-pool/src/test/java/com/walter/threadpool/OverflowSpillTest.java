@@ -0,0 +1,184 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.OverflowSpillConfigure;
+import com.walter.threadpool.core.PayloadHandler;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author walter.tan
+ */
+public class OverflowSpillTest {
+
+    private Path directory;
+    private CustomThreadPool customThreadPool;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("spill");
+    }
+
+    @After
+    public void tearDown() {
+        if (null != customThreadPool) {
+            customThreadPool.shutdown();
+        }
+        File[] files = directory.toFile().listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+
+    @Test
+    public void spillAndReadmitInOrder() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(30);
+        List<String> handled = new CopyOnWriteArrayList<>();
+        customThreadPool = newThreadPool((key, payload) -> {
+            release.await();
+            Assert.assertEquals(key, new String(payload, StandardCharsets.UTF_8));
+            handled.add(key);
+            finished.countDown();
+        }, 64, 16);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            String key = "task-" + i;
+            expected.add(key);
+            customThreadPool.executePayload(key, key.getBytes(StandardCharsets.UTF_8));
+        }
+        // 1个执行中，2个排队，其余溢出到多个段文件
+        Assert.assertEquals(27L, customThreadPool.getSpillBacklog());
+        Assert.assertEquals(27L, customThreadPool.getMetrics().getSpilledCount());
+        Assert.assertTrue(directory.toFile().listFiles().length > 1);
+
+        release.countDown();
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(expected, handled);
+        Assert.assertEquals(0L, customThreadPool.getSpillBacklog());
+        // 积压清空后只保留一个段文件复用
+        Assert.assertEquals(1, directory.toFile().listFiles().length);
+        Assert.assertEquals(1L, customThreadPool.getMetrics().getRejectedCount());
+    }
+
+    @Test
+    public void rejectWhenSpillFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        customThreadPool = newThreadPool((key, payload) -> release.await(), 64, 1);
+        try {
+            byte[] payload = new byte[20];
+            for (int i = 0; i < 5; i++) {
+                customThreadPool.executePayload("k" + i, payload);
+            }
+            Assert.assertEquals(2L, customThreadPool.getSpillBacklog());
+            try {
+                customThreadPool.executePayload("k5", payload);
+                Assert.fail("expect RejectedExecutionException");
+            } catch (RejectedExecutionException e) {
+                Assert.assertEquals(2L, customThreadPool.getSpillBacklog());
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void countReadmitRejectionSeparately() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(3);
+        customThreadPool = newThreadPool(ThreadQueueType.SynchronousQueue, (key, payload) -> {
+            release.await();
+            finished.countDown();
+        }, 64, 1);
+        for (int i = 0; i < 3; i++) {
+            customThreadPool.executePayload("k" + i, new byte[8]);
+        }
+        // 唯一的线程被占用，每次检查重新提交都会再次被拒绝
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (customThreadPool.getMetrics().getSpillReadmitRejectedCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        Assert.assertTrue(customThreadPool.getMetrics().getSpillReadmitRejectedCount() >= 2);
+        // 只有首次被拒绝计入被拒绝的任务数
+        Assert.assertEquals(1L, customThreadPool.getMetrics().getRejectedCount());
+
+        release.countDown();
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1L, customThreadPool.getMetrics().getRejectedCount());
+    }
+
+    @Test
+    public void readmitOffTimerThread() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(2);
+        List<String> handlerThreads = new CopyOnWriteArrayList<>();
+        Thread testThread = Thread.currentThread();
+        // 在测试线程中拒绝以触发溢出，重新提交时像CallerRunsPolicy一样在提交线程中执行
+        RejectedExecutionHandler rejectedHandler = (r, executor) -> {
+            if (Thread.currentThread() == testThread) {
+                throw new RejectedExecutionException("busy");
+            }
+            r.run();
+        };
+        customThreadPool = newThreadPool(ThreadQueueType.SynchronousQueue, rejectedHandler, (key, payload) -> {
+            if ("k0".equals(key)) {
+                release.await();
+                return;
+            }
+            handlerThreads.add(Thread.currentThread().getName());
+            finished.countDown();
+        }, 64, 1);
+        try {
+            for (int i = 0; i < 3; i++) {
+                customThreadPool.executePayload("k" + i, new byte[8]);
+            }
+            Assert.assertEquals(2L, customThreadPool.getSpillBacklog());
+            Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(Arrays.asList("OverflowSpill-readmitter", "OverflowSpill-readmitter"), handlerThreads);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private CustomThreadPool newThreadPool(PayloadHandler handler, int segmentSize, int maxSegments) {
+        return newThreadPool(ThreadQueueType.LinkedBlockingQueueWithQueueSize, handler, segmentSize, maxSegments);
+    }
+
+    private CustomThreadPool newThreadPool(ThreadQueueType type, PayloadHandler handler, int segmentSize, int maxSegments) {
+        return newThreadPool(type, null, handler, segmentSize, maxSegments);
+    }
+
+    private CustomThreadPool newThreadPool(ThreadQueueType type, RejectedExecutionHandler rejectedHandler, PayloadHandler handler,
+                                           int segmentSize, int maxSegments) {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("spill", type.getValue(),
+                1, 1, 0, 0, null, 2, -1, null, rejectedHandler);
+        OverflowSpillConfigure overflowSpill = new OverflowSpillConfigure(handler);
+        overflowSpill.setDirectory(directory.toString());
+        overflowSpill.setSegmentSize(segmentSize);
+        overflowSpill.setMaxSegments(maxSegments);
+        overflowSpill.setLowWatermark(0);
+        conf.setOverflowSpill(overflowSpill);
+        return new CustomThreadPool(conf);
+    }
+}
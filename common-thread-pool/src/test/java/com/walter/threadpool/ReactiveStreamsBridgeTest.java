@@ -0,0 +1,230 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.TaskResultPublisher;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadPoolSubscriber;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author walter.tan
+ */
+public class ReactiveStreamsBridgeTest {
+
+    private CustomThreadPool customThreadPool;
+
+    @Before
+    public void setUp() {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("reactive", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                2, 2, 0, 0, null, 100, -1, null, null);
+        customThreadPool = new CustomThreadPool(conf);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        customThreadPool.shutdownNow();
+    }
+
+    @Test
+    public void subscriberRequestsOnlyFreeSlots() throws Exception {
+        AtomicInteger processed = new AtomicInteger();
+        RangePublisher publisher = new RangePublisher(200, processed);
+        ThreadPoolSubscriber<Integer> subscriber = customThreadPool.newSubscriber(item -> {
+            try {
+                Thread.sleep(1L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            processed.incrementAndGet();
+        }, 4);
+        publisher.subscribe(subscriber);
+
+        subscriber.completion().get(10, TimeUnit.SECONDS);
+        Assert.assertEquals(200, processed.get());
+        Assert.assertTrue(publisher.maxOutstanding.get() <= 4);
+        Assert.assertEquals(0L, customThreadPool.getMetrics().getRejectedCount());
+    }
+
+    @Test
+    public void droppedItemsReleaseSlots() throws Exception {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("reactive-discard", ThreadQueueType.LinkedBlockingQueueWithQueueSize.getValue(),
+                1, 1, 0, 0, null, 1, -1, null, new ThreadPoolExecutor.DiscardPolicy());
+        CustomThreadPool discardPool = new CustomThreadPool(conf);
+        try {
+            AtomicInteger processed = new AtomicInteger();
+            RangePublisher publisher = new RangePublisher(50, processed);
+            ThreadPoolSubscriber<Integer> subscriber = discardPool.newSubscriber(item -> {
+                try {
+                    Thread.sleep(2L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                processed.incrementAndGet();
+            }, 4);
+            publisher.subscribe(subscriber);
+
+            // 被丢弃的元素同样释放名额，否则丢弃maxInFlight个之后上游不再生产，completion永远不会完成
+            subscriber.completion().get(10, TimeUnit.SECONDS);
+            Assert.assertTrue(discardPool.getMetrics().getRejectedCount() > 0);
+            Assert.assertEquals(50L, processed.get() + discardPool.getMetrics().getRejectedCount());
+        } finally {
+            discardPool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void publisherSubmitsOnDemand() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        Iterable<Callable<Integer>> tasks = () -> new Iterator<Callable<Integer>>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < 50;
+            }
+
+            @Override
+            public Callable<Integer> next() {
+                created.incrementAndGet();
+                final int n = next++;
+                return () -> n;
+            }
+        };
+        TaskResultPublisher<Integer> publisher = customThreadPool.publishResults(tasks, 8);
+        CollectingSubscriber<Integer> subscriber = new CollectingSubscriber<>(5);
+        publisher.subscribe(subscriber);
+
+        Assert.assertTrue(subscriber.received.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100L);
+        // 只请求了5个，不应提前创建更多任务
+        Assert.assertEquals(5, created.get());
+        Assert.assertEquals(5, subscriber.items.size());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        Assert.assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        Assert.assertNull(subscriber.error.get());
+        Assert.assertEquals(50, subscriber.items.size());
+        Assert.assertEquals(50, subscriber.items.stream().distinct().count());
+    }
+
+    @Test
+    public void publisherFailsOnTaskError() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        tasks.add(() -> 1);
+        tasks.add(() -> {
+            throw new IllegalStateException("fail");
+        });
+        TaskResultPublisher<Integer> publisher = customThreadPool.publishResults(tasks);
+        CollectingSubscriber<Integer> subscriber = new CollectingSubscriber<>(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+
+        Assert.assertTrue(subscriber.done.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(subscriber.error.get() instanceof IllegalStateException);
+
+        // 只允许一个订阅者
+        CollectingSubscriber<Integer> second = new CollectingSubscriber<>(1L);
+        publisher.subscribe(second);
+        Assert.assertTrue(second.error.get() instanceof IllegalStateException);
+    }
+
+    /**
+     * 按需求同步发出0到count-1的发布者，记录已发出未处理完的最大元素数
+     */
+    private static class RangePublisher implements Publisher<Integer> {
+        private final int count;
+        private final AtomicInteger processed;
+        private final AtomicInteger maxOutstanding = new AtomicInteger();
+
+        private RangePublisher(int count, AtomicInteger processed) {
+            this.count = count;
+            this.processed = processed;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super Integer> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                private long requested;
+                private int next;
+                private boolean emitting;
+
+                @Override
+                public synchronized void request(long n) {
+                    requested += n;
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (requested > 0 && next < count) {
+                        requested--;
+                        maxOutstanding.accumulateAndGet(next + 1 - processed.get(), Math::max);
+                        subscriber.onNext(next++);
+                    }
+                    emitting = false;
+                    if (next == count) {
+                        next++;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        }
+    }
+
+    private static class CollectingSubscriber<T> implements Subscriber<T> {
+        private final long initialRequest;
+        private final List<T> items = new CopyOnWriteArrayList<>();
+        private final CountDownLatch received;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private volatile Subscription subscription;
+
+        private CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+            this.received = new CountDownLatch((int) Math.min(initialRequest, 1000L));
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            this.subscription = s;
+            s.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+            received.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error.set(t);
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.AbstractBoundedBlockingQueue;
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.CustomThreadPoolManager;
+import com.walter.threadpool.core.ReloadableConfigureContext;
+import com.walter.threadpool.core.ResizableBlockingQueue;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author walter.tan
+ */
+public class ReloadableConfigureContextTest {
+
+    private ReloadableConfigureContext context = new ReloadableConfigureContext();
+
+    @After
+    public void tearDown() {
+        context.stopWatching();
+        CustomThreadPoolManager.shutdown("reloadable");
+    }
+
+    @Test
+    public void reloadAppliesToRunningPool() {
+        Properties properties = new Properties();
+        properties.setProperty("threadpool.reloadable.type", ThreadQueueType.ResizableQueue.getValue());
+        properties.setProperty("threadpool.reloadable.corePoolSize", "2");
+        properties.setProperty("threadpool.reloadable.maxPoolSize", "4");
+        properties.setProperty("threadpool.reloadable.initQueueSize", "10");
+        Assert.assertEquals(Arrays.asList("reloadable"), Arrays.asList(context.reload(properties).toArray()));
+
+        ThreadPoolConfigure conf = context.getThreadPoolConfig("reloadable");
+        CustomThreadPool pool = CustomThreadPoolManager.getThreadPool(conf);
+        Assert.assertTrue(pool.getQueue() instanceof ResizableBlockingQueue);
+
+        properties.setProperty("threadpool.reloadable.corePoolSize", "6");
+        properties.setProperty("threadpool.reloadable.maxPoolSize", "8");
+        properties.setProperty("threadpool.reloadable.keepAliveTime", "30");
+        properties.setProperty("threadpool.reloadable.initQueueSize", "50");
+        properties.setProperty("threadpool.reloadable.showThreadQueueSize", "abc");
+        Set<String> changed = context.reload(properties);
+
+        Assert.assertTrue(changed.contains("reloadable"));
+        Assert.assertEquals(6, pool.getTaskPool().getCorePoolSize());
+        Assert.assertEquals(8, pool.getTaskPool().getMaximumPoolSize());
+        Assert.assertEquals(30L, pool.getTaskPool().getKeepAliveTime(TimeUnit.SECONDS));
+        Assert.assertEquals(50, ((AbstractBoundedBlockingQueue<?>) pool.getQueue()).getCapacity());
+
+        // 无变化时不重复应用
+        Assert.assertTrue(context.reload(properties).isEmpty());
+    }
+
+    @Test
+    public void invalidReloadKeepsConfigure() {
+        Properties properties = new Properties();
+        properties.setProperty("threadpool.reloadable.type", ThreadQueueType.ResizableQueue.getValue());
+        properties.setProperty("threadpool.reloadable.corePoolSize", "2");
+        properties.setProperty("threadpool.reloadable.maxPoolSize", "4");
+        properties.setProperty("threadpool.reloadable.timeout", "1000");
+        properties.setProperty("threadpool.reloadable.initQueueSize", "10");
+        context.reload(properties);
+        ThreadPoolConfigure conf = context.getThreadPoolConfig("reloadable");
+        CustomThreadPool pool = CustomThreadPoolManager.getThreadPool(conf);
+
+        // corePoolSize大于maxPoolSize：整个线程池的配置都不生效
+        properties.setProperty("threadpool.reloadable.corePoolSize", "6");
+        properties.setProperty("threadpool.reloadable.timeout", "2000");
+        properties.setProperty("threadpool.reloadable-other.corePoolSize", "1");
+        properties.setProperty("threadpool.reloadable-other.maxPoolSize", "2");
+        Set<String> changed = context.reload(properties);
+
+        Assert.assertEquals(Arrays.asList("reloadable-other"), Arrays.asList(changed.toArray()));
+        conf = context.getThreadPoolConfig("reloadable");
+        Assert.assertEquals(2, conf.getCorePoolSize());
+        Assert.assertEquals(1000L, conf.getTimeout());
+        Assert.assertEquals(2, pool.getTaskPool().getCorePoolSize());
+        Assert.assertEquals(4, pool.getTaskPool().getMaximumPoolSize());
+
+        // 修正后正常应用
+        properties.setProperty("threadpool.reloadable.maxPoolSize", "8");
+        Assert.assertTrue(context.reload(properties).contains("reloadable"));
+        Assert.assertEquals(6, pool.getTaskPool().getCorePoolSize());
+        Assert.assertEquals(8, pool.getTaskPool().getMaximumPoolSize());
+        Assert.assertEquals(2000L, context.getThreadPoolConfig("reloadable").getTimeout());
+    }
+
+    @Test
+    public void watchReloadsModifiedFile() throws Exception {
+        Path file = Files.createTempFile("threadpool", ".yml");
+        try {
+            writeYaml(file, 2, 4, 1000L);
+            context.watch(file, 20L, TimeUnit.MILLISECONDS);
+            CustomThreadPool pool = CustomThreadPoolManager.getThreadPool(context.getThreadPoolConfig("reloadable"));
+            Assert.assertEquals(4, pool.getTaskPool().getMaximumPoolSize());
+
+            writeYaml(file, 3, 9, 2000L);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000L));
+
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (pool.getTaskPool().getMaximumPoolSize() != 9 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20L);
+            }
+            Assert.assertEquals(3, pool.getTaskPool().getCorePoolSize());
+            Assert.assertEquals(9, pool.getTaskPool().getMaximumPoolSize());
+            Assert.assertEquals(2000L, context.getThreadPoolConfig("reloadable").getTimeout());
+            // 文件IO与解析在独立线程上执行，不占用共享时间轮的线程
+            Assert.assertTrue(Thread.getAllStackTraces().keySet().stream()
+                    .anyMatch(thread -> "ReloadableConfigureContext-reloader".equals(thread.getName())));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void writeYaml(Path file, int core, int max, long timeout) throws Exception {
+        String yaml = "threadpool:\n"
+                + "  reloadable:\n"
+                + "    type: \"" + ThreadQueueType.ResizableQueue.getValue() + "\"\n"
+                + "    corePoolSize: " + core + "\n"
+                + "    maxPoolSize: " + max + "\n"
+                + "    timeout: " + timeout + "\n"
+                + "    initQueueSize: 10\n";
+        Files.write(file, yaml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,208 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.RingBufferBlockingQueue;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import com.walter.threadpool.core.WaitStrategy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author walter.tan
+ */
+public class RingBufferBlockingQueueTest {
+
+    @Test
+    public void offerAndPoll() {
+        RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(3, WaitStrategy.PARK);
+        // 容量向上取整为4
+        Assert.assertEquals(4, queue.remainingCapacity());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(queue.offer(i));
+        }
+        Assert.assertFalse(queue.offer(4));
+        Assert.assertEquals(4, queue.size());
+        Assert.assertEquals(Integer.valueOf(0), queue.peek());
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+
+        // 至少2个槽位
+        RingBufferBlockingQueue<Integer> single = new RingBufferBlockingQueue<>(1, WaitStrategy.PARK);
+        Assert.assertTrue(single.offer(0));
+        Assert.assertTrue(single.offer(1));
+        Assert.assertFalse(single.offer(2));
+    }
+
+    @Test
+    public void multiProducerMultiConsumer() throws Exception {
+        multiProducerMultiConsumer(256, WaitStrategy.YIELD);
+    }
+
+    @Test
+    public void multiProducerMultiConsumerWithPark() throws Exception {
+        // 容量很小，生产者与消费者都会频繁进入阻塞阶段，验证不会丢失唤醒
+        multiProducerMultiConsumer(4, WaitStrategy.PARK);
+    }
+
+    @Test
+    public void parkBlocksUntilSignalled() throws Exception {
+        RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(2, WaitStrategy.PARK);
+        AtomicReference<Integer> taken = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.set(queue.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        // 自旋阶段结束后应阻塞在条件上（WAITING），而不是定时休眠轮询（TIMED_WAITING）
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (consumer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(Thread.State.WAITING, consumer.getState());
+
+        Assert.assertTrue(queue.offer(1));
+        consumer.join(5000);
+        Assert.assertEquals(Integer.valueOf(1), taken.get());
+
+        // 队列满时限时入队阻塞到超时
+        Assert.assertTrue(queue.offer(2));
+        Assert.assertTrue(queue.offer(3));
+        long start = System.nanoTime();
+        Assert.assertFalse(queue.offer(4, 50, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void remove() {
+        RingBufferBlockingQueue<Integer> queue = new RingBufferBlockingQueue<>(4, WaitStrategy.PARK);
+        for (int i = 0; i < 4; i++) {
+            queue.offer(i);
+        }
+        Assert.assertTrue(queue.remove(Integer.valueOf(1)));
+        Assert.assertFalse(queue.remove(Integer.valueOf(1)));
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(Arrays.asList(0, 2, 3), new ArrayList<>(queue));
+        // 墓碑仍占用槽位，直到被消费者跳过
+        Assert.assertFalse(queue.offer(4));
+
+        Assert.assertEquals(Integer.valueOf(0), queue.poll());
+        Assert.assertEquals(Integer.valueOf(2), queue.poll());
+        Assert.assertEquals(1, queue.size());
+        Assert.assertTrue(queue.offer(4));
+        Assert.assertTrue(queue.offer(5));
+        Assert.assertEquals(Integer.valueOf(3), queue.poll());
+        Assert.assertEquals(Integer.valueOf(4), queue.poll());
+        Assert.assertEquals(Integer.valueOf(5), queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void executorRemove() throws Exception {
+        RingBufferBlockingQueue<Runnable> queue = new RingBufferBlockingQueue<>(8, WaitStrategy.PARK);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.SECONDS, queue);
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        try {
+            executor.execute(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            Runnable removed = executed::incrementAndGet;
+            executor.execute(removed);
+            executor.execute(executed::incrementAndGet);
+            Assert.assertTrue(executor.remove(removed));
+            latch.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, executed.get());
+    }
+
+    private void multiProducerMultiConsumer(int capacity, WaitStrategy waitStrategy) throws Exception {
+        final int producers = 4;
+        final int consumers = 4;
+        final int perProducer = 100000;
+        RingBufferBlockingQueue<Long> queue = new RingBufferBlockingQueue<>(capacity, waitStrategy);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        AtomicLong sum = new AtomicLong();
+        CountDownLatch consumed = new CountDownLatch(producers * perProducer);
+        try {
+            for (int p = 0; p < producers; p++) {
+                executor.execute(() -> {
+                    for (long i = 1; i <= perProducer; i++) {
+                        try {
+                            queue.put(i);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+            }
+            for (int c = 0; c < consumers; c++) {
+                executor.execute(() -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        try {
+                            Long value = queue.poll(10, TimeUnit.MILLISECONDS);
+                            if (value != null) {
+                                sum.addAndGet(value);
+                                consumed.countDown();
+                            }
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+            }
+            Assert.assertTrue(consumed.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals((long) producers * perProducer * (perProducer + 1) / 2, sum.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void threadPool() throws Exception {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("ringBuffer", ThreadQueueType.RingBufferQueue.getValue(),
+                4, 4, 0, 0, null, 1024, -1, null, null);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        try {
+            List<Future<Integer>> futureList = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                final int n = i;
+                futureList.add(customThreadPool.submit(() -> n));
+            }
+            long sum = 0;
+            for (Future<Integer> future : futureList) {
+                sum += future.get();
+            }
+            Assert.assertEquals(999L * 1000 / 2, sum);
+        } finally {
+            customThreadPool.shutdown();
+            Assert.assertTrue(customThreadPool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.StallDetectConfigure;
+import com.walter.threadpool.core.StallReport;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author walter.tan
+ */
+public class StallDetectorTest {
+
+    private static final Object LOCK = new Object();
+
+    @Test
+    public void reportBlockedWorkers() throws Exception {
+        List<StallReport> reports = new CopyOnWriteArrayList<>();
+        CountDownLatch reported = new CountDownLatch(1);
+        StallDetectConfigure stallDetect = new StallDetectConfigure(100L, 300L);
+        List<String> listenerThreads = new CopyOnWriteArrayList<>();
+        stallDetect.setListener((report, pool) -> {
+            listenerThreads.add(Thread.currentThread().getName());
+            reports.add(report);
+            reported.countDown();
+        });
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("stall", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                2, 2, 0, 0, null, 100, -1, null, null);
+        conf.setStallDetect(stallDetect);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        try {
+            synchronized (LOCK) {
+                for (int i = 0; i < 5; i++) {
+                    customThreadPool.execute(StallDetectorTest::blockOnLock);
+                }
+                Assert.assertTrue(reported.await(5, TimeUnit.SECONDS));
+            }
+            StallReport report = reports.get(0);
+            Assert.assertEquals("stall", report.getKey());
+            Assert.assertEquals(3, report.getQueueSize());
+            Assert.assertEquals(2, report.getSampledThreads());
+            Assert.assertEquals(Integer.valueOf(2), report.getThreadStates().get(Thread.State.BLOCKED));
+            Assert.assertTrue(report.getTopBlockingFrame().contains("blockOnLock"));
+            // 采样与回调不占用共享时间轮的线程
+            Assert.assertEquals("StallDetector-sampler", listenerThreads.get(0));
+
+            // 恢复后不再重复报告
+            customThreadPool.shutdown();
+            Assert.assertTrue(customThreadPool.awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, reports.size());
+        } finally {
+            customThreadPool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void noReportWhenProgressing() throws Exception {
+        List<StallReport> reports = new CopyOnWriteArrayList<>();
+        StallDetectConfigure stallDetect = new StallDetectConfigure(50L, 200L);
+        stallDetect.setListener((report, pool) -> reports.add(report));
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("progress", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                1, 1, 0, 0, null, 100, -1, null, null);
+        conf.setStallDetect(stallDetect);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        try {
+            for (int i = 0; i < 20; i++) {
+                customThreadPool.execute(() -> {
+                    try {
+                        Thread.sleep(50L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            customThreadPool.shutdown();
+            Assert.assertTrue(customThreadPool.awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertTrue(reports.isEmpty());
+        } finally {
+            customThreadPool.shutdownNow();
+        }
+    }
+
+    private static void blockOnLock() {
+        synchronized (LOCK) {
+            LOCK.notifyAll();
+        }
+    }
+}
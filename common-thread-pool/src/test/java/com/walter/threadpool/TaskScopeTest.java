@@ -0,0 +1,144 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.TaskScope;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author walter.tan
+ */
+public class TaskScopeTest {
+
+    private CustomThreadPool customThreadPool;
+
+    @Before
+    public void setUp() {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("scope", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                4, 4, 0, 1000L, null, 100, -1, null, null);
+        customThreadPool = new CustomThreadPool(conf);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        customThreadPool.shutdownNow();
+    }
+
+    @Test
+    public void joinAllResults() throws Exception {
+        try (TaskScope<Integer> scope = customThreadPool.openScope(TaskScope.Policy.SHUTDOWN_ON_FAILURE)) {
+            for (int i = 0; i < 5; i++) {
+                final int n = i;
+                scope.fork(() -> n * n);
+            }
+            scope.join();
+            Assert.assertEquals(Arrays.asList(0, 1, 4, 9, 16), scope.results());
+        }
+    }
+
+    @Test
+    public void cancelOthersOnFailure() throws Exception {
+        AtomicInteger interrupted = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        try (TaskScope<String> scope = customThreadPool.openScope(TaskScope.Policy.SHUTDOWN_ON_FAILURE)) {
+            Future<String> slow = scope.fork(() -> sleepUntilInterrupted(interrupted));
+            scope.fork(() -> {
+                throw new IllegalStateException("fail");
+            });
+            try {
+                scope.join();
+                Assert.fail("expect ExecutionException");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            Assert.assertTrue(slow.isCancelled());
+            try {
+                scope.results();
+                Assert.fail("expect IllegalStateException");
+            } catch (IllegalStateException e) {
+                // join失败后不能获取结果
+            }
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 900L);
+        waitFor(interrupted, 1);
+    }
+
+    @Test
+    public void firstSuccessWins() throws Exception {
+        AtomicInteger interrupted = new AtomicInteger();
+        try (TaskScope<String> scope = customThreadPool.openScope(TaskScope.Policy.SHUTDOWN_ON_SUCCESS)) {
+            scope.fork(() -> sleepUntilInterrupted(interrupted));
+            scope.fork(() -> {
+                throw new IllegalStateException("fail");
+            });
+            scope.fork(() -> "fast");
+            scope.join();
+            Assert.assertEquals("fast", scope.result());
+        }
+        waitFor(interrupted, 1);
+    }
+
+    @Test
+    public void deadlineFromPoolTimeout() throws Exception {
+        AtomicInteger interrupted = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        try (TaskScope<String> scope = customThreadPool.openScope(TaskScope.Policy.SHUTDOWN_ON_FAILURE)) {
+            scope.fork(() -> sleepUntilInterrupted(interrupted));
+            scope.fork(() -> "fast");
+            try {
+                scope.join();
+                Assert.fail("expect TimeoutException");
+            } catch (TimeoutException e) {
+                long elapsed = System.currentTimeMillis() - start;
+                Assert.assertTrue(elapsed >= 900L && elapsed < 3000L);
+            }
+            try {
+                scope.fork(() -> "late");
+                Assert.fail("expect IllegalStateException");
+            } catch (IllegalStateException e) {
+                // 超时后不能再fork
+            }
+        }
+        waitFor(interrupted, 1);
+    }
+
+    @Test
+    public void closeCancelsUnjoined() throws Exception {
+        AtomicInteger interrupted = new AtomicInteger();
+        Future<String> slow;
+        try (TaskScope<String> scope = customThreadPool.openScope(TaskScope.Policy.SHUTDOWN_ON_FAILURE, 0L, TimeUnit.MILLISECONDS)) {
+            slow = scope.fork(() -> sleepUntilInterrupted(interrupted));
+            Thread.sleep(100L);
+        }
+        Assert.assertTrue(slow.isCancelled());
+        waitFor(interrupted, 1);
+    }
+
+    private static String sleepUntilInterrupted(AtomicInteger interrupted) {
+        try {
+            Thread.sleep(10000L);
+        } catch (InterruptedException e) {
+            interrupted.incrementAndGet();
+        }
+        return "slow";
+    }
+
+    private static void waitFor(AtomicInteger counter, int expected) throws InterruptedException {
+        long waitUntil = System.currentTimeMillis() + 2000L;
+        while (counter.get() < expected && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(expected, counter.get());
+    }
+}
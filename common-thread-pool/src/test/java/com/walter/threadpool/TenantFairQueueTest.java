@@ -0,0 +1,187 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.LatencyHistogram;
+import com.walter.threadpool.core.TenantConfigure;
+import com.walter.threadpool.core.TenantFairBlockingQueue;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadPoolMetrics;
+import com.walter.threadpool.core.ThreadQueueType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author walter.tan
+ */
+public class TenantFairQueueTest {
+
+    @Test
+    public void noisyTenantDoesNotStarveOthers() throws Exception {
+        TenantConfigure tenant = new TenantConfigure();
+        tenant.getWeights().put("quiet", 2);
+        CustomThreadPool customThreadPool = newTenantPool(tenant, 100);
+        List<String> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            // 占住唯一的工作线程，让后续任务全部排队
+            customThreadPool.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int i = 0; i < 30; i++) {
+                customThreadPool.executeForTenant("noisy", () -> executed.add("noisy"));
+            }
+            Future<String> future = null;
+            for (int i = 0; i < 6; i++) {
+                future = customThreadPool.submitForTenant("quiet", () -> {
+                    executed.add("quiet");
+                    return "quiet";
+                });
+            }
+            blocker.countDown();
+            Assert.assertEquals("quiet", future.get(5, TimeUnit.SECONDS));
+
+            // 权重2:1，quiet的6个任务应在前9个出队任务之内执行完
+            Assert.assertEquals(6, executed.subList(0, 9).stream().filter("quiet"::equals).count());
+            Assert.assertTrue(customThreadPool.getMetrics().getTenantQueueWait().containsKey("quiet"));
+            Assert.assertTrue(customThreadPool.getMetrics().getTenantQueueWait().containsKey("noisy"));
+        } finally {
+            blocker.countDown();
+            customThreadPool.shutdown();
+            customThreadPool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void rejectOnlyTenantOverCap() throws Exception {
+        TenantConfigure tenant = new TenantConfigure();
+        tenant.getQueueCaps().put("noisy", 5);
+        // maxPoolSize大于corePoolSize时，超限的任务也不能借新建的线程插队
+        CustomThreadPool customThreadPool = newTenantPool(tenant, 100, 1, 4);
+        CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            customThreadPool.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            for (int i = 0; i < 5; i++) {
+                customThreadPool.executeForTenant("noisy", () -> { });
+            }
+            try {
+                customThreadPool.executeForTenant("noisy", () -> { });
+                Assert.fail("expect RejectedExecutionException");
+            } catch (RejectedExecutionException e) {
+                // 超过该租户的队列上限
+            }
+            Assert.assertEquals(1, customThreadPool.getPoolSize());
+            // 其他租户不受影响
+            Future<Integer> future = customThreadPool.submitForTenant("quiet", () -> 1);
+            blocker.countDown();
+            Assert.assertEquals(Integer.valueOf(1), future.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1L, customThreadPool.getMetrics().getRejectedCount());
+        } finally {
+            blocker.countDown();
+            customThreadPool.shutdown();
+            customThreadPool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void discardOldestOfTenantOverCap() throws Exception {
+        TenantConfigure tenant = new TenantConfigure();
+        tenant.getQueueCaps().put("noisy", 2);
+        CustomThreadPool customThreadPool = newTenantPool(tenant, 100, 1, 1, new ThreadPoolExecutor.DiscardOldestPolicy());
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<String> executed = new CopyOnWriteArrayList<>();
+        try {
+            customThreadPool.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            // 其他租户的任务排在队首
+            customThreadPool.executeForTenant("quiet", () -> executed.add("q0"));
+            customThreadPool.executeForTenant("quiet", () -> executed.add("q1"));
+            Future<Boolean> n0 = customThreadPool.submitForTenant("noisy", () -> executed.add("n0"));
+            customThreadPool.executeForTenant("noisy", () -> executed.add("n1"));
+            Future<Boolean> n2 = customThreadPool.submitForTenant("noisy", () -> executed.add("n2"));
+
+            // 只丢弃达到上限的租户自己最早的任务
+            try {
+                n0.get(1, TimeUnit.SECONDS);
+                Assert.fail("expect ExecutionException");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            blocker.countDown();
+            n2.get(5, TimeUnit.SECONDS);
+            customThreadPool.shutdown();
+            Assert.assertTrue(customThreadPool.awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertEquals(4, executed.size());
+            Assert.assertTrue(executed.containsAll(Arrays.asList("q0", "q1", "n1", "n2")));
+            Assert.assertEquals(1L, customThreadPool.getMetrics().getRejectedCount());
+        } finally {
+            blocker.countDown();
+            customThreadPool.shutdown();
+            customThreadPool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void evictEmptyTenants() throws Exception {
+        CustomThreadPool customThreadPool = newTenantPool(new TenantConfigure(), 100);
+        int tenantCount = ThreadPoolMetrics.MAX_TENANT_TAGS * 2;
+        CountDownLatch done = new CountDownLatch(tenantCount);
+        try {
+            for (int i = 0; i < tenantCount; i++) {
+                customThreadPool.executeForTenant("tenant-" + i, done::countDown);
+            }
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+
+            // 子队列为空的租户被移除，统计的租户数有上限
+            Assert.assertTrue(((TenantFairBlockingQueue) customThreadPool.getQueue()).tenantSizes().isEmpty());
+            Map<String, LatencyHistogram> tenantQueueWait = customThreadPool.getMetrics().getTenantQueueWait();
+            Assert.assertTrue(tenantQueueWait.size() <= ThreadPoolMetrics.MAX_TENANT_TAGS + 1);
+            Assert.assertTrue(tenantQueueWait.containsKey(ThreadPoolMetrics.OTHER_TENANT));
+        } finally {
+            customThreadPool.shutdown();
+            customThreadPool.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private CustomThreadPool newTenantPool(TenantConfigure tenant, int initQueueSize) {
+        return newTenantPool(tenant, initQueueSize, 1, 1);
+    }
+
+    private CustomThreadPool newTenantPool(TenantConfigure tenant, int initQueueSize, int corePoolSize, int maxPoolSize) {
+        return newTenantPool(tenant, initQueueSize, corePoolSize, maxPoolSize, null);
+    }
+
+    private CustomThreadPool newTenantPool(TenantConfigure tenant, int initQueueSize, int corePoolSize, int maxPoolSize,
+                                           RejectedExecutionHandler handler) {
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("tenant", ThreadQueueType.TenantFairQueue.getValue(),
+                corePoolSize, maxPoolSize, 0, 0, null, initQueueSize, -1, null, handler);
+        conf.setTenant(tenant);
+        return new CustomThreadPool(conf);
+    }
+}
@@ -0,0 +1,60 @@
+package com.walter.threadpool;
+
+import com.walter.threadpool.core.CustomThreadPool;
+import com.walter.threadpool.core.ThreadPoolConfigure;
+import com.walter.threadpool.core.ThreadQueueType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author walter.tan
+ */
+public class ThreadPoolEventsTest {
+
+    @Test
+    public void recordLifecycleEvents() throws Exception {
+        Assume.assumeTrue(FlightRecorder.isAvailable());
+        ThreadPoolConfigure conf = new ThreadPoolConfigure("jfr", ThreadQueueType.LinkedBlockingQueue.getValue(),
+                1, 1, 0, 0, null, 100, -1, null, null);
+        CustomThreadPool customThreadPool = new CustomThreadPool(conf);
+        Path file = File.createTempFile("thread-pool-events", ".jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable("com.walter.threadpool.TaskEnqueue");
+            recording.enable("com.walter.threadpool.TaskStart");
+            recording.enable("com.walter.threadpool.TaskEnd");
+            recording.start();
+            for (int i = 0; i < 5; i++) {
+                customThreadPool.submit(() -> 1).get();
+            }
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Map<String, Integer> counts = new TreeMap<>();
+            for (RecordedEvent event : events) {
+                if ("jfr".equals(event.getString("poolKey"))) {
+                    counts.merge(event.getEventType().getName(), 1, Integer::sum);
+                }
+            }
+            Assert.assertEquals(Integer.valueOf(5), counts.get("com.walter.threadpool.TaskEnqueue"));
+            Assert.assertEquals(Integer.valueOf(5), counts.get("com.walter.threadpool.TaskStart"));
+            Assert.assertEquals(Integer.valueOf(5), counts.get("com.walter.threadpool.TaskEnd"));
+        } finally {
+            customThreadPool.shutdown();
+            customThreadPool.awaitTermination(5, TimeUnit.SECONDS);
+            file.toFile().delete();
+        }
+    }
+}
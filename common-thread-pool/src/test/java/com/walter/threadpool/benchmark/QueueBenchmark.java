@@ -0,0 +1,89 @@
+package com.walter.threadpool.benchmark;
+
+import com.walter.threadpool.core.RingBufferBlockingQueue;
+import com.walter.threadpool.core.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多生产者多消费者场景下各队列类型的吞吐量对比，运行：main方法或 java -cp test-classes:... QueueBenchmark
+ * <p>
+ * 生产者与消费者均使用带超时的offer/poll，使SynchronousQueue也能完成交接，同时保证迭代结束时不会有线程永久阻塞。
+ * @author walter.tan
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    private static final Runnable TASK = () -> { };
+
+    @Param({"LinkedBlockingQueue", "LinkedBlockingQueueWithQueueSize", "SynchronousQueue", "RingBufferQueue-SPIN", "RingBufferQueue-PARK"})
+    private String queueType;
+
+    private BlockingQueue<Runnable> queue;
+
+    @Setup
+    public void setUp() {
+        switch (queueType) {
+            case "LinkedBlockingQueue":
+                queue = new LinkedBlockingQueue<>();
+                break;
+            case "LinkedBlockingQueueWithQueueSize":
+                queue = new LinkedBlockingQueue<>(1024);
+                break;
+            case "SynchronousQueue":
+                queue = new SynchronousQueue<>();
+                break;
+            case "RingBufferQueue-SPIN":
+                queue = new RingBufferBlockingQueue<>(1024, WaitStrategy.SPIN);
+                break;
+            case "RingBufferQueue-PARK":
+                queue = new RingBufferBlockingQueue<>(1024, WaitStrategy.PARK);
+                break;
+            default:
+                throw new IllegalArgumentException(queueType);
+        }
+    }
+
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(2)
+    public boolean offer() throws InterruptedException {
+        return queue.offer(TASK, 10, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(2)
+    public void poll(Blackhole blackhole) throws InterruptedException {
+        blackhole.consume(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QueueBenchmark.class.getSimpleName()).build()).run();
+    }
+}
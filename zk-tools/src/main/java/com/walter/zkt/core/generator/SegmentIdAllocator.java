@@ -0,0 +1,284 @@
+package com.walter.zkt.core.generator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.walter.zkt.core.ZktException;
+import com.walter.zkt.enums.DefaultTopicEnum;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.ZKPaths;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocator that hands out unique increasing ids of a business tag by leasing segments (Leaf-segment style).
+ *
+ * Like {@link com.walter.zkt.core.registry.SequentialUniqueIdRegistry}, the allocated maximum is kept as a counter
+ * in a persistent znode, but each lease takes a block of {@link #step} ids at once by a CAS setData with version,
+ * so that the ids are served locally from an AtomicLong without any zookeeper round-trip on the hot path.
+ * Once {@link #prefetchPercent} percent of the current segment is consumed, the next segment is leased
+ * asynchronously, so the switch to the next segment normally does not wait for zookeeper either.
+ *
+ * <p>
+ *  Ids are unique and increasing within an allocator, and unique among all allocators of the same business tag,
+ *  but not globally ordered. The rest of the leased segments are skipped after restart.
+ * </p>
+ *
+ * Zookeeper data structure:
+ * <pre>
+ * /{namespace}/{topic}/{bizTag} [persistent] => data: {next id that has not been leased}
+ * </pre>
+ *
+ * @author walter.tan
+ * @date 2026-10-18
+ */
+public class SegmentIdAllocator implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentIdAllocator.class);
+
+    private final CuratorFramework client;
+
+    private final String counterPath;
+    /**
+     * The number of ids leased each time
+     */
+    private final int step;
+    /**
+     * Lease the next segment asynchronously once this percent of the current segment is consumed
+     */
+    private final int prefetchPercent;
+    /**
+     * Max time to wait for the next segment when the current one is exhausted
+     */
+    private final long leaseTimeoutInMs;
+
+    private final ExecutorService prefetchExecutor;
+
+    private volatile Segment current;
+
+    private volatile CompletableFuture<Segment> next;
+
+    public static class Builder {
+        private final CuratorFramework client;
+        private final String bizTag;
+        private String topic = DefaultTopicEnum.SEGMENT_ID_ALLOCATOR.getNodeName();
+        private int step = 1000;
+        private int prefetchPercent = 10;
+        private long leaseTimeoutInMs = 3000L;
+
+        public Builder(CuratorFramework client, String bizTag){
+            this.client = client;
+            this.bizTag = bizTag;
+        }
+
+        public Builder topic(String topic){
+            this.topic = topic;
+            return this;
+        }
+
+        public Builder step(int step){
+            if(step <= 0){
+                throw new IllegalArgumentException("step must be positive");
+            }
+            this.step = step;
+            return this;
+        }
+
+        public Builder prefetchPercent(int prefetchPercent){
+            if(prefetchPercent <= 0 || prefetchPercent > 100){
+                throw new IllegalArgumentException("prefetchPercent must be in (0, 100]");
+            }
+            this.prefetchPercent = prefetchPercent;
+            return this;
+        }
+
+        public Builder leaseTimeoutInMs(long leaseTimeoutInMs){
+            if(leaseTimeoutInMs <= 0){
+                throw new IllegalArgumentException("leaseTimeoutInMs must be positive");
+            }
+            this.leaseTimeoutInMs = leaseTimeoutInMs;
+            return this;
+        }
+
+        public SegmentIdAllocator build() {
+            SegmentIdAllocator allocator = new SegmentIdAllocator(this);
+            try{
+                allocator.current = allocator.lease();
+            }catch (final Exception ex){
+                allocator.close();
+                throw new ZktException("Fail to lease the first segment.", ex);
+            }
+            return allocator;
+        }
+    }
+
+    public static Builder builder(CuratorFramework client, String bizTag){
+        return new Builder(client, bizTag);
+    }
+
+    protected SegmentIdAllocator(Builder builder) {
+        if(Objects.isNull(builder.client)){
+            throw new IllegalArgumentException("client is required");
+        }
+        if(Objects.isNull(builder.bizTag) || builder.bizTag.trim().isEmpty()){
+            throw new IllegalArgumentException("bizTag is required");
+        }
+        if(Objects.isNull(builder.topic) || builder.topic.trim().isEmpty()){
+            throw new IllegalArgumentException("topic is required");
+        }
+
+        this.client = builder.client;
+        this.counterPath = ZKPaths.makePath(builder.topic, builder.bizTag);
+        this.step = builder.step;
+        this.prefetchPercent = builder.prefetchPercent;
+        this.leaseTimeoutInMs = builder.leaseTimeoutInMs;
+        this.prefetchExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("SegmentIdAllocator-" + builder.bizTag + "-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    /**
+     * Get the next id, which is served locally unless the current segment is exhausted
+     * and the next segment is not ready yet
+     * @return id
+     */
+    public long nextId() {
+        while (true){
+            Segment segment = this.current;
+            long id = segment.cursor.getAndIncrement();
+            if(id < segment.end){
+                if(id == segment.prefetchAt){
+                    this.prefetch();
+                }
+                return id;
+            }
+            this.switchSegment(segment);
+        }
+    }
+
+    /**
+     * Get the number of ids left in the current segment
+     * @return remaining ids
+     */
+    public long getRemaining() {
+        Segment segment = this.current;
+        return Math.max(0L, segment.end - segment.cursor.get());
+    }
+
+    private void prefetch() {
+        synchronized (this){
+            if(Objects.nonNull(this.next)){
+                return;
+            }
+            this.next = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return this.lease();
+                } catch (Exception e) {
+                    logger.warn("prefetch segment fail: {}", this.counterPath, e);
+                    throw new ZktException(e);
+                }
+            }, this.prefetchExecutor);
+        }
+    }
+
+    private synchronized void switchSegment(Segment exhausted) {
+        if(this.current != exhausted){
+            // switched by other thread
+            return;
+        }
+        CompletableFuture<Segment> future = this.next;
+        this.next = null;
+        try{
+            Segment segment = null;
+            if(Objects.nonNull(future)){
+                try{
+                    segment = future.get(this.leaseTimeoutInMs, TimeUnit.MILLISECONDS);
+                }catch (ExecutionException | TimeoutException ex){
+                    logger.warn("prefetched segment is not available, lease again: {}", this.counterPath, ex);
+                }
+            }
+            this.current = Objects.nonNull(segment) ? segment : this.lease();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new ZktException("interrupted while waiting for the next segment", e);
+        }catch (ZktException e){
+            throw e;
+        }catch (Exception e){
+            throw new ZktException(String.format("cannot lease segment: %s", this.counterPath), e);
+        }
+    }
+
+    /**
+     * Lease the next segment by CAS setData with version on the counter node
+     * @return leased segment
+     * @throws Exception exception
+     */
+    private Segment lease() throws Exception {
+        while (true){
+            Stat stat = new Stat();
+            byte[] data;
+            try{
+                data = client.getData().storingStatIn(stat).forPath(this.counterPath);
+            }catch (KeeperException.NoNodeException ex){
+                try{
+                    client.create().creatingParentContainersIfNeeded().withMode(CreateMode.PERSISTENT)
+                            .forPath(this.counterPath, "0".getBytes(StandardCharsets.UTF_8));
+                }catch (KeeperException.NodeExistsException ignored){
+                    // created by other allocator
+                }
+                continue;
+            }
+
+            long start = Objects.isNull(data) || data.length == 0 ? 0L : Long.parseLong(new String(data, StandardCharsets.UTF_8));
+            long end = start + this.step;
+            try{
+                client.setData().withVersion(stat.getVersion())
+                        .forPath(this.counterPath, String.valueOf(end).getBytes(StandardCharsets.UTF_8));
+            }catch (KeeperException.BadVersionException ex){
+                // leased by other allocator, try again
+                continue;
+            }
+            logger.debug("segment leased: {} [{}, {})", this.counterPath, start, end);
+            return new Segment(start, end, start + Math.max(0L, this.step * (long) this.prefetchPercent / 100 - 1));
+        }
+    }
+
+    @Override
+    public void close() {
+        this.prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Leased ids [cursor, end)
+     */
+    private static class Segment {
+        private final AtomicLong cursor;
+        private final long end;
+        /**
+         * Prefetch the next segment when this id is handed out
+         */
+        private final long prefetchAt;
+
+        private Segment(long start, long end, long prefetchAt) {
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+        }
+    }
+}
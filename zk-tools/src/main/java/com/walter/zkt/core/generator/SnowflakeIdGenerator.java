@@ -0,0 +1,294 @@
+package com.walter.zkt.core.generator;
+
+import com.walter.zkt.core.ZktException;
+import com.walter.zkt.core.registry.AbstractIdRegistry;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free snowflake id generator whose workerId is the global id assigned by an {@link AbstractIdRegistry}.
+ *
+ * An id is composed of (from high to low) the timestamp in ms since {@link #epochMs}, the workerId and the sequence
+ * within the same ms, and the number of bits of each part is configurable. The last timestamp and sequence are
+ * packed into one AtomicLong and updated by CAS.
+ *
+ * <p>
+ *  Clock regression: the timestamp of ids never goes backwards. Once the sequence of the current ms is exhausted,
+ *  or the clock moves backwards, the generator borrows the following ms, as long as the borrowed timestamp is
+ *  at most {@link #maxBorrowMs} ahead of the clock. Beyond that it waits for the clock to catch up, and throws
+ *  ZktException if the clock does not catch up within the time it is behind plus another maxBorrowMs (at least
+ *  {@link #MIN_WAIT_GRACE_MS}), so that a maxBorrowMs of 0 still waits for the next ms once the sequence is exhausted.
+ * </p>
+ * <p>
+ *  Once the registry reports the global id as lost ({@link AbstractIdRegistry#isGlobalIdLost()}), e.g. it is
+ *  occupied by other instance found by the heartbeat, generation stops and ZktException is thrown.
+ * </p>
+ *
+ * @author walter.tan
+ * @date 2026-10-18
+ */
+public class SnowflakeIdGenerator {
+
+    private final long workerId;
+    /**
+     * Returns true if the workerId should not be used any more
+     */
+    private final BooleanSupplier workerLost;
+
+    private final long epochMs;
+
+    private final int workerBits;
+
+    private final int sequenceBits;
+
+    private final long maxTimestamp;
+
+    private final long sequenceMask;
+
+    private final long maxBorrowMs;
+
+    /**
+     * The minimum grace of waiting for the clock, covering the granularity of the clock and scheduling delays
+     */
+    private static final long MIN_WAIT_GRACE_MS = 10L;
+
+    private final LongSupplier clock;
+    /**
+     * (last timestamp since epoch << sequenceBits) | last sequence
+     */
+    private final AtomicLong state = new AtomicLong(-1L);
+
+    public static class Builder {
+        private final int workerId;
+        private final BooleanSupplier workerLost;
+        private long epochMs = 1577836800000L;
+        private int timestampBits = 41;
+        private int workerBits = 10;
+        private int sequenceBits = 12;
+        private long maxBorrowMs = 100L;
+        private LongSupplier clock = System::currentTimeMillis;
+
+        public Builder(int workerId, BooleanSupplier workerLost){
+            this.workerId = workerId;
+            this.workerLost = workerLost;
+        }
+
+        /**
+         * @param epochMs start time of the timestamp part, 2020-01-01T00:00:00Z by default
+         * @return builder
+         */
+        public Builder epochMs(long epochMs){
+            this.epochMs = epochMs;
+            return this;
+        }
+
+        /**
+         * Bit layout of the id, the sum of which must not exceed 63, 41/10/12 by default
+         * @param timestampBits bits of the timestamp part
+         * @param workerBits bits of the workerId part
+         * @param sequenceBits bits of the sequence part
+         * @return builder
+         */
+        public Builder bits(int timestampBits, int workerBits, int sequenceBits){
+            if(timestampBits <= 0 || workerBits < 0 || sequenceBits <= 0 || timestampBits + workerBits + sequenceBits > 63){
+                throw new IllegalArgumentException(String.format("invalid bit layout: %s/%s/%s", timestampBits, workerBits, sequenceBits));
+            }
+            this.timestampBits = timestampBits;
+            this.workerBits = workerBits;
+            this.sequenceBits = sequenceBits;
+            return this;
+        }
+
+        /**
+         * @param maxBorrowMs how far the timestamp of ids may run ahead of the clock, 100ms by default
+         * @return builder
+         */
+        public Builder maxBorrowMs(long maxBorrowMs){
+            if(maxBorrowMs < 0){
+                throw new IllegalArgumentException("maxBorrowMs must not be negative");
+            }
+            this.maxBorrowMs = maxBorrowMs;
+            return this;
+        }
+
+        /**
+         * @param clock clock in ms, System.currentTimeMillis by default
+         * @return builder
+         */
+        public Builder clock(LongSupplier clock){
+            this.clock = clock;
+            return this;
+        }
+
+        public SnowflakeIdGenerator build(){
+            return new SnowflakeIdGenerator(this);
+        }
+    }
+
+    /**
+     * Builder of the generator whose workerId is the global id of the registry
+     * @param registry registered registry
+     * @return builder
+     */
+    public static Builder builder(AbstractIdRegistry registry){
+        int workerId = registry.getGlobalId()
+                .orElseThrow(() -> new ZktException("globalId is not assigned by the registry"));
+        return new Builder(workerId, registry::isGlobalIdLost);
+    }
+
+    /**
+     * Builder of the generator with the given workerId, which is assigned in other ways
+     * @param workerId workerId
+     * @return builder
+     */
+    public static Builder builder(int workerId){
+        return new Builder(workerId, () -> false);
+    }
+
+    protected SnowflakeIdGenerator(Builder builder) {
+        if(Objects.isNull(builder.clock)){
+            throw new IllegalArgumentException("clock is required");
+        }
+        if(builder.workerId < 0 || builder.workerId >= (1L << builder.workerBits)){
+            throw new ZktException(String.format("workerId[%s] does not fit in %s bits", builder.workerId, builder.workerBits));
+        }
+
+        this.workerId = builder.workerId;
+        this.workerLost = builder.workerLost;
+        this.epochMs = builder.epochMs;
+        this.workerBits = builder.workerBits;
+        this.sequenceBits = builder.sequenceBits;
+        this.maxTimestamp = (1L << builder.timestampBits) - 1;
+        this.sequenceMask = (1L << builder.sequenceBits) - 1;
+        this.maxBorrowMs = builder.maxBorrowMs;
+        this.clock = builder.clock;
+    }
+
+    public long getWorkerId() {
+        return this.workerId;
+    }
+
+    /**
+     * Generate an id
+     * @return id
+     */
+    public long nextId() {
+        this.checkWorker();
+        long waitDeadlineNanos = -1L;
+        while (true){
+            long prev = this.state.get();
+            long now = this.now();
+            long timestamp = this.nextTimestamp(prev, now);
+            if(timestamp - now > this.maxBorrowMs){
+                waitDeadlineNanos = this.waitForClock(waitDeadlineNanos, timestamp - now);
+                continue;
+            }
+            long sequence = timestamp == (prev >> this.sequenceBits) ? (prev & this.sequenceMask) + 1 : 0L;
+            if(this.state.compareAndSet(prev, (timestamp << this.sequenceBits) | sequence)){
+                return this.compose(timestamp, sequence);
+            }
+        }
+    }
+
+    /**
+     * Generate n ids, each CAS reserves the rest of the sequence of one ms at most
+     * @param n number of ids
+     * @return increasing ids
+     */
+    public long[] nextIds(int n) {
+        if(n <= 0){
+            throw new IllegalArgumentException("n must be positive");
+        }
+        this.checkWorker();
+        long[] ids = new long[n];
+        int filled = 0;
+        long waitDeadlineNanos = -1L;
+        while (filled < n){
+            long prev = this.state.get();
+            long now = this.now();
+            long timestamp = this.nextTimestamp(prev, now);
+            if(timestamp - now > this.maxBorrowMs){
+                waitDeadlineNanos = this.waitForClock(waitDeadlineNanos, timestamp - now);
+                continue;
+            }
+            long first = timestamp == (prev >> this.sequenceBits) ? (prev & this.sequenceMask) + 1 : 0L;
+            long last = Math.min(this.sequenceMask, first + (n - filled) - 1);
+            if(this.state.compareAndSet(prev, (timestamp << this.sequenceBits) | last)){
+                for (long sequence = first; sequence <= last; sequence++) {
+                    ids[filled++] = this.compose(timestamp, sequence);
+                }
+                // each wait for the clock has its own deadline
+                waitDeadlineNanos = -1L;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Get the timestamp (ms since epoch) of the id
+     * @param id id
+     * @return timestamp in ms
+     */
+    public long getTimestampMs(long id) {
+        return (id >>> (this.workerBits + this.sequenceBits)) + this.epochMs;
+    }
+
+    private void checkWorker() {
+        if(this.workerLost.getAsBoolean()){
+            throw new ZktException(String.format("workerId[%s] is lost, stop generating ids", this.workerId));
+        }
+    }
+
+    private long now() {
+        long now = this.clock.getAsLong() - this.epochMs;
+        if(now < 0){
+            throw new ZktException(String.format("clock is before epoch: %s", this.epochMs));
+        }
+        return now;
+    }
+
+    /**
+     * The timestamp of the next id: the clock if it moves forward, otherwise the last timestamp
+     * if there is sequence left, otherwise the next ms of the last timestamp (borrowed)
+     */
+    private long nextTimestamp(long prev, long now) {
+        long lastTimestamp = prev >> this.sequenceBits;
+        long timestamp;
+        if(prev < 0 || now > lastTimestamp){
+            timestamp = now;
+        }else{
+            timestamp = (prev & this.sequenceMask) < this.sequenceMask ? lastTimestamp : lastTimestamp + 1;
+        }
+        if(timestamp > this.maxTimestamp){
+            throw new ZktException(String.format("timestamp is exhausted in %s bits", Long.bitCount(this.maxTimestamp)));
+        }
+        return timestamp;
+    }
+
+    /**
+     * Wait for the clock to catch up with the borrowed timestamp, for aheadMs + maxBorrowMs (at least
+     * {@link #MIN_WAIT_GRACE_MS}) since the waiting starts
+     * @param waitDeadlineNanos the time when the waiting times out, negative if not started
+     * @param aheadMs how far the timestamp is ahead of the clock
+     * @return the time when the waiting times out
+     */
+    private long waitForClock(long waitDeadlineNanos, long aheadMs) {
+        long nowNanos = System.nanoTime();
+        if(waitDeadlineNanos < 0){
+            waitDeadlineNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(aheadMs + Math.max(this.maxBorrowMs, MIN_WAIT_GRACE_MS));
+        }else if(nowNanos - waitDeadlineNanos > 0){
+            throw new ZktException(String.format("clock moved backwards, ids are %sms ahead of the clock", aheadMs));
+        }
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        return waitDeadlineNanos;
+    }
+
+    private long compose(long timestamp, long sequence) {
+        return (timestamp << (this.workerBits + this.sequenceBits)) | (this.workerId << this.sequenceBits) | sequence;
+    }
+}
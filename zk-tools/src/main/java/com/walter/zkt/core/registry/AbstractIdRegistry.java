@@ -39,6 +39,10 @@ public abstract class AbstractIdRegistry {
      * assigned global id
      */
     protected volatile int globalId = -1;
+    /**
+     * whether the assigned global id is lost, i.e. occupied by other instance or released by shutdown
+     */
+    protected volatile boolean globalIdLost;
     /**
      * session timeout from ZK server
      */
@@ -97,6 +101,15 @@ public abstract class AbstractIdRegistry {
         return this.globalId == -1 ? Optional.empty() : Optional.of(this.globalId);
     }
 
+    /**
+     * Whether the assigned global id is lost, i.e. occupied by other instance or released by shutdown,
+     * in which case the global id should not be used any more (e.g. as the workerId of snowflake)
+     * @return true if lost
+     */
+    public boolean isGlobalIdLost() {
+        return this.globalIdLost;
+    }
+
     /**
      * Get negotiated session timeout from ZK server
      *
@@ -159,6 +172,12 @@ public abstract class AbstractIdRegistry {
 
         this.registerBeforeProcess(ip);
 
+        if(this.isLockFreeRegistration()){
+            globalId = this.claimIdWithoutLock(ip);
+            logger.info("claimIdWithoutLock finish: [{}][{}]", ip, globalId);
+            return;
+        }
+
         logger.info("start to acquire nextAvailableIdLock: [{}]", ip);
         if(!this.nextAvailableIdLock.acquire(this.nextAvailableIdLockTimeoutInMs, TimeUnit.MILLISECONDS)){
             throw new ZktException(String.format("cannot acquire nextAvailableIdLock: [%s]", ip));
@@ -197,6 +216,23 @@ public abstract class AbstractIdRegistry {
      */
     public abstract int nextAvailableId() throws Exception;
 
+    /**
+     * Whether to register by {@link #claimIdWithoutLock(String)} instead of holding nextAvailableIdLock
+     * @return false by default
+     */
+    protected boolean isLockFreeRegistration() {
+        return false;
+    }
+
+    /**
+     * Claim an id and register ip and id nodes atomically without nextAvailableIdLock,
+     * which is used instead of {@link #nextAvailableId()} if {@link #isLockFreeRegistration()} returns true
+     * @param thisIp current instance ip
+     * @return claimed id
+     * @throws Exception exception
+     */
+    protected abstract int claimIdWithoutLock(String thisIp) throws Exception;
+
     /**
      * Register ip and id nodes in zookeeper
      * @param thisIp current instance ip
@@ -225,6 +261,7 @@ public abstract class AbstractIdRegistry {
      * @throws Exception exception
      */
     public void shutdown() throws Exception{
+        this.globalIdLost = true;
         this.unregister();
     }
 }
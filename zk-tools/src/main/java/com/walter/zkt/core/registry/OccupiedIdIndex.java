@@ -0,0 +1,116 @@
+package com.walter.zkt.core.registry;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.CuratorCache;
+import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.apache.curator.utils.ZKPaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local index of the occupied ids under the ids path, which is kept current by a {@link CuratorCache}.
+ *
+ * The occupied ids are kept in a bitset, so the minimum free id can be found in O(words) time without
+ * listing and sorting all children of the ids path. The index may lag behind zookeeper for a short while,
+ * so the caller should verify the candidate id remotely and mark it by {@link #markOccupied(int)} if it
+ * turns out to be occupied.
+ *
+ * The index is meant to be used during registration only and closed afterwards, since every open index
+ * watches the whole ids path.
+ *
+ * @author walter.tan
+ * @date 2026-10-18
+ */
+class OccupiedIdIndex implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OccupiedIdIndex.class);
+
+    private final String idsPath;
+
+    private final CuratorCache cache;
+
+    private final BitSet occupiedIds = new BitSet();
+
+    private final CountDownLatch initialized = new CountDownLatch(1);
+
+    private volatile boolean closed;
+
+    OccupiedIdIndex(final CuratorFramework client, final String idsPath) {
+        this.idsPath = idsPath;
+        this.cache = CuratorCache.build(client, idsPath);
+        this.cache.listenable().addListener(CuratorCacheListener.builder()
+                .forCreates(node -> this.update(node, true))
+                .forDeletes(node -> this.update(node, false))
+                .forInitialized(this.initialized::countDown)
+                .build());
+    }
+
+    /**
+     * Start the cache and wait until the initial data is loaded
+     * @param timeoutInMs max time to wait
+     * @return true if the index is ready, false if timeout
+     * @throws InterruptedException interrupted while waiting
+     */
+    boolean start(final long timeoutInMs) throws InterruptedException {
+        this.cache.start();
+        return this.initialized.await(timeoutInMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Whether the index is loaded and still kept current, i.e. not closed
+     * @return true if the index can be used
+     */
+    boolean isInitialized() {
+        return !this.closed && this.initialized.getCount() == 0;
+    }
+
+    /**
+     * Get the minimum id that is not occupied according to the local index
+     * @param fromId the id to start from (inclusive)
+     * @return minimum free id which is not less than fromId
+     */
+    synchronized int nextFreeId(final int fromId) {
+        return this.occupiedIds.nextClearBit(fromId);
+    }
+
+    /**
+     * Mark the id as occupied before the watch event arrives
+     * @param id occupied id
+     */
+    synchronized void markOccupied(final int id) {
+        this.occupiedIds.set(id);
+    }
+
+    private void update(final ChildData node, final boolean occupied) {
+        if (Objects.equals(this.idsPath, node.getPath())) {
+            return;
+        }
+        final String name = ZKPaths.getNodeFromPath(node.getPath());
+        int id = -1;
+        try {
+            id = Integer.parseInt(name);
+        } catch (NumberFormatException ignored) {
+            // handled below
+        }
+        if (id < 0) {
+            logger.warn("ignore unknown id node: {}", node.getPath());
+            return;
+        }
+        synchronized (this) {
+            this.occupiedIds.set(id, occupied);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.cache.close();
+    }
+}
@@ -7,6 +7,8 @@ import com.walter.zkt.core.ZktException;
 import com.walter.zkt.enums.DefaultTopicEnum;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.api.transaction.CuratorOp;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
 import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
@@ -35,6 +37,11 @@ import java.util.stream.Collectors;
  *  default. You may extend {@link SequentialReusableIdRegistry.HeartbeatHandler} to decide how the old instance to
  *  handle this conflict case.
  * </p>
+ * <p>
+ *  The global id is reported as lost ({@link #isGlobalIdLost()}) once it may be taken by another instance, i.e. the
+ *  heartbeat finds it occupied or fails to recreate the missing nodes, the session is lost, or the connection has been
+ *  suspended for longer than the session timeout. It is not recovered afterwards, so a new registry is required.
+ * </p>
  *
  * @author walter.tan
  * @date 2022/8/27
@@ -42,6 +49,14 @@ import java.util.stream.Collectors;
 public class SequentialReusableIdRegistry extends AbstractIdRegistry{
 
     private static final Logger logger = LoggerFactory.getLogger(SequentialReusableIdRegistry.class);
+    /**
+     * The maximum number of the lowest free ids to choose a candidate from in lock-free registration
+     */
+    private static final int MAX_PROBE_WINDOW = 1024;
+    /**
+     * Default max time (ms) to wait for the initial load of {@link OccupiedIdIndex}
+     */
+    private static final long DEFAULT_INDEX_INIT_TIMEOUT_IN_MS = 5 * 1000L;
     /**
      * heartbeat interval (ms), which will be adjusted automatically into the range
      * from 1/20(default) to 1/2 of negotiatedSessionTimeoutMs
@@ -59,6 +74,22 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
 
     private final ThreadPoolExecutor heartbeatExecutor;
 
+    private final OccupiedIdIndex occupiedIdIndex;
+    /**
+     * Max time (ms) to wait for the initial load of occupiedIdIndex before falling back to list the ids
+     */
+    private final long indexInitTimeoutInMs;
+    /**
+     * Whether to claim the id without nextAvailableIdLock
+     */
+    private final boolean lockFreeRegistration;
+
+    private final ConnectionStateListener connectionStateListener = (c, newState) -> this.onConnectionStateChanged(newState);
+    /**
+     * Task that marks the global id lost if the connection is still suspended after the session timeout, guarded by this
+     */
+    private ScheduledFuture<?> suspendedCheck;
+
     public static class Builder {
         private final CuratorFramework client;
         private final CuratorFramework lockClient;
@@ -68,6 +99,8 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
         private int expBackOffBound = 10;
         private HeartbeatHandler heartbeatHandler;
         private Supplier<String> customIpSupplier;
+        private boolean lockFreeRegistration;
+        private long indexInitTimeoutInMs = DEFAULT_INDEX_INIT_TIMEOUT_IN_MS;
 
         public Builder(CuratorFramework client, CuratorFramework lockClient){
             this.client = client;
@@ -112,6 +145,30 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
             return this;
         }
 
+        /**
+         * Claim the id optimistically without nextAvailableIdLock, see {@link SequentialReusableIdRegistry#claimIdWithoutLock(String)}.
+         * nextAvailableIdLockTimeoutInMs (or the negotiated session timeout if it is 0) is then used as the timeout of claiming.
+         * @param lockFreeRegistration true to enable, false by default
+         * @return builder
+         */
+        public Builder lockFreeRegistration(boolean lockFreeRegistration){
+            this.lockFreeRegistration = lockFreeRegistration;
+            return this;
+        }
+
+        /**
+         * Max time to wait for the initial load of the occupied ids index in registration, after which the ids
+         * are listed from zookeeper instead. It is independent of nextAvailableIdLockTimeoutInMs.
+         * @param indexInitTimeoutInMs timeout (ms), 5s by default
+         * @return builder
+         */
+        public Builder indexInitTimeoutInMs(long indexInitTimeoutInMs){
+            if(indexInitTimeoutInMs >= 0){
+                this.indexInitTimeoutInMs = indexInitTimeoutInMs;
+            }
+            return this;
+        }
+
         public SequentialReusableIdRegistry build() throws Exception {
             SequentialReusableIdRegistry registry = new SequentialReusableIdRegistry(this);
 
@@ -160,6 +217,10 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
                         .setDaemon(true)
                         .build()
         );
+
+        this.occupiedIdIndex = new OccupiedIdIndex(this.client, this.getIdsPath());
+        this.indexInitTimeoutInMs = builder.indexInitTimeoutInMs;
+        this.lockFreeRegistration = builder.lockFreeRegistration;
     }
 
     public int getHeartbeatIntervalInMs() {
@@ -187,6 +248,11 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
         client.create().idempotent().withMode(CreateMode.CONTAINER).forPath(this.getIdsPath(), null);
         client.create().idempotent().withMode(CreateMode.CONTAINER).forPath(this.getIpsPath(), null);
 
+        // load the occupied ids before acquiring nextAvailableIdLock
+        if(!this.occupiedIdIndex.start(this.indexInitTimeoutInMs)){
+            logger.warn("occupiedIdIndex is not initialized in {}ms, fall back to list the ids", this.indexInitTimeoutInMs);
+        }
+
         try{
             Integer id = this.getRemoteId(thisIp);
             throw new ZktException(String.format("Fail to register because ip[%s] exists with id[%s]", thisIp, id));
@@ -196,31 +262,136 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
     }
 
     /**
-     * Calculate next available id, which will try to reuse the minimum unregistered id first
+     * Register and then close the occupied ids index, which is only needed to choose the id in registration.
+     * Keeping its watches for the registry's lifetime would make every instance receive the events of all
+     * the others, i.e. O(N^2) watch events in the cluster.
+     * @throws Exception exception
+     */
+    @Override
+    protected void register() throws Exception {
+        try{
+            super.register();
+        }finally {
+            this.occupiedIdIndex.close();
+        }
+    }
+
+    /**
+     * Calculate next available id, which will try to reuse the minimum unregistered id first.
+     *
+     * The minimum free id is taken from the local {@link OccupiedIdIndex} in registration, and then verified
+     * in zookeeper in case that the watch event of a newly registered id has not arrived yet. Otherwise the
+     * ids are listed from zookeeper, see {@link #nextAvailableIdFromChildren()}.
      *
      * @return next available id
      * @throws Exception exception
      */
     @Override
     public int nextAvailableId() throws Exception {
+        if(!this.occupiedIdIndex.isInitialized()){
+            return this.nextAvailableIdFromChildren();
+        }
+
+        int nextId = this.occupiedIdIndex.nextFreeId(0);
+        while (Objects.nonNull(client.checkExists().forPath(ZKPaths.makePath(getIdsPath(), String.valueOf(nextId))))){
+            this.occupiedIdIndex.markOccupied(nextId);
+            nextId = this.occupiedIdIndex.nextFreeId(nextId + 1);
+        }
+        return nextId;
+    }
+
+    /**
+     * Calculate next available id by listing and sorting all the ids, which is used when the
+     * occupied ids index is not available
+     * @return next available id
+     * @throws Exception exception
+     */
+    protected int nextAvailableIdFromChildren() throws Exception {
         final List<Integer> existIds = client.getChildren().forPath(getIdsPath())
                 .stream().map(Integer::parseInt).sorted(Comparator.comparingInt(o -> o))
                 .collect(Collectors.toList());
 
-        final Optional<Integer> maxId = existIds.stream().max(Comparator.comparingInt(o -> o));
+        for (int i = 0; i < existIds.size(); i++) {
+            if(i < existIds.get(i)){
+                return i;
+            }
+        }
+
+        return existIds.size();
+    }
+
+    @Override
+    protected boolean isLockFreeRegistration() {
+        return this.lockFreeRegistration;
+    }
 
-        if(!maxId.isPresent()){
-            return 0;
+    /**
+     * Claim an id without nextAvailableIdLock by creating the ephemeral ips/{ip} and ids/{id} nodes in one transaction.
+     *
+     * The first candidate is the minimum free id. Once the candidate is taken by another instance (NodeExists),
+     * the next candidate is chosen randomly from the lowest free ids, and the window is doubled on every conflict,
+     * so that concurrent instances spread over different ids instead of queueing for the same one, and the number
+     * of round-trips grows only logarithmically with the number of instances registering at the same time.
+     *
+     * @param thisIp current instance ip
+     * @return claimed id
+     * @throws Exception exception
+     */
+    @Override
+    protected int claimIdWithoutLock(String thisIp) throws Exception {
+        if(!this.occupiedIdIndex.isInitialized()){
+            for (String id : client.getChildren().forPath(getIdsPath())) {
+                this.occupiedIdIndex.markOccupied(Integer.parseInt(id));
+            }
         }
 
-        int nextId = maxId.get() + 1;
-        for (int i = 0; i <= maxId.get(); i++) {
-            if(i < existIds.get(i)){
-                nextId = i;
+        // nextAvailableIdLockTimeoutInMs may be 0 (try once) for the lock, which is too short for several attempts
+        final long timeoutInMs = this.nextAvailableIdLockTimeoutInMs > 0 ? this.nextAvailableIdLockTimeoutInMs : this.negotiatedSessionTimeoutMs;
+        final long deadline = System.currentTimeMillis() + timeoutInMs;
+        int window = 1;
+        int attempts = 0;
+        while (true){
+            int candidate = this.randomFreeId(window);
+            attempts++;
+            try{
+                this.registerIpIdNodes(thisIp, candidate);
+                logger.info("claim id[{}] for ip[{}] after {} attempts", candidate, thisIp, attempts);
+                return candidate;
+            }catch (KeeperException.NodeExistsException ex){
+                if(this.isIpNodeConflict(ex, thisIp)){
+                    throw new ZktException(String.format("Fail to register because ip[%s] exists", thisIp), ex);
+                }
+                this.occupiedIdIndex.markOccupied(candidate);
+                window = Math.min(window * 2, MAX_PROBE_WINDOW);
+            }
+            if(System.currentTimeMillis() > deadline){
+                throw new ZktException(String.format("cannot claim id in %sms after %s attempts: [%s]",
+                        timeoutInMs, attempts, thisIp));
             }
         }
+    }
 
-        return nextId;
+    /**
+     * Choose a free id randomly from the lowest window free ids
+     */
+    private int randomFreeId(int window){
+        int skip = ThreadLocalRandom.current().nextInt(window);
+        int id = this.occupiedIdIndex.nextFreeId(0);
+        for (int i = 0; i < skip; i++) {
+            id = this.occupiedIdIndex.nextFreeId(id + 1);
+        }
+        return id;
+    }
+
+    /**
+     * Whether the transaction of {@link #registerIpIdNodes(String, int)} fails on the ip node (the first operation)
+     */
+    private boolean isIpNodeConflict(KeeperException.NodeExistsException ex, String thisIp) throws Exception {
+        List<OpResult> results = ex.getResults();
+        if(Objects.nonNull(results) && !results.isEmpty() && results.get(0) instanceof OpResult.ErrorResult){
+            return ((OpResult.ErrorResult) results.get(0)).getErr() == KeeperException.Code.NODEEXISTS.intValue();
+        }
+        return Objects.nonNull(client.checkExists().forPath(ZKPaths.makePath(getIpsPath(), thisIp)));
     }
 
     @Override
@@ -246,8 +417,13 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
 
     @Override
     public void shutdown() throws Exception {
+        this.client.getConnectionStateListenable().removeListener(this.connectionStateListener);
         this.cancelHeartbeat();
-        super.shutdown();
+        try{
+            super.shutdown();
+        }finally {
+            this.occupiedIdIndex.close();
+        }
     }
 
     @Override
@@ -340,6 +516,7 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
     }
 
     protected void startHeartbeat(){
+        this.client.getConnectionStateListenable().addListener(this.connectionStateListener);
         this.scheduler.schedule(
                 new TimedSupervisorTask(
                         this.scheduler,
@@ -352,12 +529,61 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
                 this.heartbeatIntervalInMs, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * The ephemeral nodes are deleted by the server once the session expires, after which another instance
+     * may take the global id, so it is marked lost when the session is lost, or the connection has been
+     * suspended for the session timeout without reconnecting.
+     */
+    private synchronized void onConnectionStateChanged(ConnectionState newState){
+        switch (newState){
+            case SUSPENDED:
+                if(Objects.isNull(this.suspendedCheck)){
+                    try{
+                        this.suspendedCheck = this.scheduler.schedule(
+                                () -> this.markGlobalIdLost("connection is suspended longer than the session timeout"),
+                                this.negotiatedSessionTimeoutMs, TimeUnit.MILLISECONDS);
+                    }catch (RejectedExecutionException ignored){
+                        // shutdown
+                    }
+                }
+                break;
+            case LOST:
+                this.markGlobalIdLost("session is lost");
+                this.cancelSuspendedCheck();
+                break;
+            case CONNECTED:
+            case RECONNECTED:
+                this.cancelSuspendedCheck();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void cancelSuspendedCheck(){
+        if(Objects.nonNull(this.suspendedCheck)){
+            this.suspendedCheck.cancel(false);
+            this.suspendedCheck = null;
+        }
+    }
+
+    private void markGlobalIdLost(String reason){
+        if(!this.globalIdLost){
+            this.globalIdLost = true;
+            logger.warn("globalId[{}] is lost: {}", this.globalId, reason);
+        }
+    }
+
     /**
      * The heartbeat task that triggered in the given intervals.
      */
     private class HeartbeatThread implements Runnable {
         @Override
         public void run() {
+            if(SequentialReusableIdRegistry.this.globalIdLost){
+                // lost is terminal, never recreate the nodes of a globalId which may be taken by others
+                return;
+            }
             logger.info("instance[{}] is sending heartbeat...", SequentialReusableIdRegistry.this.globalId);
 
             String thisIp = SequentialReusableIdRegistry.this.getThisIp();
@@ -386,6 +612,7 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
                     logger.info("idNode and ipNode are missing， try to recreate...[{}][{}]", thisIp, globalId);
                     SequentialReusableIdRegistry.this.registerIpIdNodes(thisIp, globalId);
                 } catch (Exception e) {
+                    SequentialReusableIdRegistry.this.markGlobalIdLost("cannot recreate idNode and ipNode");
                     throw new ZktException(String.format("cannot recreate idNode and ipNode. id:%s, ip:%s", globalId, thisIp), e);
                 }
             }else if(idNodeResult instanceof OpResult.ErrorResult){
@@ -396,16 +623,21 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
                     client.create().creatingParentContainersIfNeeded().withMode(CreateMode.EPHEMERAL)
                             .forPath(idNodePath, thisIp.getBytes(StandardCharsets.UTF_8));
                 } catch (Exception e) {
+                    SequentialReusableIdRegistry.this.markGlobalIdLost("cannot recreate idNode");
                     throw new ZktException(String.format("cannot recreate idNode. id:%s, ip:%s", globalId, thisIp), e);
                 }
             }else if(ipNodeResult instanceof OpResult.ErrorResult){
-                // case: ipNode is missing
+                // case: ipNode is missing, the idNode may have been taken by other ip after session expiration
+                if(this.checkRemoteIp(idNodeResult)){
+                    return;
+                }
                 try {
                     String ipNodePath = ZKPaths.makePath(SequentialReusableIdRegistry.this.getIpsPath(), thisIp);
                     logger.info("ipNode[{}] is missing, try to recreate with id[{}]...", ipNodePath, globalId);
                     client.create().creatingParentContainersIfNeeded().withMode(CreateMode.EPHEMERAL)
                             .forPath(ipNodePath, String.valueOf(globalId).getBytes(StandardCharsets.UTF_8));
                 } catch (Exception e) {
+                    SequentialReusableIdRegistry.this.markGlobalIdLost("cannot recreate ipNode");
                     throw new ZktException(String.format("cannot recreate ipNode. id:%s, ip:%s", globalId, thisIp), e);
                 }
             }else {
@@ -415,13 +647,18 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
             }
         }
 
-        private void checkRemoteIp(OpResult idNodeResult){
+        /**
+         * @return true if the global id is occupied by other ip
+         */
+        private boolean checkRemoteIp(OpResult idNodeResult){
             String remoteIp = new String(((OpResult.GetDataResult) idNodeResult).getData(), StandardCharsets.UTF_8);
 
             if(!Objects.equals(remoteIp, SequentialReusableIdRegistry.this.getThisIp())){
                 // remoteId is occupied by other ip
                 this.handleGlobalIdOccupied(SequentialReusableIdRegistry.this.globalId, remoteIp);
+                return true;
             }
+            return false;
         }
 
         private void checkRemoteId(OpResult ipNodeResult){
@@ -440,6 +677,7 @@ public class SequentialReusableIdRegistry extends AbstractIdRegistry{
         }
 
         private void handleGlobalIdOccupied(int globalId, String ipOccupying){
+            SequentialReusableIdRegistry.this.markGlobalIdLost("occupied by " + ipOccupying);
             if(heartbeatHandler.isHandlingOnGlobalIdOccupied.compareAndSet(false, true)){
                 SequentialReusableIdRegistry.this.heartbeatHandler.onGlobalIdOccupied(globalId, ipOccupying);
                 heartbeatHandler.isHandlingOnGlobalIdOccupied.set(false);
@@ -6,6 +6,7 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +37,10 @@ public class SequentialUniqueIdRegistry extends AbstractIdRegistry {
     private final int maxGlobalId;
 
     private final IntUnaryOperator globalIdExhaustedHandler;
+    /**
+     * Whether to claim the id without nextAvailableIdLock
+     */
+    private final boolean lockFreeRegistration;
 
     public static class Builder {
         private final CuratorFramework client;
@@ -47,6 +52,7 @@ public class SequentialUniqueIdRegistry extends AbstractIdRegistry {
             throw new ZktException(String.format("globalId is exhausted: %s", maxGlobalIdThreshold));
         };
         private Supplier<String> customIpSupplier;
+        private boolean lockFreeRegistration;
 
         public Builder(CuratorFramework client, CuratorFramework lockClient){
             this.client = client;
@@ -84,6 +90,17 @@ public class SequentialUniqueIdRegistry extends AbstractIdRegistry {
             return this;
         }
 
+        /**
+         * Claim the id optimistically without nextAvailableIdLock, see {@link SequentialUniqueIdRegistry#claimIdWithoutLock(String)}.
+         * nextAvailableIdLockTimeoutInMs (or the negotiated session timeout if it is 0) is then used as the timeout of claiming.
+         * @param lockFreeRegistration true to enable, false by default
+         * @return builder
+         */
+        public SequentialUniqueIdRegistry.Builder lockFreeRegistration(boolean lockFreeRegistration){
+            this.lockFreeRegistration = lockFreeRegistration;
+            return this;
+        }
+
         public SequentialUniqueIdRegistry build() throws Exception {
             SequentialUniqueIdRegistry registry = new SequentialUniqueIdRegistry(this);
             try{
@@ -104,6 +121,7 @@ public class SequentialUniqueIdRegistry extends AbstractIdRegistry {
                 builder.nextAvailableIdLockTimeoutInMs, builder.customIpSupplier);
         this.maxGlobalId = builder.maxGlobalId;
         this.globalIdExhaustedHandler = builder.globalIdExhaustedHandler;
+        this.lockFreeRegistration = builder.lockFreeRegistration;
     }
 
     @Override
@@ -122,7 +140,53 @@ public class SequentialUniqueIdRegistry extends AbstractIdRegistry {
 
     @Override
     public int nextAvailableId() throws Exception {
-        final byte[] currMaxIdByteArray = client.getData().forPath(getTopicPath());
+        return this.nextId(client.getData().forPath(getTopicPath()));
+    }
+
+    @Override
+    protected boolean isLockFreeRegistration() {
+        return this.lockFreeRegistration;
+    }
+
+    /**
+     * Claim the next id without nextAvailableIdLock by compare-and-set on the version of the topic node,
+     * which stores the current maximum id. Once another instance updates the topic node first (BadVersion),
+     * the next id is calculated again from the new maximum id.
+     *
+     * @param thisIp current instance ip
+     * @return claimed id
+     * @throws Exception exception
+     */
+    @Override
+    protected int claimIdWithoutLock(String thisIp) throws Exception {
+        final long timeoutInMs = this.nextAvailableIdLockTimeoutInMs > 0 ? this.nextAvailableIdLockTimeoutInMs : this.negotiatedSessionTimeoutMs;
+        final long deadline = System.currentTimeMillis() + timeoutInMs;
+        int attempts = 0;
+        while (true){
+            final Stat stat = new Stat();
+            final int nextId = this.nextId(client.getData().storingStatIn(stat).forPath(getTopicPath()));
+            attempts++;
+            try{
+                client.setData().withVersion(stat.getVersion())
+                        .forPath(getTopicPath(), String.valueOf(nextId).getBytes(StandardCharsets.UTF_8));
+                logger.info("claim id[{}] for ip[{}] after {} attempts", nextId, thisIp, attempts);
+                return nextId;
+            }catch (KeeperException.BadVersionException ex){
+                logger.debug("id[{}] is claimed by another instance, retry: [{}]", nextId, thisIp);
+            }
+            if(System.currentTimeMillis() > deadline){
+                throw new ZktException(String.format("cannot claim id in %sms after %s attempts: [%s]",
+                        timeoutInMs, attempts, thisIp));
+            }
+        }
+    }
+
+    /**
+     * Calculate the id next to the current maximum id
+     * @param currMaxIdByteArray data of the topic node
+     * @return next id
+     */
+    private int nextId(byte[] currMaxIdByteArray) {
         if(Objects.isNull(currMaxIdByteArray)){
             return 0;
         }
@@ -1,5 +1,6 @@
 package com.walter.zkt.enums;
 
+import com.walter.zkt.core.generator.SegmentIdAllocator;
 import com.walter.zkt.core.registry.SequentialReusableIdRegistry;
 import com.walter.zkt.core.registry.SequentialUniqueIdRegistry;
 
@@ -18,7 +19,11 @@ public enum DefaultTopicEnum {
     /**
      * Topic name for function {@link SequentialUniqueIdRegistry}
      */
-    SEQUENTIAL_UNIQUE_ID_REGISTRY("default_sequential_unique_id_registry");
+    SEQUENTIAL_UNIQUE_ID_REGISTRY("default_sequential_unique_id_registry"),
+    /**
+     * Topic name for function {@link SegmentIdAllocator}
+     */
+    SEGMENT_ID_ALLOCATOR("default_segment_id_allocator");
 
     /**
      * node name in zookeeper
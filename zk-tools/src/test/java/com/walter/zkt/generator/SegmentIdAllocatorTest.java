@@ -0,0 +1,66 @@
+package com.walter.zkt.generator;
+
+import com.google.common.collect.Lists;
+import com.walter.zkt.AbstractTest;
+import com.walter.zkt.core.generator.SegmentIdAllocator;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.CloseableUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author walter.tan
+ * @date 2026-10-18
+ */
+public class SegmentIdAllocatorTest extends AbstractTest {
+
+    @Test
+    public void segmentIdAllocator() throws Exception {
+        final String bizTag = "order_" + UUID.randomUUID();
+        final int threadCount = 4;
+        final int idsPerThread = 20000;
+
+        // 1. Simulate 2 instances allocating ids of the same bizTag concurrently
+        final CuratorFramework otherClient = newCuratorFramework();
+        final List<SegmentIdAllocator> allocatorList = Lists.newArrayList(
+                SegmentIdAllocator.builder(client, bizTag).step(1000).prefetchPercent(20).build(),
+                SegmentIdAllocator.builder(otherClient, bizTag).step(1000).prefetchPercent(20).build());
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final List<CompletableFuture<Void>> completableFutures = Lists.newArrayList();
+        final ExecutorService executor = Executors.newCachedThreadPool();
+
+        long start = System.currentTimeMillis();
+        for (SegmentIdAllocator allocator : allocatorList) {
+            for (int i = 0; i < threadCount; i++) {
+                completableFutures.add(CompletableFuture.runAsync(() -> {
+                    long last = -1L;
+                    for (int j = 0; j < idsPerThread; j++) {
+                        long id = allocator.nextId();
+                        // ids are increasing within an allocator
+                        Assert.assertTrue(id > last);
+                        last = id;
+                        ids.add(id);
+                    }
+                }, executor));
+            }
+        }
+        CompletableFuture.allOf(completableFutures.toArray(new CompletableFuture[0])).join();
+        print(String.format("%s ids allocated in %sms", ids.size(), System.currentTimeMillis() - start));
+
+        // 2. Verify all ids are unique
+        Assert.assertEquals(allocatorList.size() * threadCount * idsPerThread, ids.size());
+
+        // 3. Close all components
+        allocatorList.forEach(SegmentIdAllocator::close);
+        CloseableUtils.closeQuietly(otherClient);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,182 @@
+package com.walter.zkt.generator;
+
+import com.google.common.collect.Lists;
+import com.walter.zkt.AbstractTest;
+import com.walter.zkt.core.ZktException;
+import com.walter.zkt.core.generator.SnowflakeIdGenerator;
+import com.walter.zkt.core.registry.SequentialReusableIdRegistry;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.utils.CloseableUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author walter.tan
+ * @date 2026-10-18
+ */
+public class SnowflakeIdGeneratorTest extends AbstractTest {
+
+    private static final long EPOCH_MS = 1577836800000L;
+
+    @Test
+    public void uniqueAndIncreasing() {
+        final int threadCount = 8;
+        final int idsPerThread = 100000;
+        final SnowflakeIdGenerator generator = SnowflakeIdGenerator.builder(5).build();
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final List<CompletableFuture<Void>> completableFutures = Lists.newArrayList();
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < threadCount; i++) {
+            completableFutures.add(CompletableFuture.runAsync(() -> {
+                long last = -1L;
+                for (int j = 0; j < idsPerThread; j++) {
+                    long id = generator.nextId();
+                    Assert.assertTrue(id > last);
+                    last = id;
+                    ids.add(id);
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(completableFutures.toArray(new CompletableFuture[0])).join();
+        print(String.format("%s ids generated in %sms", ids.size(), System.currentTimeMillis() - start));
+
+        Assert.assertEquals(threadCount * idsPerThread, ids.size());
+        executor.shutdown();
+    }
+
+    @Test
+    public void bitLayout() {
+        final AtomicLong clock = new AtomicLong(EPOCH_MS + 1000L);
+        final SnowflakeIdGenerator generator = SnowflakeIdGenerator.builder(3)
+                .bits(40, 5, 8)
+                .clock(clock::get)
+                .build();
+
+        long first = generator.nextId();
+        long second = generator.nextId();
+        Assert.assertEquals((1000L << 13) | (3L << 8), first);
+        Assert.assertEquals(first + 1, second);
+        Assert.assertEquals(EPOCH_MS + 1000L, generator.getTimestampMs(second));
+        Assert.assertEquals(3L, generator.getWorkerId());
+
+        try {
+            SnowflakeIdGenerator.builder(32).bits(40, 5, 8).build();
+            Assert.fail("expect ZktException");
+        } catch (ZktException e) {
+            print(e.getMessage());
+        }
+    }
+
+    @Test
+    public void borrowWhenSequenceExhausted() {
+        final AtomicLong clock = new AtomicLong(EPOCH_MS + 1000L);
+        final SnowflakeIdGenerator generator = SnowflakeIdGenerator.builder(1)
+                .bits(41, 10, 2)
+                .maxBorrowMs(2)
+                .clock(clock::get)
+                .build();
+
+        // 4 ids per ms, the following 2ms can be borrowed while the clock stands still
+        long[] ids = generator.nextIds(12);
+        for (int i = 1; i < ids.length; i++) {
+            Assert.assertTrue(ids[i] > ids[i - 1]);
+        }
+        Assert.assertEquals(EPOCH_MS + 1002L, generator.getTimestampMs(ids[11]));
+
+        try {
+            generator.nextId();
+            Assert.fail("expect ZktException");
+        } catch (ZktException e) {
+            print(e.getMessage());
+        }
+
+        // the clock catches up
+        clock.addAndGet(1L);
+        Assert.assertEquals(EPOCH_MS + 1003L, generator.getTimestampMs(generator.nextId()));
+    }
+
+    @Test
+    public void waitForNextMsWithoutBorrowing() {
+        final SnowflakeIdGenerator generator = SnowflakeIdGenerator.builder(1)
+                .bits(41, 10, 2)
+                .maxBorrowMs(0)
+                .build();
+
+        // 4 ids per ms, nothing can be borrowed, so exhausting the sequence waits for the next ms of the clock
+        long[] ids = generator.nextIds(400);
+        for (int i = 1; i < ids.length; i++) {
+            Assert.assertTrue(ids[i] > ids[i - 1]);
+        }
+        long last = ids[ids.length - 1];
+        for (int i = 0; i < 400; i++) {
+            long id = generator.nextId();
+            Assert.assertTrue(id > last);
+            last = id;
+        }
+    }
+
+    @Test
+    public void clockMovedBackwards() {
+        final AtomicLong clock = new AtomicLong(EPOCH_MS + 1000L);
+        final SnowflakeIdGenerator generator = SnowflakeIdGenerator.builder(1)
+                .maxBorrowMs(10)
+                .clock(clock::get)
+                .build();
+
+        long last = generator.nextId();
+
+        // moved backwards within maxBorrowMs, ids keep increasing on the last timestamp
+        clock.addAndGet(-5L);
+        long id = generator.nextId();
+        Assert.assertTrue(id > last);
+        Assert.assertEquals(EPOCH_MS + 1000L, generator.getTimestampMs(id));
+
+        // moved backwards beyond maxBorrowMs
+        clock.addAndGet(-100L);
+        try {
+            generator.nextId();
+            Assert.fail("expect ZktException");
+        } catch (ZktException e) {
+            print(e.getMessage());
+        }
+
+        // the clock recovers
+        clock.set(EPOCH_MS + 1001L);
+        Assert.assertTrue(generator.nextId() > id);
+    }
+
+    @Test
+    public void stopWhenGlobalIdLost() throws Exception {
+        final CuratorFramework testClient = newCuratorFramework();
+        final SequentialReusableIdRegistry registry = SequentialReusableIdRegistry
+                .builder(testClient, testClient)
+                .topic("dummy_snowflake_id_registry")
+                .heartbeatIntervalInMs(10 * 1000)
+                .customIpSupplier(() -> UUID.randomUUID().toString())
+                .build();
+
+        final SnowflakeIdGenerator generator = SnowflakeIdGenerator.builder(registry).build();
+        Assert.assertEquals((long) registry.getGlobalId().get(), generator.getWorkerId());
+        Assert.assertTrue(generator.nextId() > 0);
+
+        registry.shutdown();
+        try {
+            generator.nextId();
+            Assert.fail("expect ZktException");
+        } catch (ZktException e) {
+            print(e.getMessage());
+        }
+        CloseableUtils.closeQuietly(testClient);
+    }
+}
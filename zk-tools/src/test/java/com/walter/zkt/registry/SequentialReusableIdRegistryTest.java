@@ -2,10 +2,15 @@ package com.walter.zkt.registry;
 
 import com.google.common.collect.Lists;
 import com.walter.zkt.AbstractTest;
+import com.walter.zkt.core.ZktException;
+import com.walter.zkt.core.generator.SnowflakeIdGenerator;
 import com.walter.zkt.core.registry.AbstractIdRegistry;
 import com.walter.zkt.core.registry.SequentialReusableIdRegistry;
 import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.utils.ZKPaths;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -107,4 +112,185 @@ public class SequentialReusableIdRegistryTest extends AbstractTest {
         }
         clientList.forEach(CloseableUtils::closeQuietly);
     }
+
+    @Test
+    public void reuseMinimumFreeId() throws Exception {
+        final List<CuratorFramework> clientList = Lists.newArrayList();
+        final List<SequentialReusableIdRegistry> registryList = Lists.newArrayList();
+
+        // 1. Register 4 instances one by one, they should get 0, 1, 2, 3
+        for (int i = 0; i < 4; i++) {
+            registryList.add(this.newRegistry("reuse_min_id_registry", clientList));
+            Assert.assertEquals(Integer.valueOf(i), registryList.get(i).getGlobalId().orElse(-1));
+        }
+
+        // 2. Unregister id 2 and id 1, the new instances should reuse the minimum free id first
+        registryList.get(2).shutdown();
+        registryList.get(1).shutdown();
+        SequentialReusableIdRegistry reuse1 = this.newRegistry("reuse_min_id_registry", clientList);
+        Assert.assertEquals(Integer.valueOf(1), reuse1.getGlobalId().orElse(-1));
+        SequentialReusableIdRegistry reuse2 = this.newRegistry("reuse_min_id_registry", clientList);
+        Assert.assertEquals(Integer.valueOf(2), reuse2.getGlobalId().orElse(-1));
+        SequentialReusableIdRegistry next = this.newRegistry("reuse_min_id_registry", clientList);
+        Assert.assertEquals(Integer.valueOf(4), next.getGlobalId().orElse(-1));
+
+        // 3. Close all components
+        for (final AbstractIdRegistry registry : Lists.newArrayList(registryList.get(0), registryList.get(3), reuse1, reuse2, next)) {
+            registry.shutdown();
+        }
+        clientList.forEach(CloseableUtils::closeQuietly);
+    }
+
+    @Test
+    public void lockFreeRegistration() throws Exception {
+        final int instanceCount = 16;
+
+        final List<CuratorFramework> clientList = new CopyOnWriteArrayList<>();
+        final List<SequentialReusableIdRegistry> registryList = new CopyOnWriteArrayList<>();
+        final List<CompletableFuture<Void>> completableFutures = Lists.newArrayList();
+        final ExecutorService executor = Executors.newCachedThreadPool();
+
+        // 1. Simulate different IP instances concurrently claim globalId without nextAvailableIdLock
+        for (int i = 0; i < instanceCount; i++) {
+            completableFutures.add(CompletableFuture.runAsync(() -> {
+                final CuratorFramework testClient = newCuratorFramework();
+                clientList.add(testClient);
+                try {
+                    registryList.add(SequentialReusableIdRegistry
+                            .builder(testClient, testClient)
+                            .topic("lock_free_id_registry")
+                            .heartbeatIntervalInMs(10 * 1000)
+                            .lockFreeRegistration(true)
+                            .customIpSupplier(() -> UUID.randomUUID().toString())
+                            .build());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(completableFutures.toArray(new CompletableFuture[0])).join();
+
+        // 2. Verify all ids are distinct
+        Assert.assertEquals(instanceCount, registryList.size());
+        Assert.assertEquals(instanceCount, registryList.stream().map(r -> r.getGlobalId().orElse(-1)).distinct().count());
+        registryList.get(0).checkAfterAllReady(instanceCount);
+
+        // 3. Close all components
+        for (final AbstractIdRegistry registry : registryList) {
+            registry.shutdown();
+        }
+        clientList.forEach(CloseableUtils::closeQuietly);
+        executor.shutdown();
+    }
+
+    @Test
+    public void registerByOccupiedIdIndex() throws Exception {
+        final List<CuratorFramework> clientList = Lists.newArrayList();
+        final SequentialReusableIdRegistry first = this.newRegistry("index_id_registry", clientList);
+
+        // the index is loaded within indexInitTimeoutInMs although nextAvailableIdLockTimeoutInMs is 0 (try once)
+        final CuratorFramework testClient = newCuratorFramework();
+        clientList.add(testClient);
+        final CountingRegistry second = new CountingRegistry(SequentialReusableIdRegistry
+                .builder(testClient, testClient)
+                .topic("index_id_registry")
+                .nextAvailableIdLockTimeoutInMs(0)
+                .indexInitTimeoutInMs(5 * 1000)
+                .customIpSupplier(() -> UUID.randomUUID().toString()));
+        second.doRegister();
+        Assert.assertEquals(Integer.valueOf(1), second.getGlobalId().orElse(-1));
+        Assert.assertEquals(0, second.fallbackCount.get());
+
+        // the index is closed after registration, so the ids are listed from zookeeper then
+        Assert.assertEquals(2, second.nextAvailableId());
+        Assert.assertEquals(1, second.fallbackCount.get());
+
+        second.shutdown();
+        first.shutdown();
+        clientList.forEach(CloseableUtils::closeQuietly);
+    }
+
+    @Test
+    public void globalIdLostAfterSessionExpired() throws Exception {
+        final String topic = "expired_id_registry";
+        final CuratorFramework expiringClient = CuratorFrameworkFactory.builder()
+                .connectString(CONN_STR)
+                .sessionTimeoutMs(4 * 1000)
+                .retryPolicy(new ExponentialBackoffRetry(1000, 3))
+                .namespace(NAME_SPACE)
+                .build();
+        expiringClient.start();
+        final SequentialReusableIdRegistry expiring = SequentialReusableIdRegistry
+                .builder(expiringClient, expiringClient)
+                .topic(topic)
+                .customIpSupplier(() -> UUID.randomUUID().toString())
+                .build();
+        final int globalId = expiring.getGlobalId().orElse(-1);
+        final SnowflakeIdGenerator generator = SnowflakeIdGenerator.builder(expiring).build();
+        Assert.assertTrue(generator.nextId() > 0);
+
+        // 1. Expire the session, generation stops once the session is lost
+        expiringClient.getZookeeperClient().getZooKeeper().getTestable().injectSessionExpiration();
+        final long deadline = System.currentTimeMillis() + 10 * 1000;
+        while (!expiring.isGlobalIdLost() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        Assert.assertTrue(expiring.isGlobalIdLost());
+        try {
+            generator.nextId();
+            Assert.fail("expect ZktException");
+        } catch (ZktException e) {
+            print(e.getMessage());
+        }
+
+        // 2. The ephemeral nodes are deleted by the server, then a second registry takes the id
+        final String idNodePath = ZKPaths.makePath(topic, "ids", String.valueOf(globalId));
+        while (Objects.nonNull(client.checkExists().forPath(idNodePath)) && System.currentTimeMillis() < deadline + 10 * 1000) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        final List<CuratorFramework> clientList = Lists.newArrayList(expiringClient);
+        final SequentialReusableIdRegistry taking = this.newRegistry(topic, clientList);
+        Assert.assertEquals(Integer.valueOf(globalId), taking.getGlobalId().orElse(-1));
+
+        // 3. The lost registry never gets the id back
+        TimeUnit.MILLISECONDS.sleep(3 * 1000);
+        Assert.assertTrue(expiring.isGlobalIdLost());
+        Assert.assertFalse(taking.isGlobalIdLost());
+
+        taking.shutdown();
+        expiring.shutdown();
+        clientList.forEach(CloseableUtils::closeQuietly);
+    }
+
+    /**
+     * Registry that counts the fallbacks from the occupied ids index to listing the ids
+     */
+    private static class CountingRegistry extends SequentialReusableIdRegistry {
+        private final AtomicInteger fallbackCount = new AtomicInteger();
+
+        private CountingRegistry(Builder builder) throws Exception {
+            super(builder);
+        }
+
+        private void doRegister() throws Exception {
+            this.register();
+        }
+
+        @Override
+        protected int nextAvailableIdFromChildren() throws Exception {
+            this.fallbackCount.incrementAndGet();
+            return super.nextAvailableIdFromChildren();
+        }
+    }
+
+    private SequentialReusableIdRegistry newRegistry(String topic, List<CuratorFramework> clientList) throws Exception {
+        final CuratorFramework testClient = newCuratorFramework();
+        clientList.add(testClient);
+        return SequentialReusableIdRegistry
+                .builder(testClient, testClient)
+                .topic(topic)
+                .heartbeatIntervalInMs(10 * 1000)
+                .customIpSupplier(() -> UUID.randomUUID().toString())
+                .build();
+    }
 }
@@ -11,7 +11,10 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author walter.tan
@@ -64,4 +67,43 @@ public class SequentialUniqueIdRegistryTest extends AbstractTest {
         }
         clientList.forEach(CloseableUtils::closeQuietly);
     }
+
+    @Test
+    public void lockFreeRegistration() throws Exception {
+        final int instanceCount = 8;
+
+        final List<CuratorFramework> clientList = new CopyOnWriteArrayList<>();
+        final List<SequentialUniqueIdRegistry> registryList = new CopyOnWriteArrayList<>();
+        final List<CompletableFuture<Void>> completableFutures = Lists.newArrayList();
+        final ExecutorService executor = Executors.newCachedThreadPool();
+
+        // 1. Simulate different IP instances concurrently claim globalId without nextAvailableIdLock
+        for (int i = 0; i < instanceCount; i++) {
+            completableFutures.add(CompletableFuture.runAsync(() -> {
+                final CuratorFramework testClient = newCuratorFramework();
+                clientList.add(testClient);
+                try {
+                    registryList.add(SequentialUniqueIdRegistry
+                            .builder(testClient, testClient)
+                            .topic("lock_free_unique_id_registry")
+                            .lockFreeRegistration(true)
+                            .build());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(completableFutures.toArray(new CompletableFuture[0])).join();
+
+        // 2. Verify all ids are distinct
+        Assert.assertEquals(instanceCount, registryList.size());
+        Assert.assertEquals(instanceCount, registryList.stream().map(r -> r.getGlobalId().orElse(-1)).distinct().count());
+
+        // 3. Close all components
+        for (final AbstractIdRegistry registry : registryList) {
+            registry.shutdown();
+        }
+        clientList.forEach(CloseableUtils::closeQuietly);
+        executor.shutdown();
+    }
 }